@@ -0,0 +1,126 @@
+package minesweeper;
+
+import java.util.SplittableRandom;
+
+/**
+ * Layout that stores a bit for each cell of the board.
+ * Mutable while it is filled by set, effectively immutable once given to a board.
+ */
+class BitMineLayout implements MineLayout {
+
+    /**
+     * Abstraction function
+     *
+     * cell (x,y) contains a bomb if and only if bit (y * columns + x) of bits is set
+     *
+     * Rep invariant
+     *
+     * columns &gt; 0, rows &gt; 0, bits.length == ceil(columns * rows / 64)
+     *
+     * Rep exposure
+     *
+     * bits is private and never shared
+     */
+
+    /**
+     * Number of rows of a band of random, a multiple of 64 so that bands start on
+     * a word of bits and never share one
+     */
+    private static final int BAND_ROWS = 64;
+
+    private final int columns;
+    private final int rows;
+    private final long[] bits;
+
+    /**
+     * Makes a layout without bombs.
+     *
+     * @param columns number of columns, columns &gt; 0
+     * @param rows number of rows, rows &gt; 0
+     */
+    BitMineLayout(int columns, int rows) {
+        if(columns <= 0 || rows <= 0 ){
+            throw new IllegalArgumentException("Number of columns and rows must be greater than zero");
+        }
+        long cells = (long) columns * rows;
+        if(cells > 64L * Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board of " + cells + " cells is too large to store");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.bits = new long[(int) ((cells + 63) >>> 6)];
+    }
+
+    /**
+     * Makes a layout where each cell contains a bomb with the given probability.
+     * Rows are split in bands of BAND_ROWS rows, each with its own generator split from
+     * a generator of the seed in band order, and bands are filled in parallel, so the
+     * layout depends on the seed and the size only, not on the number of threads.
+     *
+     * @param columns number of columns, columns &gt; 0
+     * @param rows number of rows, rows &gt; 0
+     * @param seed seed of the bombs
+     * @param density probability of a cell to contain a bomb, 0 &lt;= density &lt;= 1
+     * @param threads number of threads filling the layout, threads &gt; 0
+     * @return the layout
+     */
+    static BitMineLayout random(int columns, int rows, long seed, double density, int threads) {
+        if(!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("Density must be between 0 and 1");
+        }
+        BitMineLayout layout = new BitMineLayout(columns, rows);
+        int bands = (rows - 1) / BAND_ROWS + 1;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] generators = new SplittableRandom[bands];
+        for(int band = 0; band < bands; ++band) {
+            generators[band] = root.split();
+        }
+        Parallel.forEach(bands, threads, band -> layout.fillBand(band, generators[band], density));
+        return layout;
+    }
+
+    /**
+     * Places bombs on the cells of a band of rows, each with probability density.
+     * Writes only the words of bits of the band.
+     *
+     * @param band 0 &lt;= band &lt; number of bands
+     * @param generator generator of the band
+     * @param density probability of a cell to contain a bomb
+     */
+    private void fillBand(int band, SplittableRandom generator, double density) {
+        long from = (long) band * BAND_ROWS * columns;
+        long to = Math.min((long) (band + 1) * BAND_ROWS, rows) * columns;
+        for(long bit = from; bit < to; ++bit) {
+            if(generator.nextDouble() < density) {
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Places a bomb on cell (x,y).
+     *
+     * @param x 0 &lt;= x &lt; columns
+     * @param y 0 &lt;= y &lt; rows
+     */
+    void set(int x, int y) {
+        long bit = (long) y * columns + x;
+        bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+
+    @Override
+    public boolean containsBomb(int x, int y) {
+        long bit = (long) y * columns + x;
+        return (bits[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+}
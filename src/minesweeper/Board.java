@@ -1,16 +1,28 @@
 package minesweeper;
 
+import static minesweeper.BoardStripes.TILE;
+import static minesweeper.BoardStripes.TILE_SHIFT;
+
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Objects;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * ADT that represents minesweeper board
@@ -20,56 +32,245 @@ public class Board {
     /**
      * Abstraction function
      * 
-     * Represents a board of size columns * rows with board cells
+     * Represents a board of size columns * rows, where the cell in column x and row y
+     * is described by the byte of grid for cell (x,y) (see TileGrid):
+     * <pre>
+     *   bits 0-3  number of adjacent bombs
+     *   bit  4    the cell contains a bomb
+     *   bits 5-6  state of the cell: 00 untouched, 01 flagged, 10 dug
+     * </pre>
+     * A cell whose tile is not allocated is untouched.
+     * Cells are identified in changes by keys key(x,y) = y * 2^32 + x.
      * 
      * Rep invariant
      * 
-     * board array size is columns * rows
-     * each cell, that is dug and empty, contains number of adjacent bombs
+     * grid has columns * rows cells
+     * state bits of each allocated cell are never 11
+     * dug cell never contains a bomb
+     * each allocated cell contains number of adjacent bombs, whether it is dug or not
+     * hash is the exclusive or of zobrist(x, y, cell) of all allocated cells
      * 
      * Rep exposure
      * 
      * all field are private
      * columns and rows are ints
-     * board points to mutable Cell, but none Cell objects ever accepted or returned
+     * grid is mutable, but it is never accepted or returned
+     *
+     * Memory
+     *
+     * A cell takes one byte. The previous representation kept a Cell object per cell
+     * (12 bytes header, boolean, State reference and int, padded to 24 bytes) plus a
+     * 4 bytes reference to it from a column array, that is about 28 bytes per cell
+     * with compressed oops. A 5000 x 5000 board takes 25 MB instead of about 700 MB,
+     * and it is a few thousand tiles for the garbage collector instead of 25 million objects.
+     * Boards made by Board(int, int, long, double) allocate a tile of TILE x TILE cells
+     * only when a cell in it is first dug or flagged, so untouched areas take no memory
+     * (see TileGrid). Their bombs are a hash of the seed and the position of a cell
+     * (see HashMineLayout), so nothing is stored or precomputed for untouched cells:
+     * numbers of adjacent bombs are computed when a tile is allocated, and removed
+     * bombs are kept in the cells of allocated tiles, which a dig allocates anyway.
+     * dirtyRows and renderText only exist once the board is rendered, so a board of any
+     * size is constructed in constant time and memory.
      * 
      * Thread safety
      * 
-     * columns and rows are immutable
-     * all accesses to board happen within Board and Cell methods. All methods in Board
-     * are synchronized with lock of the whole board. Cell class is not thread-safe by itself,
-     * but we can only use Cell through Board methods, so we also have block on the whole 
-     * board. 
-     * 
-     * (We cannot only block one cell, because we often need adjacent cells and we don't know
-     * how many before we call the method)
+     * columns, rows and stripes are immutable
+     * all accesses to cells happen within Board methods, under locks of the stripes
+     * that guard the cells (see BoardStripes). A writer allocates the tile of a cell
+     * under the write lock of its stripe, and a reader that finds no tile sees an
+     * untouched cell (see TileGrid). Observers read a cell optimistically
+     * and validate the stamp of its stripe afterwards, so they block neither writers
+     * nor other readers; only if a writer interfered they read again under the read
+     * lock. flagIfUntouched and deflagIfFlagged take the write lock of one stripe,
+     * digIfUntouched takes write locks of the stripes of the cell and its neighbors,
+     * and a flood fill adds stripes as it reaches them, without deadlocks (see
+     * BoardOperation). applyMoves takes the stripes of all its moves at once, in
+     * ascending order, and holds them for the whole batch. toString renders
+     * optimistically and validates stamps of all stripes, falling back to read locks
+     * of all stripes in ascending order, like a full checkRep does, so both see the
+     * board between operations.
+     * Writers mark rows they change in dirtyRows and append changed cells to changeLog
+     * while they hold their stripes. A writer that finds no dirtyRows changes cells
+     * before the first render ends: the render that creates dirtyRows either sees
+     * the change or fails to validate its stamps and renders all rows again.
+     * Move and cell listeners are called by commit while the writer still holds its
+     * stripes, on purpose: that is what makes listeners see changes of a cell in the
+     * order they happened, which the move log and subscriptions rely on, and keeps the
+     * cells of CellChanges readable. So every player whose stripes meet them waits for
+     * the listeners, and listeners must be O(1): the move log only copies a record into
+     * its buffer, a subscription only raises a version and flags its pusher.
+     * toString re-encodes only dirty rows into renderText under renderLock, and returns
+     * the cached rendered string without any lock while no row is dirty.
+     * save copies the board at one version without stopping writers for the copy:
+     * it holds read locks of all stripes only to read the version and install frozen,
+     * then copies tiles one at a time under the read lock of the stripe of each tile.
+     * While frozen is installed, a writer that is about to change a tile nobody
+     * copied yet puts a copy of the tile as it was at that version into frozen first,
+     * under the write lock of its stripe, so every tile is copied exactly once.
+     * So operations in different parts of the board run in parallel.
      */
     
     private final int columns;
     private final int rows;
-    private final Cell[][] board;
+    private final TileGrid grid;
+    private final BoardStripes stripes;
+    /** Versions of the board and cells changed by the latest of them */
+    private final ChangeLog changeLog;
+    /** Zobrist hash of the touched cells, see zobrist */
+    private final AtomicLong hash = new AtomicLong();
+    /** Rows that changed since the board was last rendered, null until the first render */
+    private volatile DirtyRows dirtyRows;
+    /**
+     * Guards renderText, drainedRows and creation of dirtyRows; a ReentrantLock rather
+     * than a monitor, as it is held while waiting for read locks of stripes, and a
+     * virtual thread blocked in a monitor would pin its carrier thread
+     */
+    private final ReentrantLock renderLock = new ReentrantLock();
+    /** Text of the last render, row y starts at y * (2 * columns + 1) */
+    private byte[] renderText;
+    /** Rows drained from dirtyRows by the last render */
+    private long[] drainedRows;
+    /** Last rendered board, up to date while no row is dirty */
+    private volatile String rendered;
+    /** Receivers of moves that change the board */
+    private final List<MoveListener> moveListeners = new CopyOnWriteArrayList<>();
+    /** Receivers of cells changed by moves */
+    private final List<CellListener> cellListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Tiles of the running save as they were at the version it saves, by key(tx,ty):
+     * a copy that a writer made before changing the tile, COPIED if the save copied
+     * the tile itself, ABSENT if it was not allocated; null while no save runs
+     */
+    private volatile Map<Long, byte[]> frozen;
+    /** Guards frozen, so that one save runs at a time */
+    private final ReentrantLock saveLock = new ReentrantLock();
+    /** State of mutating operations of each thread, reused between operations */
+    private final ThreadLocal<BoardOperation> operations =
+            ThreadLocal.withInitial(this::newOperation);
     
-    private synchronized void checkRep() {
-        assert board != null;
-        assert board.length == columns;
-        assert board[0].length == rows;
-        for(int x = 0; x < columns; ++x) {
-            for(int y = 0; y < rows; ++y ) {
-                if(board[x][y].state() != Cell.State.DUG ||
-                        board[x][y].containsBomb()) {
-                    continue;
+    /** Marks a tile of frozen that the save copied itself */
+    private static final byte[] COPIED = new byte[0];
+    /** Marks a tile of frozen that was not allocated at the saved version */
+    private static final byte[] ABSENT = new byte[0];
+
+    /** Maximum number of changed cells the change log keeps */
+    private static final int CHANGE_LOG_CAPACITY = 1 << 16;
+
+    /** Mask of the number of adjacent bombs */
+    static final int COUNT_MASK = 0x0F;
+    /** Bit that is set if cell contains a bomb */
+    static final int BOMB = 0x10;
+    /** Mask of the state bits */
+    static final int STATE_MASK = 0x60;
+    /** State of untouched cell */
+    static final int UNTOUCHED = 0x00;
+    /** State of flagged cell */
+    static final int FLAGGED = 0x20;
+    /** State of dug cell */
+    static final int DUG = 0x40;
+
+    /** True if assertions are enabled for Board, so checkRep has something to check */
+    private static final boolean CHECK_REP = Board.class.desiredAssertionStatus();
+    /**
+     * Number of mutations between full checks of the rep invariant, 0 for none.
+     * Mutations always check the cells they changed; set the system property
+     * minesweeper.fullCheckEvery to also check the whole board now and then.
+     */
+    private static final long FULL_CHECK_EVERY = Math.max(0, Long.getLong("minesweeper.fullCheckEvery", 0));
+
+    /** Number of mutations of the board, counted only if full checks are periodic */
+    private final AtomicLong mutations = new AtomicLong();
+
+    /**
+     * Checks rep invariant of the whole board; takes read locks of all stripes and
+     * time proportional to the allocated cells.
+     */
+    private void checkRep() {
+        if(!CHECK_REP) {
+            return; // checkRep would take locks of all stripes for nothing
+        }
+        long[] stamps = stripes.readLockAll();
+        try {
+            checkCells();
+        } finally {
+            stripes.unlockReadAll(stamps);
+        }
+    }
+
+    /**
+     * Checks rep invariant of the cells an operation changed, in time proportional to
+     * their number. The bombs around a changed cell can only change under its stripe,
+     * so the check is exact while the operation holds its stripes.
+     *
+     * @param operation operation that holds the stripes of the cells it changed
+     * @param from index of the first change to check
+     * @param to index after the last change to check
+     */
+    private void checkRep(BoardOperation operation, int from, int to) {
+        if(!CHECK_REP) {
+            return;
+        }
+        long[] changes = operation.changes();
+        for(int i = from; i < to; ++i) {
+            checkCell((int) changes[i], (int) (changes[i] >>> 32));
+        }
+    }
+
+    /**
+     * Checks rep invariant of the whole board after every FULL_CHECK_EVERY-th mutation.
+     * Must be called after the mutation released its stripes.
+     */
+    private void checkRepPeriodically() {
+        if(CHECK_REP && FULL_CHECK_EVERY > 0 && mutations.incrementAndGet() % FULL_CHECK_EVERY == 0) {
+            checkRep();
+        }
+    }
+
+    /**
+     * Checks rep invariant of cell (x,y), requires its tile to be allocated and no
+     * writer to change the cell or the bombs around it.
+     *
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     */
+    private void checkCell(int x, int y) {
+        int cell = tile(x, y)[TileGrid.offset(x, y)];
+        assert (cell & STATE_MASK) != STATE_MASK;
+        assert (cell & STATE_MASK) != DUG || (cell & BOMB) == 0;
+        int bombs = 0;
+        for(int yy = Math.max(y - 1, 0); yy <= Math.min(y + 1, rows - 1); ++yy) {
+            for(int xx = Math.max(x - 1, 0); xx <= Math.min(x + 1, columns - 1); ++xx) {
+                if(xx != x || yy != y) {
+                    byte[] tile = tile(xx, yy);
+                    boolean bomb = tile == null ? grid.layout().containsBomb(xx, yy)
+                            : (tile[TileGrid.offset(xx, yy)] & BOMB) != 0;
+                    bombs += bomb ? 1 : 0;
                 }
-                int bombs = 0;
-                for(int i = 0; i < NEIGHBORS_NUMBER; ++i) {
-                    int xx = x + X_NEIGHBORS[i];
-                    int yy = y + Y_NEIGHBORS[i];
-                    if(xx >= 0 && xx < columns && yy >= 0 && yy < rows) {
-                        if(board[xx][yy].containsBomb()) bombs++;
-                    }
-                }   
-                assert bombs == board[x][y].neighborBombs();
             }
         }
+        assert bombs == (cell & COUNT_MASK);
+    }
+
+    /**
+     * Checks rep invariant of all allocated cells, requires no writer to run.
+     */
+    private void checkCells() {
+        assert grid != null;
+        assert hash.get() == allocatedHash();
+        final byte[] halo = new byte[TileGrid.haloSize()];
+        grid.forEachAllocated((tx, ty, tile) -> {
+            grid.fillHalo(tx, ty, halo);
+            int width = Math.min(TILE, columns - (tx << TILE_SHIFT));
+            int height = Math.min(TILE, rows - (ty << TILE_SHIFT));
+            for(int cy = 0; cy < height; ++cy) {
+                for(int cx = 0; cx < width; ++cx) {
+                    int cell = tile[(cy << TILE_SHIFT) | cx];
+                    assert (cell & STATE_MASK) != STATE_MASK;
+                    assert (cell & STATE_MASK) != DUG || (cell & BOMB) == 0;
+                    assert TileGrid.haloCount(halo, cx, cy) == (cell & COUNT_MASK);
+                }
+            }
+        });
     }
     
     /**
@@ -86,29 +287,16 @@ public class Board {
      *   INT ::= [0-9]+
      * </pre>
      * 
+     * The file is memory mapped and parsed in one pass (see BoardFileParser).
+     *
      * @param file file where board stores
      * @throws FileNotFoundException if file was not found
+     * @throws IllegalArgumentException if the file does not match the grammar,
+     *                                  the message tells the line and column of the mismatch
+     * @throws java.io.UncheckedIOException if the file cannot be read
      */
     public Board(File file) throws FileNotFoundException {
-        Scanner c = new Scanner( new FileInputStream(file));
-        columns = c.nextInt();
-        rows = c.nextInt();
-        board = new Cell[columns][rows];
-        boolean fileBoard[][] = new boolean[rows][columns];
-        for(int i = 0;i < rows; ++i) {
-            for(int j = 0; j < columns; ++j) {
-                fileBoard[i][j] = c.nextInt() == 1;
-            }
-        }
-        c.close();
-        for(int i = 0;i < columns; ++i) {
-            for(int j = 0; j < rows; ++j) {
-                board[i][j] = new Cell(fileBoard[j][i]);
-                //System.out.print(board[i][j].containsBomb() + " ");
-            }
-            //System.out.println();
-        }
-        checkRep();
+        this(BoardFileParser.parse(file), true);
     }
     
     /**
@@ -118,27 +306,398 @@ public class Board {
      * @param y number of rows, y &gt; 0
      */
     public Board(int x, int y) {
-        if(x <= 0 || y <= 0 ){
-            throw new IllegalArgumentException("Number of columns and rows must be greater than zero");
-        }
-        columns = x;
-        rows = y;
-        board = new Cell[columns][rows];
+        this(randomLayout(x, y), true);
+    }
+
+    /**
+     * @param columns number of columns, columns &gt; 0
+     * @param rows number of rows, rows &gt; 0
+     * @return bombs of the random board of Board(int, int)
+     */
+    private static MineLayout randomLayout(int columns, int rows) {
+        BitMineLayout layout = new BitMineLayout(columns, rows);
         Random r = new Random(47);
         for(int i = 0;i<columns; ++i) {
             for(int j = 0; j < rows; ++j) {
-                board[i][j] = new Cell(r.nextInt(3) != 0); // true with probability 1/3
+                if(r.nextInt(3) != 0) { // true with probability 1/3
+                    layout.set(i, j);
+                }
             }
         }
+        return layout;
+    }
+
+    /**
+     * Constructs a new sparse random board with x columns and y rows, where each cell
+     * contains a bomb with the given probability, decided by a hash of the seed and
+     * the position of the cell. Nothing is stored for a cell until it is dug or flagged,
+     * so a board of any size is constructed at once and takes memory in proportion to
+     * the part of it players touched.
+     * Boards constructed with the same arguments are equal.
+     *
+     * @param x number of columns, x &gt; 0
+     * @param y number of rows, y &gt; 0
+     * @param seed seed of the random bombs
+     * @param density probability of a cell to contain a bomb, 0 &lt;= density &lt;= 1
+     */
+    public Board(int x, int y, long seed, double density) {
+        this(new HashMineLayout(x, y, seed, density), false);
+    }
+
+    /**
+     * Generates a new random board with x columns and y rows, where each cell contains
+     * a bomb with the given probability, using all processors. Bombs depend on the
+     * arguments only, so boards generated with the same arguments are equal.
+     * Unlike the sparse board of Board(int, int, long, double), all cells are stored
+     * up front.
+     *
+     * @param x number of columns, x &gt; 0
+     * @param y number of rows, y &gt; 0
+     * @param seed seed of the random bombs
+     * @param density probability of a cell to contain a bomb, 0 &lt;= density &lt;= 1
+     * @return the board
+     */
+    public static Board generate(int x, int y, long seed, double density) {
+        return generate(x, y, seed, density, Parallel.THREADS);
+    }
+
+    /**
+     * Generates the board of generate(x, y, seed, density) on a given number of threads.
+     *
+     * @param x number of columns, x &gt; 0
+     * @param y number of rows, y &gt; 0
+     * @param seed seed of the random bombs
+     * @param density probability of a cell to contain a bomb, 0 &lt;= density &lt;= 1
+     * @param threads number of threads, threads &gt; 0
+     * @return the board
+     */
+    static Board generate(int x, int y, long seed, double density, int threads) {
+        return new Board(BitMineLayout.random(x, y, seed, density, threads), true, threads);
+    }
+
+    /**
+     * Constructs a board with bombs of the layout and all cells untouched.
+     *
+     * @param layout bombs of the board
+     * @param allocateAll true to allocate all tiles now, false to allocate them
+     *                    when they are first written
+     */
+    private Board(MineLayout layout, boolean allocateAll) {
+        this(layout, allocateAll, Parallel.THREADS);
+    }
+
+    /**
+     * Constructs a board with bombs of the layout and all cells untouched.
+     *
+     * @param layout bombs of the board
+     * @param allocateAll true to allocate all tiles now, false to allocate them
+     *                    when they are first written
+     * @param threads number of threads allocating tiles, threads &gt; 0
+     */
+    private Board(MineLayout layout, boolean allocateAll, int threads) {
+        columns = layout.columns();
+        rows = layout.rows();
+        grid = new TileGrid(layout);
+        if(allocateAll) {
+            grid.allocateAll(threads);
+        }
+        stripes = new BoardStripes(columns, rows);
+        changeLog = new ChangeLog((int) Math.min(CHANGE_LOG_CAPACITY, (long) columns * rows), 0);
+        checkRep();
+    }
+
+    /**
+     * Constructs the board saved in an image, at the version of the image.
+     *
+     * @param image state of a board
+     */
+    private Board(BoardImage image) {
+        columns = image.columns();
+        rows = image.rows();
+        grid = new TileGrid(image.layout());
+        for(int i = 0; i < image.tilesNumber(); ++i) {
+            grid.install(image.tileX(i), image.tileY(i), image.tile(i));
+        }
+        grid.countInstalled();
+        hash.set(allocatedHash());
+        stripes = new BoardStripes(columns, rows);
+        changeLog = new ChangeLog((int) Math.min(CHANGE_LOG_CAPACITY, (long) columns * rows),
+                image.version());
         checkRep();
     }
+
+    /**
+     * Loads a board saved by save, with the same cells and version.
+     *
+     * @param file file written by save
+     * @return the saved board
+     * @throws IOException if the file cannot be read, is not a saved board or is corrupt
+     */
+    public static Board load(File file) throws IOException {
+        return new Board(BoardImage.read(file));
+    }
+
+    /**
+     * Saves the board in a compact binary file (see BoardImage): bombs and states of
+     * all cells the board stores and the version, so that load restores it exactly.
+     * The board is copied tile by tile at the version it had when the save started:
+     * players wait only while the save reads the version, then at most for the copy of
+     * one tile (see Thread safety), and the file is written after the copy.
+     *
+     * @param file file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        image().write(file);
+    }
+
+    /**
+     * @return copy of the board at one version, made while writers go on
+     */
+    private BoardImage image() {
+        MineLayout layout = grid.layout();
+        long seed = 0;
+        double density = 0;
+        if(layout instanceof HashMineLayout) {
+            seed = ((HashMineLayout) layout).seed();
+            density = ((HashMineLayout) layout).density();
+        }
+        saveLock.lock();
+        try {
+            Map<Long, byte[]> saved = new ConcurrentHashMap<>();
+            long version;
+            long[] stamps = stripes.readLockAll();
+            try {
+                version = version();
+                frozen = saved;
+            } finally {
+                stripes.unlockReadAll(stamps);
+            }
+            BoardImage image = new BoardImage(columns, rows, version, seed, density);
+            try {
+                grid.forEachAllocated((tx, ty, tile) -> {
+                    int stripe = stripes.stripe(tx << TILE_SHIFT, ty << TILE_SHIFT);
+                    long stamp = stripes.readLock(stripe);
+                    try {
+                        if(saved.putIfAbsent(key(tx, ty), COPIED) == null) {
+                            image.addTile(tx, ty, tile);
+                        }
+                    } finally {
+                        stripes.lock(stripe).unlockRead(stamp);
+                    }
+                });
+            } finally {
+                frozen = null;
+            }
+            for(Map.Entry<Long, byte[]> tile : saved.entrySet()) {
+                if(tile.getValue() != COPIED && tile.getValue() != ABSENT) {
+                    long key = tile.getKey();
+                    image.addTile((int) key, (int) (key >>> 32), tile.getValue());
+                }
+            }
+            return image;
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    /**
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     * @return key of cell (x,y)
+     */
+    private static long key(int x, int y) {
+        return ((long) y << 32) | x;
+    }
+
+    /**
+     * Zobrist key of a cell: a random number for each position and each value of a
+     * touched cell, 0 for untouched cells. Computed by a hash of the position and the
+     * value instead of taken from a table, so boards of any size need no table.
+     * Untouched cells count for nothing, so the hash of a new board is 0 whatever its
+     * bombs are, and a move changes the hash in constant time.
+     *
+     * @param x column
+     * @param y row
+     * @param cell byte of the cell, only its bomb and state bits count
+     * @return key of the cell with the value
+     */
+    private static long zobrist(int x, int y, int cell) {
+        if((cell & STATE_MASK) == UNTOUCHED) {
+            return 0;
+        }
+        long z = key(x, y) * 0x9E3779B97F4A7C15L + (cell & (BOMB | STATE_MASK));
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return exclusive or of zobrist of all allocated cells, requires no writer to run
+     */
+    private long allocatedHash() {
+        long[] sum = new long[1];
+        grid.forEachAllocated((tx, ty, tile) -> {
+            for(int i = 0; i < tile.length; ++i) {
+                if((tile[i] & STATE_MASK) != UNTOUCHED) {
+                    int x = (tx << TILE_SHIFT) | (i & (TILE - 1));
+                    int y = (ty << TILE_SHIFT) | (i >>> TILE_SHIFT);
+                    sum[0] ^= zobrist(x, y, tile[i]);
+                }
+            }
+        });
+        return sum[0];
+    }
+
+    /**
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     * @return cells of the tile of cell (x,y), or null if the tile is not allocated
+     */
+    private byte[] tile(int x, int y) {
+        return grid.tile(x >> TILE_SHIFT, y >> TILE_SHIFT);
+    }
+
+    /**
+     * Finds the tile of cell (x,y), allocating it if needed, to change it.
+     * While a save runs, keeps the tile as it was at the saved version first.
+     * Requires the write lock of the stripe of the cell.
+     *
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     * @return cells of the tile of cell (x,y)
+     */
+    private byte[] writableTile(int x, int y) {
+        int tx = x >> TILE_SHIFT;
+        int ty = y >> TILE_SHIFT;
+        Map<Long, byte[]> saved = frozen;
+        if(saved != null && !saved.containsKey(key(tx, ty))) {
+            byte[] tile = grid.tile(tx, ty);
+            saved.put(key(tx, ty), tile == null ? ABSENT : tile.clone());
+        }
+        return grid.writableTile(tx, ty);
+    }
+
+    /**
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     * @return byte that describes cell (x,y), or UNTOUCHED if its tile is not allocated
+     */
+    private int cell(int x, int y) {
+        byte[] tile = tile(x, y);
+        return tile == null ? UNTOUCHED : tile[TileGrid.offset(x, y)];
+    }
+
+    /**
+     * Reads a cell for CellChanges. Requires the calling thread to hold the stripe of the cell.
+     *
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     * @return character of cell (x,y), as in toString
+     */
+    char heldSquare(int x, int y) {
+        return square(cell(x, y));
+    }
+
+    /**
+     * Sets state bits of cell (x,y), keeping the other bits.
+     *
+     * @param operation operation that changes the cell and holds its stripe
+     * @param tile allocated tile of the cell
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     * @param state one of UNTOUCHED, FLAGGED, DUG
+     */
+    private void setState(BoardOperation operation, byte[] tile, int x, int y, int state) {
+        int i = TileGrid.offset(x, y);
+        operation.save(tile, i);
+        int before = tile[i];
+        tile[i] = (byte) ((tile[i] & ~STATE_MASK) | state);
+        operation.rehash(zobrist(x, y, before) ^ zobrist(x, y, tile[i]));
+        changed(operation, x, y);
+    }
+
+    /**
+     * Records that an operation changed how cell (x,y) looks.
+     *
+     * @param operation operation that changed the cell and holds its stripe
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
+     */
+    private void changed(BoardOperation operation, int x, int y) {
+        DirtyRows dirty = dirtyRows;
+        if(dirty != null) {
+            dirty.mark(y);
+        }
+        operation.recordChange(key(x, y));
+    }
+
+    /**
+     * Checks the cells a move changed, adds their changes to the hash, gives the next
+     * version to the changes, if there are any, and reports the move to the move and cell
+     * listeners. Must be called before the operation releases its stripes, so listeners
+     * hold up the players that wait for them (see Thread safety).
+     *
+     * @param operation operation that holds stripes of all cells it changed
+     * @param from index of the first change of the move in the changes of the operation
+     * @param to index after the last change of the move
+     * @param move kind of the move
+     * @param x column of the cell of the move
+     * @param y row of the cell of the move
+     */
+    private void commit(BoardOperation operation, int from, int to, Move move, int x, int y) {
+        checkRep(operation, from, to);
+        long delta = operation.takeHashDelta();
+        if(delta != 0) {
+            hash.accumulateAndGet(delta, (a, b) -> a ^ b);
+        }
+        if(to > from) {
+            long version = changeLog.append(operation.changes(), from, to);
+            for(MoveListener listener : moveListeners) {
+                listener.moved(move, x, y, version);
+            }
+            if(!cellListeners.isEmpty()) {
+                publishCells(operation.changes(), from, to, version);
+            }
+        }
+    }
+
+    /**
+     * @return a new operation on this board that holds no locks
+     */
+    private BoardOperation newOperation() {
+        return new BoardOperation(stripes);
+    }
+
+    /**
+     * Reads cell (x,y) optimistically, or under the read lock of its stripe if
+     * a writer holds the stripe.
+     *
+     * @param x 0 &lt;= x &lt; columns
+     * @param y 0 &lt;= y &lt; rows
+     * @return byte that describes cell (x,y)
+     */
+    private int readCell(int x, int y) {
+        StampedLock lock = stripes.lock(stripes.stripe(x, y));
+        long stamp = lock.tryOptimisticRead();
+        int cell = cell(x, y);
+        if(lock.validate(stamp)) {
+            return cell;
+        }
+        stamp = stripes.readLock(stripes.stripe(x, y));
+        try {
+            return cell(x, y);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
     
     //Observers
     
     /**
      * @return number of columns on the board
      */
-    public synchronized int columnsNumber() {
+    public int columnsNumber() {
         return columns;
     }
     
@@ -146,7 +705,7 @@ public class Board {
     /**
      * @return number of rows on the board
      */
-    public synchronized int rowsNumber() {
+    public int rowsNumber() {
         return rows;
     }
     
@@ -157,12 +716,12 @@ public class Board {
      * @param y 0 &lt;= y &lt; rowsNumber
      * @return true if and only if cell (x,y) is untouched
      */
-    public synchronized boolean isUntouched(int x, int y) {
+    public boolean isUntouched(int x, int y) {
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        return board[x][y].state() == Cell.State.UNTOUCHED;
+        return (readCell(x, y) & STATE_MASK) == UNTOUCHED;
     }
 
     /**
@@ -172,12 +731,12 @@ public class Board {
      * @param y 0 &lt;= y &lt; rowsNumber
      * @return true if and only if cell (x,y) is flagged
      */
-    public synchronized boolean isFlagged(int x, int y) {
+    public boolean isFlagged(int x, int y) {
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        return board[x][y].state() == Cell.State.FLAGGED;
+        return (readCell(x, y) & STATE_MASK) == FLAGGED;
     }
 
     /**
@@ -187,12 +746,12 @@ public class Board {
      * @param y 0 &lt;= y &lt; rowsNumber
      * @return true if and only if cell (x,y) is dug
      */
-    public synchronized boolean isDug(int x, int y) {
+    public boolean isDug(int x, int y) {
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        return board[x][y].state() == Cell.State.DUG;
+        return (readCell(x, y) & STATE_MASK) == DUG;
     }  
 
     /**
@@ -203,24 +762,136 @@ public class Board {
      * @return number of adjacent bombs to cell (x,y)
      * @throws UnsupportedOperationException if cell (x,y) is not dug or contains a bomb
      */
-    public synchronized int neighborBombs(int x, int y) throws UnsupportedOperationException {
+    public int neighborBombs(int x, int y) throws UnsupportedOperationException {
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        return board[x][y].neighborBombs();
+        int cell = readCell(x, y);
+        if((cell & STATE_MASK) != DUG) {
+            throw new UnsupportedOperationException();
+        }
+        return cell & COUNT_MASK;
+    }
+
+    /**
+     * Counts tiles of cells that take memory, for tests and benchmarks of sparse boards.
+     *
+     * @return number of allocated tiles of TILE x TILE cells
+     */
+    int allocatedTiles() {
+        final int[] allocated = {0};
+        grid.forEachAllocated((tx, ty, tile) -> ++allocated[0]);
+        return allocated[0];
+    }
+
+    /**
+     * Adds a receiver of the moves that change the board from now on.
+     *
+     * @param listener receiver of moves, see MoveListener for what it may do
+     */
+    public void addMoveListener(MoveListener listener) {
+        moveListeners.add(listener);
+    }
+
+    /**
+     * Removes a receiver added by addMoveListener.
+     *
+     * @param listener receiver of moves
+     */
+    public void removeMoveListener(MoveListener listener) {
+        moveListeners.remove(listener);
+    }
+
+    /**
+     * Adds a receiver of the cells that moves change from now on.
+     *
+     * @param listener receiver of cells, see CellListener for what it may do
+     */
+    public void addCellListener(CellListener listener) {
+        cellListeners.add(listener);
+    }
+
+    /**
+     * Removes a receiver added by addCellListener.
+     *
+     * @param listener receiver of cells
+     */
+    public void removeCellListener(CellListener listener) {
+        cellListeners.remove(listener);
+    }
+
+    /**
+     * Reports changed cells of an operation to the cell listeners, once per listener with
+     * the bounding box of the cells; a listener reads the states of the cells only if it
+     * needs them. Requires the operation to hold the stripes of the cells.
+     *
+     * @param changes keys of changed cells
+     * @param from index of the first change of the operation in changes
+     * @param to index after the last change, to &gt; from
+     * @param version version of the board the operation made
+     */
+    private void publishCells(long[] changes, int from, int to, long version) {
+        CellChanges cells = new CellChanges(this, changes, from, to, version);
+        for(CellListener listener : cellListeners) {
+            listener.cellsChanged(cells);
+        }
+    }
+
+    /**
+     * Every operation that changes the board makes a new version of the board.
+     * Operations on the same cells get versions in the order they happen.
+     *
+     * @return version of the board, 0 for a new board
+     */
+    public long version() {
+        return changeLog.version();
+    }
+
+    /**
+     * Threads wait for locks of the board when they change or read cells another
+     * thread is changing, and when they render the board while another thread does.
+     *
+     * @return nanoseconds threads waited in all for locks of the board since it was made
+     */
+    public long lockWaitNanos() {
+        return stripes.waitNanos();
+    }
+
+    /**
+     * Describes cells changed after the given version, so that a client that knows
+     * the board of that version can follow the board without rendering all of it.
+     * The board keeps changes of a limited number of latest cell changes; for older
+     * versions the whole board has to be rendered.
+     * Cells are described as they are at the time of the call, so the changes cover
+     * at least all versions up to version() called before this method.
+     *
+     * @param version version of the board, as returned by version()
+     * @return lines "X Y SQUARE" in row order, one for each cell changed after version,
+     *         where SQUARE is the character of the cell as in toString;
+     *         empty if the board does not keep all changes after version
+     *         or if version is greater than version()
+     */
+    public Optional<List<String>> changesSince(long version) {
+        long[] changed = changeLog.changesSince(version);
+        if(changed == null) {
+            return Optional.empty();
+        }
+        List<String> lines = new ArrayList<>(changed.length);
+        for(long cell : changed) {
+            int x = (int) cell;
+            int y = (int) (cell >>> 32);
+            lines.add(x + " " + y + " " + square(readCell(x, y)));
+        }
+        return Optional.of(lines);
     }
     
     //Mutators
     
-    private final int NEIGHBORS_NUMBER = 8;
-    private final int X_NEIGHBORS[] = {1, 1, 1, 0, 0, -1, -1, -1};
-    private final int Y_NEIGHBORS[] = {-1, 0, 1, -1, 1, -1, 0, 1};
-    
     /**
      * Digs cell (x,y) if it is untouched.
-     * Updates the number of neighbor bombs of this cell, 
-     * if cell contains a bomb, makes this cell empty and updates dug empty neighbor cells 
+     * If cell contains a bomb, makes this cell empty and updates the number of
+     * neighbor bombs of its neighbors,
      * digs its neighbors if neighbor bombs number is zero, 
      * if was touched - does nothing.
      * 
@@ -228,106 +899,129 @@ public class Board {
      * @param y 0 &lt;= y &lt; rowsNumber
      * @return true if and only if cell was dug and contained a bomb
      */
-    public synchronized boolean digIfUntouched(int x, int y){
+    public boolean digIfUntouched(int x, int y){
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        Cell cell = board[x][y];
-        if(board[x][y].state() == Cell.State.UNTOUCHED) {
-            boolean bomb = cell.containsBomb();
-            cell.digIfUntouched();
-            if(bomb) {
-                cell.removeBomb();
-                for(int i = 0; i < NEIGHBORS_NUMBER; ++i) {
-                    int xx = x + X_NEIGHBORS[i];
-                    int yy = y + Y_NEIGHBORS[i];
-                    if(xx >= 0 && xx < columns && yy >= 0 && yy < rows) {
-                        if(board[xx][yy].state() == Cell.State.DUG && 
-                                !board[xx][yy].containsBomb()) {
-                            countNeighborBombs(xx, yy);
-                        }
-                    }
-                }    
-            }
-            int neighbors = countNeighborBombs(x,y);
-            if(neighbors == 0) {
-                for(int i = 0; i < NEIGHBORS_NUMBER; ++i) {
-                    int xx = x + X_NEIGHBORS[i];
-                    int yy = y + Y_NEIGHBORS[i];
-                    if(xx >= 0 && xx < columns && yy >= 0 && yy < rows) {
-                        if(board[xx][yy].state() != Cell.State.DUG) {
-                            digEmpty(xx,yy);
-                        }
-                    }
-                }
-            }
-            checkRep();
-            return bomb;
-        } else {
-            return false;
+        BoardOperation operation = operations.get();
+        operation.lockArea(Math.max(x - 1, 0), Math.max(y - 1, 0),
+                Math.min(x + 1, columns - 1), Math.min(y + 1, rows - 1));
+        MoveResult result;
+        try {
+            do {
+                result = dig(operation, x, y);
+            } while(result == null); // rolled back to take stripes of the area in order
+            commit(operation, 0, operation.changesCount(), Move.DIG, x, y);
+        } finally {
+            operation.unlockAll();
         }
+        checkRepPeriodically();
+        return result == MoveResult.BOOM;
     }
     
     /**
-     * Digs an empty cell whether it untouched or flagged.
-     * Updates the number of neighbor bombs of this cell, 
-     * digs its neighbors if neighbor bombs number is zero.
+     * Digs cell (x,y) as part of an operation, like digIfUntouched.
      * 
-     * @param x 0 <= x < columnsNumber
-     * @param y 0 <= y < rowsNumber
-     * @throws UnsupportedOperationException if cell is not empty
+     * @param operation operation that holds write locks of the cell and its neighbors
+     * @param x 0 &lt;= x &lt; columnsNumber
+     * @param y 0 &lt;= y &lt; rowsNumber
+     * @return result of the dig, or null if the operation was rolled back and must
+     *         start over, see BoardOperation.lock
      */
-    private synchronized void digEmpty(int x, int y) {
-        if(x < 0 || x >= columns ||
-                y < 0 || y >= rows) {
-            throw new IllegalArgumentException();
+    private MoveResult dig(BoardOperation operation, int x, int y) {
+        if((cell(x, y) & STATE_MASK) != UNTOUCHED) {
+            return MoveResult.UNCHANGED;
         }
-        if(board[x][y].containsBomb()) {
-            throw new UnsupportedOperationException();
+        byte[] tile = writableTile(x, y);
+        int i = TileGrid.offset(x, y);
+        boolean bomb = (tile[i] & BOMB) != 0;
+        setState(operation, tile, x, y, DUG);
+        if(bomb) {
+            removeBomb(operation, tile, x, y);
         }
-        board[x][y].digEmpty();
-        int neighbors = countNeighborBombs(x,y);
-        if(neighbors == 0) {
-            for(int i = 0; i < NEIGHBORS_NUMBER; ++i) {
-                int xx = x + X_NEIGHBORS[i];
-                int yy = y + Y_NEIGHBORS[i];
-                if(xx >= 0 && xx < columns && yy >= 0 && yy < rows) {
-                    if(board[xx][yy].state() != Cell.State.DUG) {
-                        digEmpty(xx,yy);
+        if((tile[i] & COUNT_MASK) == 0 && !digEmptyArea(operation, x, y)) {
+            return null;
+        }
+        return bomb ? MoveResult.BOOM : MoveResult.CHANGED;
+    }
+
+    /**
+     * Digs all empty cells reachable from dug cell (startX,startY) through cells with no
+     * adjacent bombs, whether they are untouched or flagged, like a player digging
+     * every untouched neighbor of a dug cell with no adjacent bombs would.
+     * Works with an explicit stack of cell keys instead of recursion, so the
+     * size of the area does not depend on the thread stack. The stack is kept
+     * between calls and each cell is pushed at most once, marked dug when pushed.
+     * Write locks of stripes are added to the operation before their cells are read,
+     * and tiles are allocated as the area reaches them. If a stripe cannot be added
+     * without risking a deadlock, the whole operation is rolled back.
+     *
+     * @param operation operation that holds write locks of the start cell and its neighbors
+     * @param startX column of a dug empty cell with no adjacent bombs
+     * @param startY row of the cell
+     * @return true if the area was dug, false if the operation was rolled back and
+     *         must start over, see BoardOperation.lock
+     */
+    private boolean digEmptyArea(BoardOperation operation, int startX, int startY) {
+        long start = key(startX, startY);
+        operation.push(start);
+        while(!operation.isEmpty()) {
+            long cell = operation.pop();
+            int x = (int) cell;
+            int y = (int) (cell >>> 32);
+            if(cell != start && (cell(x, y) & COUNT_MASK) != 0) {
+                continue;
+            }
+            int fromX = Math.max(x - 1, 0);
+            int toX = Math.min(x + 1, columns - 1);
+            int fromY = Math.max(y - 1, 0);
+            int toY = Math.min(y + 1, rows - 1);
+            for(int yy = fromY; yy <= toY; ++yy) {
+                for(int xx = fromX; xx <= toX; ++xx) {
+                    if(!operation.lock(stripes.stripe(xx, yy))) {
+                        return false;
+                    }
+                    byte[] tile = writableTile(xx, yy);
+                    int neighbor = tile[TileGrid.offset(xx, yy)];
+                    if((neighbor & STATE_MASK) != DUG) {
+                        assert (neighbor & BOMB) == 0;
+                        setState(operation, tile, xx, yy, DUG);
+                        operation.push(key(xx, yy));
                     }
                 }
             }
         }
+        return true;
     }
 
     /**
-     * Counts number of adjacent bombs of cell (x, y) on the board
-     * and renew that number on cell(x,y).
+     * Removes the bomb from cell (x,y) and updates numbers of adjacent bombs of its
+     * neighbors, allocating their tiles while they still count the bomb, so that a roll
+     * back restores every count.
      * 
-     * @param x column, 0 <= x < columns
-     * @param y row, 0 <= y < rows
-     * @throws UnsupportedOperationException if cell is not dug or contains a bomb
+     * @param operation operation that holds stripes of the cell and its neighbors
+     * @param tile allocated tile of the cell
+     * @param x column, 0 &lt;= x &lt; columns
+     * @param y row, 0 &lt;= y &lt; rows
      */
-    private synchronized int countNeighborBombs(int x, int y) {
-        if(x < 0 || x >= columns ||
-                y < 0 || y >= rows) {
-            throw new IllegalArgumentException();
-        }
-        if(board[x][y].state() != Cell.State.DUG ||
-                board[x][y].containsBomb()) {
-            throw new UnsupportedOperationException();
-        }
-        int bombs = 0;
-        for(int i = 0; i < NEIGHBORS_NUMBER; ++i) {
-            int xx = x + X_NEIGHBORS[i];
-            int yy = y + Y_NEIGHBORS[i];
-            if(xx >= 0 && xx < columns && yy >= 0 && yy < rows) {
-                if(board[xx][yy].containsBomb()) bombs++;
+    private void removeBomb(BoardOperation operation, byte[] tile, int x, int y) {
+        for(int yy = Math.max(y - 1, 0); yy <= Math.min(y + 1, rows - 1); ++yy) {
+            for(int xx = Math.max(x - 1, 0); xx <= Math.min(x + 1, columns - 1); ++xx) {
+                if(xx != x || yy != y) {
+                    byte[] neighborTile = writableTile(xx, yy);
+                    int neighbor = TileGrid.offset(xx, yy);
+                    operation.save(neighborTile, neighbor);
+                    --neighborTile[neighbor];
+                    changed(operation, xx, yy);
+                }
             }
         }        
-        board[x][y].setNeighborBombs(bombs);
-        return bombs;
+        int i = TileGrid.offset(x, y);
+        operation.save(tile, i);
+        int before = tile[i];
+        tile[i] = (byte) (tile[i] & ~BOMB);
+        operation.rehash(zobrist(x, y, before) ^ zobrist(x, y, tile[i]));
     }
     
     /**
@@ -336,13 +1030,36 @@ public class Board {
      * @param x 0 &lt;= x &lt; columnsNumber
      * @param y 0 &lt;= y &lt; rowsNumber
      */
-    public synchronized void flagIfUntouched(int x, int y){
+    public void flagIfUntouched(int x, int y){
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        board[x][y].flagIfUntouched();
-        checkRep();
+        BoardOperation operation = operations.get();
+        operation.lock(stripes.stripe(x, y));
+        try {
+            flag(operation, x, y);
+            commit(operation, 0, operation.changesCount(), Move.FLAG, x, y);
+        } finally {
+            operation.unlockAll();
+        }
+        checkRepPeriodically();
+    }
+
+    /**
+     * Flags cell (x,y) as part of an operation, like flagIfUntouched.
+     *
+     * @param operation operation that holds the write lock of the cell
+     * @param x 0 &lt;= x &lt; columnsNumber
+     * @param y 0 &lt;= y &lt; rowsNumber
+     * @return result of the flag
+     */
+    private MoveResult flag(BoardOperation operation, int x, int y) {
+        if((cell(x, y) & STATE_MASK) != UNTOUCHED) {
+            return MoveResult.UNCHANGED;
+        }
+        setState(operation, writableTile(x, y), x, y, FLAGGED);
+        return MoveResult.CHANGED;
     }
     
     /**
@@ -351,32 +1068,134 @@ public class Board {
      * @param x 0 &lt;= x &lt; columnsNumber
      * @param y 0 &lt;= y &lt; rowsNumber
      */
-    public synchronized void deflagIfFlagged(int x, int y){
+    public void deflagIfFlagged(int x, int y){
         if(x < 0 || x >= columns ||
                 y < 0 || y >= rows) {
             throw new IllegalArgumentException();
         }
-        board[x][y].deflagIfFlagged();
-        checkRep();
+        BoardOperation operation = operations.get();
+        operation.lock(stripes.stripe(x, y));
+        try {
+            deflag(operation, x, y);
+            commit(operation, 0, operation.changesCount(), Move.DEFLAG, x, y);
+        } finally {
+            operation.unlockAll();
+        }
+        checkRepPeriodically();
+    }
+
+    /**
+     * Deflags cell (x,y) as part of an operation, like deflagIfFlagged.
+     *
+     * @param operation operation that holds the write lock of the cell
+     * @param x 0 &lt;= x &lt; columnsNumber
+     * @param y 0 &lt;= y &lt; rowsNumber
+     * @return result of the deflag
+     */
+    private MoveResult deflag(BoardOperation operation, int x, int y) {
+        if((cell(x, y) & STATE_MASK) != FLAGGED) {
+            return MoveResult.UNCHANGED;
+        }
+        setState(operation, writableTile(x, y), x, y, UNTOUCHED);
+        return MoveResult.CHANGED;
+    }
+
+    /**
+     * Makes moves in order as one operation: no other operation or observer sees the
+     * board between two moves of the batch, and the stripes of all moves are locked
+     * once, in ascending order. Each move that changes the board still makes its own
+     * version and is reported to the move listeners on its own, in the order of the batch.
+     *
+     * @param moves moves to make, in order
+     * @return results of the moves, in the same order
+     * @throws IllegalArgumentException if a cell of a move is outside the board,
+     *                                  then no move is made
+     */
+    public List<MoveResult> applyMoves(List<BoardMove> moves) {
+        int[] needed = new int[4 * moves.size()];
+        int n = 0;
+        for(BoardMove move : moves) {
+            int x = move.x();
+            int y = move.y();
+            if(x < 0 || x >= columns || y < 0 || y >= rows) {
+                throw new IllegalArgumentException("move outside the board: " + move);
+            }
+            int fromX = Math.max(x - 1, 0);
+            int fromY = Math.max(y - 1, 0);
+            int toX = Math.min(x + 1, columns - 1);
+            int toY = Math.min(y + 1, rows - 1);
+            needed[n++] = stripes.stripe(fromX, fromY);
+            needed[n++] = stripes.stripe(toX, fromY);
+            needed[n++] = stripes.stripe(fromX, toY);
+            needed[n++] = stripes.stripe(toX, toY);
+        }
+        Arrays.sort(needed);
+        BoardOperation operation = operations.get();
+        MoveResult[] results = new MoveResult[moves.size()];
+        int[] ends = new int[moves.size()];
+        try {
+            for(int stripe : needed) {
+                operation.lock(stripe); // ascending, so never rolled back
+            }
+            for(int i = 0; i < moves.size(); ++i) {
+                BoardMove move = moves.get(i);
+                switch(move.move()) {
+                case DIG:
+                    results[i] = dig(operation, move.x(), move.y());
+                    break;
+                case FLAG:
+                    results[i] = flag(operation, move.x(), move.y());
+                    break;
+                case DEFLAG:
+                    results[i] = deflag(operation, move.x(), move.y());
+                    break;
+                }
+                if(results[i] == null) {
+                    i = -1; // the whole batch was rolled back, start it over
+                    continue;
+                }
+                ends[i] = operation.changesCount();
+            }
+            int from = 0;
+            for(int i = 0; i < moves.size(); ++i) {
+                BoardMove move = moves.get(i);
+                commit(operation, from, ends[i], move.move(), move.x(), move.y());
+                from = ends[i];
+            }
+        } finally {
+            operation.unlockAll();
+        }
+        checkRepPeriodically();
+        return Collections.unmodifiableList(Arrays.asList(results));
     }
     
     /**
      * Two boards are equal if and only if
      * the sizes are the same
      * each cell is in the same state and either contains a bomb or not
+     * Boards with different hashes of their touched cells are told apart in constant
+     * time, other boards are compared cell by cell.
      */
     @Override
     public boolean equals(Object that) {
+        if(this == that) {
+            return true;
+        }
         if(!(that instanceof Board)) {
             return false;
         }
         Board thatBoard = (Board) that;
-        if(columns != thatBoard.columns || rows != thatBoard.rows) {
+        if(columns != thatBoard.columns || rows != thatBoard.rows
+                || hash.get() != thatBoard.hash.get()) {
             return false;
         }
-        for(int i = 0; i < columns; ++i) {
-            for(int j = 0; j < rows; ++j ) {
-                if(!board[i][j].equals(thatBoard.board[i][j])) {
+        byte[] cells = new byte[TILE * TILE];
+        byte[] thatCells = new byte[TILE * TILE];
+        for(int ty = 0; ty < grid.tilesY(); ++ty) {
+            for(int tx = 0; tx < grid.tilesX(); ++tx) {
+                grid.bombsAndStates(tx, ty, cells);
+                thatBoard.grid.bombsAndStates(tx, ty, thatCells);
+                if(!Arrays.equals(cells, thatCells)) {
                     return false;
                 }
             }
@@ -385,11 +1204,13 @@ public class Board {
     }
     
     /**
-     * Returns a hash code. Consistent with equals
+     * Returns a hash code in constant time. Consistent with equals: it depends only on
+     * the size and the touched cells, so boards that differ only in bombs of untouched
+     * cells have the same hash code.
      */
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(board);
+        return Long.hashCode(hash.get() ^ key(columns, rows) * 0x9E3779B97F4A7C15L);
     }
     
     /**
@@ -404,197 +1225,229 @@ public class Board {
      * " " if dug and neighbor cells do not contain bombs
      * 1-8 number of neighbor bombs otherwise
      * </pre>
+     * @throws UnsupportedOperationException if the board is too large for a string,
+     *         see canRender
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for(int i = 0; i < rows; ++i ) {
-            sb.append(board[0][i].toString());
-            for(int j = 1; j < columns; ++j ) {
-                sb.append(" ");
-                sb.append(board[j][i].toString());
+        String cached = rendered;
+        if(cached != null && !dirtyRows.any()) {
+            return cached;
+        }
+        if(!renderLock.tryLock()) {
+            long start = System.nanoTime();
+            renderLock.lock();
+            stripes.waited(System.nanoTime() - start);
+        }
+        try {
+            if(renderText == null) {
+                renderText = newRenderText();
+                dirtyRows = new DirtyRows(rows);
+                drainedRows = new long[dirtyRows.wordsNumber()];
             }
-            sb.append("\r\n");
+            for(int attempt = 0; attempt < OPTIMISTIC_READS; ++attempt) {
+                long[] stamps = stripes.tryOptimisticReadAll();
+                if(stamps == null) {
+                    continue;
+                }
+                boolean changed = renderDirtyRows();
+                if(stripes.validateAll(stamps)) {
+                    return changed ? publishRender() : rendered;
+                }
+                dirtyRows.restore(drainedRows);
+            }
+            long[] stamps = stripes.readLockAll();
+            try {
+                return renderDirtyRows() ? publishRender() : rendered;
+            } finally {
+                stripes.unlockReadAll(stamps);
+            }
+        } finally {
+            renderLock.unlock();
         }
-        sb.delete(sb.length()-2, sb.length());
-        return sb.toString();
     }
-}
 
-/**
- * Class that represents a cell of the minesweeper board
- * NOT thread safe
- * @author AcerS
- *
- */
-class Cell {
-    
-    /**
-     * Abstruction function
-     * 
-     * represents a cell that contains bomb if and only if containsBomb is true
-     * which is in state state and has neighborBombs number of adjacent bombs
-     * 
-     * Representaion invariant
-     * 
-     * each cell either untouched or flagged and empty or contains a bomb OR dug and empty
-     * 
-     * Rep exposure
-     * 
-     * all field are private and points to immutable objects
-     * @author AcerS
-     *
-     */
-    enum State { UNTOUCHED, FLAGGED, DUG};
-    private boolean containsBomb;
-    private State state;
-    private int neighborBombs;
-    
-    private void checkRep() {
-        assert state != null;
-        if(state == State.DUG) {
-            assert containsBomb == false;
-        }
-    }
-    
-    /**
-     * Constructs an untouched cell.
-     * 
-     * @param bomb is true if cell must contain a bomb
-     */
-    Cell(boolean bomb) {
-       containsBomb = bomb;
-       state = State.UNTOUCHED;
-       checkRep();
-    }
+    /** Number of times toString, render and save read the board without locks before they take read locks */
+    private static final int OPTIMISTIC_READS = 2;
     
     /**
-     * @return a state of this cell
+     * @param width number of columns of a region, width &gt; 0
+     * @param height number of rows of the region, height &gt; 0
+     * @return true if and only if the region fits in a string of toString or render,
+     *         whose length grows with the number of cells; a huge sparse board can
+     *         only be rendered in parts
      */
-    State state() {
-        return state;
+    public static boolean canRender(int width, int height) {
+        return renderLength(width, height) <= Integer.MAX_VALUE - 8;
     }
     
     /**
-     * @return true if and only if cell contains a bomb
+     * @param width number of columns of a region, width &gt; 0
+     * @param height number of rows of the region, height &gt; 0
+     * @return number of bytes of the rendered region, cells, separators and line breaks
      */
-    boolean containsBomb(){
-        return containsBomb;
+    private static long renderLength(int width, int height) {
+        return (long) height * (2L * width + 1) - 2;
     }
     
     /**
-     * @return number of adjacent bombs
-     * @throws UnsupportedOperationException if cell was not dug
+     * Returns a string representation of a region of the board, in the format of toString:
+     * rows y to y + height - 1, each with cells of columns x to x + width - 1.
+     * Reads only the region, locking only the stripes of its cells if writers interfere,
+     * so its time and the length of the string depend on the region, not on the board.
+     * 
+     * @param x leftmost column of the region
+     * @param y top row of the region
+     * @param width number of columns of the region, width &gt; 0
+     * @param height number of rows of the region, height &gt; 0
+     * @return string representation of the cells of the region
+     * @throws IllegalArgumentException if the region is empty or not within the board
+     * @throws UnsupportedOperationException if the region is too large for a string,
+     *         see canRender
      */
-    int neighborBombs() throws UnsupportedOperationException{
-        if(state != State.DUG) {
-            throw new UnsupportedOperationException();
+    public String render(int x, int y, int width, int height) {
+        if(width <= 0 || height <= 0 || x < 0 || y < 0
+                || (long) x + width > columns || (long) y + height > rows) {
+            throw new IllegalArgumentException("Region of " + width + "x" + height + " cells at "
+                    + x + "," + y + " is not within the board");
         }
-        return neighborBombs;
-    }
-    
-    /**
-     * Sets a flag if cell is untouched.
-     */
-    void flagIfUntouched() {
-        if(state == State.UNTOUCHED) {
-            state = State.FLAGGED;
+        if(!canRender(width, height)) {
+            throw new UnsupportedOperationException("region is too large to render");
         }
-        checkRep();
-    }
-    
-    /**
-     * Deflags a cell if it was flagged and makes it untouched.
-     */
-    void deflagIfFlagged() {
-        if(state == State.FLAGGED) {
-            state = State.UNTOUCHED;
+        byte[] text = new byte[(int) renderLength(width, height)];
+        int[] regionStripes = stripes.stripes(x, y, x + width - 1, y + height - 1);
+        for(int attempt = 0; attempt < OPTIMISTIC_READS; ++attempt) {
+            long[] stamps = stripes.tryOptimisticRead(regionStripes);
+            if(stamps == null) {
+                continue;
+            }
+            renderRegion(text, x, y, width, height);
+            if(stripes.validate(regionStripes, stamps)) {
+                return new String(text, StandardCharsets.US_ASCII);
+            }
         }
-        checkRep();
-    }
-    
-    /**
-     * Digs a cell if it was untouched and removes a bomb.
-     */
-    void digIfUntouched() {
-        if(state == State.UNTOUCHED) {
-            state = State.DUG;
-            containsBomb = false;
+        long[] stamps = stripes.readLock(regionStripes);
+        try {
+            renderRegion(text, x, y, width, height);
+        } finally {
+            stripes.unlockRead(regionStripes, stamps);
         }
-        checkRep();
+        return new String(text, StandardCharsets.US_ASCII);
     }
-    
+
     /**
-     * Digs this empty cell.
+     * Encodes cells of a region into text in the format of toString.
+     * The text is consistent only if no writer of the region ran during the call.
      * 
-     * @throws UnsupportedOperationException if cell was not empty
+     * @param text array of height * (2 * width + 1) - 2 bytes to fill
+     * @param x leftmost column of the region, within the board
+     * @param y top row of the region, within the board
+     * @param width number of columns of the region, within the board
+     * @param height number of rows of the region, within the board
      */
-    void digEmpty() {
-        if(containsBomb) {
-            throw new UnsupportedOperationException();
+    private void renderRegion(byte[] text, int x, int y, int width, int height) {
+        int lineLength = 2 * width + 1;
+        int toX = x + width;
+        for(int row = 0; row < height; ++row) {
+            int cy = y + row;
+            int i = row * lineLength;
+            for(int fromX = x; fromX < toX; ) {
+                byte[] tile = grid.tile(fromX >> TILE_SHIFT, cy >> TILE_SHIFT);
+                int tileEnd = (int) Math.min(((long) (fromX >> TILE_SHIFT) + 1) << TILE_SHIFT, toX);
+                for(int cx = fromX; cx < tileEnd; ++cx) {
+                    text[i++] = (byte) (tile == null ? '-' : square(tile[TileGrid.offset(cx, cy)]));
+                    if(cx + 1 < toX) {
+                        text[i++] = ' ';
+                    }
+                }
+                fromX = tileEnd;
+            }
+            if(row + 1 < height) {
+                text[(row + 1) * lineLength - 2] = '\r';
+                text[(row + 1) * lineLength - 1] = '\n';
+            }
         }
-        state = State.DUG;
-        checkRep();
     }
     
     /**
-     * Removes bomb from the cell.
+     * @return text of a board with all cells blank, separators and line breaks in place
+     * @throws UnsupportedOperationException if the board is too large for a string
      */
-    void removeBomb() {
-        containsBomb = false;
-        checkRep();
-    }
-    
-    /**
-     * Sets neighborBombs to the specified value.
-     * @param bombs
-     */
-    void setNeighborBombs(int bombs) {
-        this.neighborBombs = bombs;
-        checkRep();
+    private byte[] newRenderText() {
+        if(!canRender(columns, rows)) {
+            throw new UnsupportedOperationException("board is too large to render");
+        }
+        byte[] text = new byte[(int) renderLength(columns, rows)];
+        Arrays.fill(text, (byte) ' ');
+        for(int y = 0; y + 1 < rows; ++y) {
+            int end = (y + 1) * (2 * columns + 1);
+            text[end - 2] = '\r';
+            text[end - 1] = '\n';
+        }
+        return text;
     }
     
     /**
-     * Checks whether Object equals to this cell
-     * two cells are equal if and only if they are in the same state, and they are both 
-     * empty or they both contain a bomb. Number of neighbor bombs do not influence equality.
+     * Drains dirty rows into drainedRows and encodes their cells into renderText.
+     * Requires renderLock. The text is consistent only if no writer ran during the call.
+     *
+     * @return true if and only if some row was dirty
      */
-    @Override
-    public boolean equals(Object that) {
-        if(!(that instanceof Cell)) {
-            return false;
+    private boolean renderDirtyRows() {
+        dirtyRows.drainTo(drainedRows);
+        boolean changed = rendered == null;
+        for(int word = 0; word < drainedRows.length; ++word) {
+            long bits = drainedRows[word];
+            while(bits != 0) {
+                int y = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int offset = y * (2 * columns + 1);
+                for(int tx = 0; tx < grid.tilesX(); ++tx) {
+                    byte[] tile = grid.tile(tx, y >> TILE_SHIFT);
+                    int fromX = tx << TILE_SHIFT;
+                    int toX = Math.min(fromX + TILE, columns);
+                    for(int x = fromX; x < toX; ++x) {
+                        renderText[offset + 2 * x] = (byte) (tile == null
+                                ? '-' : square(tile[TileGrid.offset(x, y)]));
+                    }
+                }
+                changed = true;
+            }
         }
-        Cell thatCell = (Cell) that;
-        return containsBomb == thatCell.containsBomb && state == thatCell.state;
+        return changed;
     }
     
     /**
-     * returns a hash code depending on state and containing a bomb
+     * Makes a string of renderText and caches it. Requires renderLock.
+     *
+     * @return string representation of the board
      */
-    @Override
-    public int hashCode() {
-        return Objects.hash(containsBomb, state);
+    private String publishRender() {
+        String board = new String(renderText, StandardCharsets.US_ASCII);
+        rendered = board;
+        return board;
     }
     
     /**
-     * Returns a string representation of a cell.
+     * Returns a character representation of a cell.
      * <pre>
-     * "-" if untouched
-     * "F" if flagged
-     * " " if dug and neighbor cells do not contain bombs
+     * '-' if untouched
+     * 'F' if flagged
+     * ' ' if dug and neighbor cells do not contain bombs
      * 1-8 number of neighbor bombs otherwise
      * </pre>
+     *
+     * @param cell byte that describes a cell
+     * @return character of the cell
      */
-    @Override
-    public String toString() {
-        if(state == State.UNTOUCHED) {
-            return "-";
-        } else if(state == State.FLAGGED) {
-            return "F";
-        } else if(neighborBombs == 0) {
-            return " ";
-        } else {
-            return String.valueOf(neighborBombs);
+    private static char square(int cell) {
+        int state = cell & STATE_MASK;
+        if(state == UNTOUCHED) {
+            return '-';
+        } else if(state == FLAGGED) {
+            return 'F';
         }
+        int bombs = cell & COUNT_MASK;
+        return bombs == 0 ? ' ' : (char) ('0' + bombs);
     }
 }
@@ -0,0 +1,43 @@
+package minesweeper;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts board files in the text grammar of Board(File) into the binary format
+ * of Board.save.
+ */
+public class BoardConverter {
+
+    /** Extension of binary board files */
+    public static final String EXTENSION = ".board";
+
+    /**
+     * Converts text board files into binary board files next to them, with the
+     * extension of the text file, if any, replaced by EXTENSION.
+     *
+     * <br> Usage:
+     *      BoardConverter FILE...
+     * <br> E.g. "BoardConverter boards/board_file_1.txt" writes boards/board_file_1.board
+     *
+     * @param args text board files
+     */
+    public static void main(String[] args) {
+        if(args.length == 0) {
+            System.err.println("usage: BoardConverter FILE...");
+            return;
+        }
+        for(String name : args) {
+            File text = new File(name);
+            int dot = name.lastIndexOf('.');
+            String base = dot > name.lastIndexOf(File.separatorChar) ? name.substring(0, dot) : name;
+            File binary = new File(base + EXTENSION);
+            try {
+                new Board(text).save(binary);
+                System.out.println(text + " -> " + binary);
+            } catch(IOException | IllegalArgumentException e) {
+                System.err.println(text + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package minesweeper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Parser of board files in the grammar of Board(File).
+ * Maps the file into memory and reads it in one pass, byte by byte, setting bombs
+ * straight into the layout of the board, so it allocates nothing per value.
+ * NOT thread safe, an object parses one file once.
+ */
+class BoardFileParser {
+
+    /**
+     * Abstraction function
+     *
+     * represents the file name at position position - buffer.remaining() + buffer.position(),
+     * which is column column of line line of the file
+     *
+     * Rep invariant
+     *
+     * buffer maps bytes of the file up to position, line &gt;= 1, column &gt;= 1
+     *
+     * Rep exposure
+     *
+     * the channel and the buffer are private and never shared
+     */
+
+    /** Maximum number of bytes mapped at once, mappings are limited to 2 GB */
+    private static final long WINDOW = 1 << 30;
+
+    private final String name;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer buffer;
+    private long position = 0;
+    private int line = 1;
+    private int column = 1;
+
+    /**
+     * Reads bombs of a board from a file in the format of Board(File).
+     *
+     * @param file file where board stores
+     * @return bombs of the board
+     * @throws FileNotFoundException if file was not found
+     * @throws IllegalArgumentException if the file does not match the grammar,
+     *                                  the message tells the line and column of the mismatch
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    static BitMineLayout parse(File file) throws FileNotFoundException {
+        try(FileInputStream in = new FileInputStream(file);
+                FileChannel channel = in.getChannel()) {
+            return new BoardFileParser(file.getPath(), channel).parseBoard();
+        } catch(FileNotFoundException e) {
+            throw e;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes a parser positioned at the start of the file.
+     *
+     * @param name name of the file for error messages
+     * @param channel channel of the file
+     * @throws IOException if the file cannot be read
+     */
+    private BoardFileParser(String name, FileChannel channel) throws IOException {
+        this.name = name;
+        this.channel = channel;
+        this.size = channel.size();
+        mapNextWindow();
+    }
+
+    /**
+     * Maps the bytes of the file that follow the current mapping.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void mapNextWindow() throws IOException {
+        long length = Math.min(WINDOW, size - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+    }
+
+    /**
+     * @return next byte of the file without consuming it, or -1 at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private int peek() throws IOException {
+        if(!buffer.hasRemaining()) {
+            if(position == size) {
+                return -1;
+            }
+            mapNextWindow();
+        }
+        return buffer.get(buffer.position());
+    }
+
+    /**
+     * Consumes the next byte, which must not be a line break or the end of the file.
+     */
+    private void skip() {
+        buffer.get();
+        ++column;
+    }
+
+    /**
+     * @return bombs of the board in the file
+     * @throws IOException if the file cannot be read
+     */
+    private BitMineLayout parseBoard() throws IOException {
+        int columns = number("number of columns");
+        expect(' ', "space");
+        int rows = number("number of rows");
+        if(columns == 0 || rows == 0) {
+            throw error("Number of columns and rows must be greater than zero");
+        }
+        newline(false);
+        BitMineLayout layout = new BitMineLayout(columns, rows);
+        for(int y = 0; y < rows; ++y) {
+            for(int x = 0; x < columns; ++x) {
+                if(x > 0) {
+                    expect(' ', "space");
+                }
+                int c = peek();
+                if(c == '1') {
+                    layout.set(x, y);
+                } else if(c != '0') {
+                    throw expected("0 or 1", c);
+                }
+                skip();
+            }
+            newline(y == rows - 1);
+        }
+        while(peek() == '\r' || peek() == '\n') {
+            newline(true);
+        }
+        if(peek() != -1) {
+            throw expected("end of file after " + rows + " rows", peek());
+        }
+        return layout;
+    }
+
+    /**
+     * Consumes INT of the grammar.
+     *
+     * @param what what the number means, for error messages
+     * @return value of the number
+     * @throws IOException if the file cannot be read
+     */
+    private int number(String what) throws IOException {
+        int c = peek();
+        if(c < '0' || c > '9') {
+            throw expected(what, c);
+        }
+        long value = 0;
+        while(c >= '0' && c <= '9') {
+            value = 10 * value + (c - '0');
+            if(value > Integer.MAX_VALUE) {
+                throw error(what + " is too large");
+            }
+            skip();
+            c = peek();
+        }
+        return (int) value;
+    }
+
+    /**
+     * Consumes the given byte.
+     *
+     * @param expected byte that must come next
+     * @param what description of the byte for error messages
+     * @throws IOException if the file cannot be read
+     */
+    private void expect(char expected, String what) throws IOException {
+        int c = peek();
+        if(c != expected) {
+            throw expected(what, c);
+        }
+        skip();
+    }
+
+    /**
+     * Consumes NEWLINE of the grammar.
+     *
+     * @param endAllowed true if the end of the file may come instead
+     * @throws IOException if the file cannot be read
+     */
+    private void newline(boolean endAllowed) throws IOException {
+        int c = peek();
+        if(c == -1 && endAllowed) {
+            return;
+        }
+        if(c != '\r' && c != '\n') {
+            throw expected("end of line", c);
+        }
+        buffer.get();
+        if(c == '\r' && peek() == '\n') {
+            buffer.get();
+        }
+        ++line;
+        column = 1;
+    }
+
+    /**
+     * @param what what the grammar expects at the current position
+     * @param found byte at the current position, or -1 at the end of the file
+     * @return exception that describes the mismatch
+     */
+    private IllegalArgumentException expected(String what, int found) {
+        String description = found == -1 ? "end of file"
+                : found == '\r' || found == '\n' ? "end of line"
+                : "'" + (char) found + "'";
+        return error("expected " + what + " but found " + description);
+    }
+
+    /**
+     * @param message description of an error at the current position
+     * @return exception whose message starts with the file, line and column
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(name + ":" + line + ":" + column + ": " + message);
+    }
+}
@@ -0,0 +1,347 @@
+package minesweeper;
+
+import static minesweeper.BoardStripes.TILE;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Complete state of a board at one version, and its binary file format.
+ * The file is a header followed by the allocated tiles of the board, each cell packed
+ * into three bits: bomb, flagged and dug. Cells of tiles that are not in the file are
+ * untouched, with bombs of the hash layout given in the header; a board whose bombs
+ * are not hashed is saved with all its tiles and density 0.
+ * Numbers of adjacent bombs are not stored, they follow from the bombs.
+ * <pre>
+ *   FILE   ::= HEADER TILE{TILES}
+ *   HEADER ::= MAGIC FORMAT COLUMNS ROWS VERSION SEED DENSITY TILES CHECKSUM
+ *   TILE   ::= TX TY BOMBS FLAGS DUGS
+ *   MAGIC ::= "MSWB"                  FORMAT ::= int 1
+ *   COLUMNS, ROWS, TILES, TX, TY ::= int
+ *   VERSION, SEED ::= long            DENSITY ::= double
+ *   CHECKSUM ::= long, CRC-32 of all TILE bytes
+ *   BOMBS, FLAGS, DUGS ::= TILE * TILE / 64 longs, bit i of long i / 64 is cell i of the tile
+ * </pre>
+ * Numbers are big endian.
+ * Immutable once made; the tiles are copies that the image never exposes.
+ */
+class BoardImage {
+
+    /**
+     * Abstraction function
+     *
+     * represents version version of a board of columns * rows cells, whose tile
+     * (tileXs[i], tileYs[i]) has cells tiles.get(i) in the layout of TileGrid, and whose
+     * other cells are untouched, with bombs of HashMineLayout(columns, rows, seed, density)
+     *
+     * Rep invariant
+     *
+     * tileXs, tileYs and tiles have the same size, tiles have TILE * TILE cells
+     * tiles are within the board and do not repeat
+     *
+     * Rep exposure
+     *
+     * all fields are private, tiles are copied when the image is made
+     */
+
+    /** First bytes of a board file, "MSWB" */
+    private static final int MAGIC = 0x4D535742;
+    /** Version of the file format */
+    private static final int FORMAT = 1;
+    /** Number of bytes of the header */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8 + 8 + 4 + 8;
+    /** Number of longs in a bit plane of a tile */
+    private static final int PLANE = TILE * TILE / 64;
+    /** Number of bytes of a tile in the file */
+    private static final int TILE_SIZE = 4 + 4 + 3 * 8 * PLANE;
+    /** Size of the buffer of file reads and writes, a multiple of TILE_SIZE */
+    private static final int BUFFER_SIZE = 1024 * TILE_SIZE;
+
+    private final int columns;
+    private final int rows;
+    private final long version;
+    private final long seed;
+    private final double density;
+    private final List<Integer> tileXs = new ArrayList<>();
+    private final List<Integer> tileYs = new ArrayList<>();
+    private final List<byte[]> tiles = new ArrayList<>();
+
+    /**
+     * Makes an image without tiles.
+     *
+     * @param columns number of columns, columns &gt; 0
+     * @param rows number of rows, rows &gt; 0
+     * @param version version of the board
+     * @param seed seed of the hash layout of cells outside the tiles
+     * @param density density of the hash layout, 0 &lt;= density &lt;= 1
+     */
+    BoardImage(int columns, int rows, long version, long seed, double density) {
+        this.columns = columns;
+        this.rows = rows;
+        this.version = version;
+        this.seed = seed;
+        this.density = density;
+    }
+
+    /**
+     * Adds a copy of a tile to the image, while the image is being made.
+     *
+     * @param tx column of the tile
+     * @param ty row of the tile
+     * @param tile cells of the tile in the layout of TileGrid
+     */
+    void addTile(int tx, int ty, byte[] tile) {
+        tileXs.add(tx);
+        tileYs.add(ty);
+        tiles.add(tile.clone());
+    }
+
+    /**
+     * @return number of columns of the board
+     */
+    int columns() {
+        return columns;
+    }
+
+    /**
+     * @return number of rows of the board
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @return version of the board
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * @return layout of bombs of cells outside the tiles of the image
+     */
+    MineLayout layout() {
+        return new HashMineLayout(columns, rows, seed, density);
+    }
+
+    /**
+     * @return number of tiles in the image
+     */
+    int tilesNumber() {
+        return tiles.size();
+    }
+
+    /**
+     * @param i 0 &lt;= i &lt; tilesNumber
+     * @return column of tile i
+     */
+    int tileX(int i) {
+        return tileXs.get(i);
+    }
+
+    /**
+     * @param i 0 &lt;= i &lt; tilesNumber
+     * @return row of tile i
+     */
+    int tileY(int i) {
+        return tileYs.get(i);
+    }
+
+    /**
+     * @param i 0 &lt;= i &lt; tilesNumber
+     * @return copy of the bomb and state bits of the cells of tile i, counts are zero
+     */
+    byte[] tile(int i) {
+        byte[] tile = new byte[TILE * TILE];
+        byte[] source = tiles.get(i);
+        for(int c = 0; c < tile.length; ++c) {
+            tile[c] = (byte) (source[c] & (Board.BOMB | Board.STATE_MASK));
+        }
+        return tile;
+    }
+
+    /**
+     * Writes the image to a file, replacing its content, and forces it to the device.
+     *
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    void write(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            CRC32 checksum = new CRC32();
+            channel.position(HEADER_SIZE);
+            for(int i = 0; i < tiles.size(); ++i) {
+                if(buffer.remaining() < TILE_SIZE) {
+                    flush(channel, buffer, checksum);
+                }
+                buffer.putInt(tileXs.get(i)).putInt(tileYs.get(i));
+                byte[] tile = tiles.get(i);
+                putPlane(buffer, tile, Board.BOMB, Board.BOMB);
+                putPlane(buffer, tile, Board.STATE_MASK, Board.FLAGGED);
+                putPlane(buffer, tile, Board.STATE_MASK, Board.DUG);
+            }
+            flush(channel, buffer, checksum);
+            buffer.putInt(MAGIC).putInt(FORMAT).putInt(columns).putInt(rows)
+                    .putLong(version).putLong(seed).putDouble(density)
+                    .putInt(tiles.size()).putLong(checksum.getValue());
+            buffer.flip();
+            channel.write(buffer, 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes the buffer to the channel and adds it to the checksum.
+     *
+     * @param channel channel to write
+     * @param buffer buffer filled since it was last cleared, cleared on return
+     * @param checksum checksum of the written bytes
+     * @throws IOException if the channel cannot be written
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Puts a bit plane of a tile: bit i is set if and only if (tile[i] &amp; mask) == value.
+     *
+     * @param buffer buffer with room for the plane
+     * @param tile cells of a tile
+     * @param mask bits of a cell to compare
+     * @param value bits that set the bit of the cell
+     */
+    private static void putPlane(ByteBuffer buffer, byte[] tile, int mask, int value) {
+        for(int word = 0; word < PLANE; ++word) {
+            long bits = 0;
+            for(int bit = 0; bit < 64; ++bit) {
+                if((tile[word * 64 + bit] & mask) == value) {
+                    bits |= 1L << bit;
+                }
+            }
+            buffer.putLong(bits);
+        }
+    }
+
+    /**
+     * Reads an image from a file written by write.
+     *
+     * @param file file to read
+     * @return image in the file
+     * @throws IOException if the file cannot be read, is not a board file, is truncated,
+     *                     or its content does not match its checksum or describes no board
+     */
+    static BoardImage read(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(4);
+            if(channel.size() < HEADER_SIZE || fill(channel, buffer).getInt() != MAGIC) {
+                throw new IOException(file + " is not a board file");
+            }
+            buffer.clear().limit(HEADER_SIZE - 4);
+            fill(channel, buffer);
+            int format = buffer.getInt();
+            if(format != FORMAT) {
+                throw new IOException(file + " has unsupported format " + format);
+            }
+            int columns = buffer.getInt();
+            int rows = buffer.getInt();
+            long version = buffer.getLong();
+            long seed = buffer.getLong();
+            double density = buffer.getDouble();
+            int tilesNumber = buffer.getInt();
+            long expectedChecksum = buffer.getLong();
+            if(columns <= 0 || rows <= 0 || version < 0 || !(density >= 0 && density <= 1)
+                    || tilesNumber < 0) {
+                throw new IOException(file + " has a corrupt header");
+            }
+            BoardImage image = new BoardImage(columns, rows, version, seed, density);
+            int tilesX = ((columns - 1) >> BoardStripes.TILE_SHIFT) + 1;
+            int tilesY = ((rows - 1) >> BoardStripes.TILE_SHIFT) + 1;
+            CRC32 checksum = new CRC32();
+            long[] planes = new long[3 * PLANE];
+            Set<Long> read = new HashSet<>();
+            for(int i = 0; i < tilesNumber; ++i) {
+                buffer.clear().limit(TILE_SIZE);
+                fill(channel, buffer);
+                checksum.update(buffer.duplicate());
+                int tx = buffer.getInt();
+                int ty = buffer.getInt();
+                if(tx < 0 || tx >= tilesX || ty < 0 || ty >= tilesY) {
+                    throw new IOException(file + " has tile " + tx + "," + ty + " outside the board");
+                }
+                if(!read.add(((long) ty << 32) | tx)) {
+                    throw new IOException(file + " has tile " + tx + "," + ty + " twice");
+                }
+                for(int word = 0; word < planes.length; ++word) {
+                    planes[word] = buffer.getLong();
+                }
+                image.tileXs.add(tx);
+                image.tileYs.add(ty);
+                image.tiles.add(unpack(planes, file));
+            }
+            if(channel.position() != channel.size()) {
+                throw new IOException(file + " has bytes after the last tile");
+            }
+            if(checksum.getValue() != expectedChecksum) {
+                throw new IOException(file + " does not match its checksum");
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full, and flips the buffer.
+     *
+     * @param channel channel to read
+     * @param buffer buffer to fill up to its limit
+     * @return the buffer
+     * @throws IOException if the channel cannot be read or ends before the buffer is full
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                throw new EOFException("board file is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param planes bomb, flag and dug planes of a tile, one after another
+     * @param file file of the tile, for error messages
+     * @return cells of the tile without counts
+     * @throws IOException if a cell is both flagged and dug, or dug with a bomb
+     */
+    private static byte[] unpack(long[] planes, File file) throws IOException {
+        byte[] tile = new byte[TILE * TILE];
+        for(int i = 0; i < tile.length; ++i) {
+            long bit = 1L << i;
+            boolean bomb = (planes[i >>> 6] & bit) != 0;
+            boolean flagged = (planes[PLANE + (i >>> 6)] & bit) != 0;
+            boolean dug = (planes[2 * PLANE + (i >>> 6)] & bit) != 0;
+            if(dug && (flagged || bomb)) {
+                throw new IOException(file + " has a corrupt cell");
+            }
+            tile[i] = (byte) ((bomb ? Board.BOMB : 0)
+                    | (flagged ? Board.FLAGGED : dug ? Board.DUG : Board.UNTOUCHED));
+        }
+        return tile;
+    }
+}
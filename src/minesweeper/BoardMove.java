@@ -0,0 +1,81 @@
+package minesweeper;
+
+/**
+ * Immutable move of a player on a cell of a board, an element of a batch of moves.
+ */
+public class BoardMove {
+
+    // Abstraction function
+    // Represents move move on the cell in column x and row y
+
+    // Rep invariant
+    // move != null
+
+    // Rep exposure
+    // all fields are private and final, of immutable types
+
+    private final Move move;
+    private final int x;
+    private final int y;
+
+    /**
+     * Makes a move.
+     *
+     * @param move kind of the move, not null
+     * @param x column of the cell
+     * @param y row of the cell
+     */
+    public BoardMove(Move move, int x, int y) {
+        this.move = move;
+        this.x = x;
+        this.y = y;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert move != null;
+    }
+
+    /**
+     * @return kind of the move
+     */
+    public Move move() {
+        return move;
+    }
+
+    /**
+     * @return column of the cell of the move
+     */
+    public int x() {
+        return x;
+    }
+
+    /**
+     * @return row of the cell of the move
+     */
+    public int y() {
+        return y;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if(!(that instanceof BoardMove)) {
+            return false;
+        }
+        BoardMove other = (BoardMove) that;
+        return move == other.move && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return (move.hashCode() * 31 + x) * 31 + y;
+    }
+
+    /**
+     * @return the move as in the protocol, e.g. "dig 3 4"
+     */
+    @Override
+    public String toString() {
+        return move.name().toLowerCase() + " " + x + " " + y;
+    }
+}
@@ -0,0 +1,252 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * State of a mutating operation on a board: write locks of the stripes the operation
+ * holds, the work stack of a flood fill, the cells the operation changed, their
+ * values before the change and the change of the hash of the board.
+ * One object is kept per thread and board and reused by all operations of the thread,
+ * so an operation does not allocate.
+ * NOT thread safe, confined to its thread.
+ */
+class BoardOperation {
+
+    /**
+     * Abstraction function
+     *
+     * represents an operation holding write locks of stripes held[0..heldCount-1]
+     * with stamps stamps[stripe], a stack of cell keys stack[0..top-1],
+     * changed cells changes[0..changesCount-1], and cell savedOffsets[i] of tile
+     * savedTiles[i] that had value savedCells[i] before the operation changed it,
+     * changing the hash of the board by hashDelta
+     *
+     * Rep invariant
+     *
+     * stamps[s] != 0 if and only if s is one of held[0..heldCount-1]
+     * maxHeld is the greatest held stripe, or -1 if none is held
+     * 0 &lt;= top &lt;= stack.length
+     * 0 &lt;= changesCount &lt;= changes.length
+     * 0 &lt;= savedCount &lt;= savedTiles.length == savedOffsets.length == savedCells.length
+     *
+     * Deadlock freedom
+     *
+     * A stripe is waited for only if it is greater than all held stripes. A smaller
+     * stripe is only tried; if it is busy, the operation restores the cells it changed,
+     * releases all its stripes, acquires them again in ascending order and starts over.
+     * All waits are in ascending order, so there is no cycle of operations waiting for
+     * each other, and no other operation ever sees the cells of a half done operation,
+     * so operations take effect in the order of their versions.
+     */
+
+    private final BoardStripes stripes;
+    private final long[] stamps;
+    private final int[] held;
+    private int heldCount = 0;
+    private int maxHeld = -1;
+    private final int[] corners = new int[4];
+    private long[] stack = new long[64];
+    private int top = 0;
+    private long[] changes = new long[64];
+    private int changesCount = 0;
+    private byte[][] savedTiles = new byte[64][];
+    private int[] savedOffsets = new int[64];
+    private byte[] savedCells = new byte[64];
+    private int savedCount = 0;
+    private long hashDelta = 0;
+
+    /**
+     * Makes an operation that holds no locks.
+     *
+     * @param stripes stripes of the board
+     */
+    BoardOperation(BoardStripes stripes) {
+        this.stripes = stripes;
+        this.stamps = new long[stripes.size()];
+        this.held = new int[stripes.size()];
+    }
+
+    /**
+     * Acquires the write lock of the stripe, if it is not held yet.
+     * If the stripe is smaller than a held one and busy, rolls the operation back:
+     * restores the cells it changed, forgets its changes and its stack, and acquires
+     * the stripe with all held stripes again in ascending order. Other operations may
+     * change cells in between, so the caller must then start the operation over.
+     *
+     * @param stripe 0 &lt;= stripe &lt; stripes.size
+     * @return true if the stripe was acquired with the changes kept, false if the
+     *         operation was rolled back and holds the stripe now
+     */
+    boolean lock(int stripe) {
+        if(stamps[stripe] != 0) {
+            return true;
+        }
+        StampedLock lock = stripes.lock(stripe);
+        if(stripe > maxHeld) {
+            stamps[stripe] = stripes.writeLock(stripe);
+            held[heldCount++] = stripe;
+            maxHeld = stripe;
+            return true;
+        }
+        long stamp = lock.tryWriteLock();
+        if(stamp != 0) {
+            stamps[stripe] = stamp;
+            held[heldCount++] = stripe;
+            return true;
+        }
+        held[heldCount++] = stripe;
+        rollBack();
+        for(int i = 0; i < heldCount; ++i) {
+            int s = held[i];
+            if(stamps[s] != 0) {
+                stripes.lock(s).unlockWrite(stamps[s]);
+                stamps[s] = 0;
+            }
+        }
+        Arrays.sort(held, 0, heldCount);
+        for(int i = 0; i < heldCount; ++i) {
+            stamps[held[i]] = stripes.writeLock(held[i]);
+        }
+        maxHeld = held[heldCount - 1];
+        return false;
+    }
+
+    /**
+     * Restores the saved cells in reverse order of their changes and forgets the changes
+     * and the stack. Requires the stripes of the saved cells to be held.
+     */
+    private void rollBack() {
+        for(int i = savedCount - 1; i >= 0; --i) {
+            savedTiles[i][savedOffsets[i]] = savedCells[i];
+            savedTiles[i] = null;
+        }
+        savedCount = 0;
+        changesCount = 0;
+        top = 0;
+        hashDelta = 0;
+    }
+
+    /**
+     * Saves a cell before the operation changes it, so that a roll back can restore it.
+     *
+     * @param tile allocated tile of the cell, its stripe held by the operation
+     * @param offset offset of the cell in the tile
+     */
+    void save(byte[] tile, int offset) {
+        if(savedCount == savedTiles.length) {
+            savedTiles = Arrays.copyOf(savedTiles, 2 * savedCount);
+            savedOffsets = Arrays.copyOf(savedOffsets, 2 * savedCount);
+            savedCells = Arrays.copyOf(savedCells, 2 * savedCount);
+        }
+        savedTiles[savedCount] = tile;
+        savedOffsets[savedCount] = offset;
+        savedCells[savedCount++] = tile[offset];
+    }
+
+    /**
+     * @param delta change of the hash of the board made by a change of a cell, combined
+     *              with the other changes by exclusive or
+     */
+    void rehash(long delta) {
+        hashDelta ^= delta;
+    }
+
+    /**
+     * @return change of the hash of the board made by the changes since the last call
+     */
+    long takeHashDelta() {
+        long delta = hashDelta;
+        hashDelta = 0;
+        return delta;
+    }
+
+    /**
+     * Acquires write locks of all stripes that guard cells of the area.
+     * Requires the area to be smaller than a tile in both directions and no stripes held.
+     *
+     * @param fromX leftmost column of the area
+     * @param fromY top row of the area
+     * @param toX rightmost column of the area
+     * @param toY bottom row of the area
+     */
+    void lockArea(int fromX, int fromY, int toX, int toY) {
+        assert heldCount == 0;
+        corners[0] = stripes.stripe(fromX, fromY);
+        corners[1] = stripes.stripe(toX, fromY);
+        corners[2] = stripes.stripe(fromX, toY);
+        corners[3] = stripes.stripe(toX, toY);
+        Arrays.sort(corners);
+        for(int stripe : corners) {
+            lock(stripe);
+        }
+    }
+
+    /**
+     * Ends the operation: releases all held stripes and forgets changed cells.
+     */
+    void unlockAll() {
+        changesCount = 0;
+        hashDelta = 0;
+        for(int i = 0; i < savedCount; ++i) {
+            savedTiles[i] = null;
+        }
+        savedCount = 0;
+        for(int i = heldCount - 1; i >= 0; --i) {
+            int s = held[i];
+            stripes.lock(s).unlockWrite(stamps[s]);
+            stamps[s] = 0;
+        }
+        heldCount = 0;
+        maxHeld = -1;
+    }
+
+    /**
+     * @param cell key of a cell to push on the stack
+     */
+    void push(long cell) {
+        if(top == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * stack.length);
+        }
+        stack[top++] = cell;
+    }
+
+    /**
+     * @return key of a cell popped from the stack, requires the stack not to be empty
+     */
+    long pop() {
+        return stack[--top];
+    }
+
+    /**
+     * @return true if and only if the stack is empty
+     */
+    boolean isEmpty() {
+        return top == 0;
+    }
+
+    /**
+     * @param cell key of a cell the operation changed
+     */
+    void recordChange(long cell) {
+        if(changesCount == changes.length) {
+            changes = Arrays.copyOf(changes, 2 * changes.length);
+        }
+        changes[changesCount++] = cell;
+    }
+
+    /**
+     * @return array with keys of changed cells in its first changesCount elements,
+     *         valid until the next change is recorded
+     */
+    long[] changes() {
+        return changes;
+    }
+
+    /**
+     * @return number of changed cells recorded since the operation started
+     */
+    int changesCount() {
+        return changesCount;
+    }
+}
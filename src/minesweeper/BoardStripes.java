@@ -0,0 +1,267 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Lock stripes of a board.
+ * The board is split into square tiles of TILE x TILE cells, and tile (tx,ty) is guarded
+ * by stripe (tx mod stripesX, ty mod stripesY), so neighbor tiles never share a stripe,
+ * while the number of locks does not grow with the board.
+ * Locks are first tried, and only a thread that has to wait for a lock reads the clock,
+ * to count the time threads waited for the locks of the board.
+ * Thread safe: the stripes are immutable, locks and the count of waits are thread safe.
+ */
+class BoardStripes {
+
+    /**
+     * Abstraction function
+     *
+     * represents stripesX * stripesY locks, the lock of stripe s is locks[s],
+     * threads waited waitNanos nanoseconds in all for locks of the board
+     *
+     * Rep invariant
+     *
+     * 0 < stripesX, stripesY <= GRID
+     * locks.length == stripesX * stripesY
+     * all[s] == s for all stripes s
+     *
+     * Rep exposure
+     *
+     * all fields are private and final, locks are returned to Board on purpose,
+     * all is returned by stripes and must not be modified by callers
+     */
+
+    /** log2 of a tile side */
+    static final int TILE_SHIFT = 5;
+    /** Number of cells on a side of a tile */
+    static final int TILE = 1 << TILE_SHIFT;
+    /** Maximum number of stripes on a side of the stripe grid */
+    static final int GRID = 16;
+
+    private final int stripesX;
+    private final int stripesY;
+    private final StampedLock[] locks;
+    private final int[] all;
+    private final LongAdder waitNanos = new LongAdder();
+
+    private void checkRep() {
+        assert stripesX > 0 && stripesX <= GRID;
+        assert stripesY > 0 && stripesY <= GRID;
+        assert locks.length == stripesX * stripesY;
+        assert all.length == locks.length;
+    }
+
+    /**
+     * Makes stripes for a board of the given size.
+     *
+     * @param columns number of columns, columns &gt; 0
+     * @param rows number of rows, rows &gt; 0
+     */
+    BoardStripes(int columns, int rows) {
+        stripesX = Math.min(GRID, ((columns - 1) >> TILE_SHIFT) + 1);
+        stripesY = Math.min(GRID, ((rows - 1) >> TILE_SHIFT) + 1);
+        locks = new StampedLock[stripesX * stripesY];
+        all = new int[locks.length];
+        for(int i = 0; i < locks.length; ++i) {
+            locks[i] = new StampedLock();
+            all[i] = i;
+        }
+        checkRep();
+    }
+
+    /**
+     * @return number of stripes
+     */
+    int size() {
+        return locks.length;
+    }
+
+    /**
+     * @param x column of a cell, x &gt;= 0
+     * @param y row of a cell, y &gt;= 0
+     * @return stripe that guards cell (x,y)
+     */
+    int stripe(int x, int y) {
+        return ((y >> TILE_SHIFT) % stripesY) * stripesX + (x >> TILE_SHIFT) % stripesX;
+    }
+
+    /**
+     * @param stripe 0 &lt;= stripe &lt; size
+     * @return lock of the stripe
+     */
+    StampedLock lock(int stripe) {
+        return locks[stripe];
+    }
+
+    /**
+     * Acquires the write lock of a stripe, counting the time waited if it is busy.
+     *
+     * @param stripe 0 &lt;= stripe &lt; size
+     * @return stamp to pass to the unlockWrite of the lock
+     */
+    long writeLock(int stripe) {
+        StampedLock lock = locks[stripe];
+        long stamp = lock.tryWriteLock();
+        if(stamp != 0) {
+            return stamp;
+        }
+        long start = System.nanoTime();
+        stamp = lock.writeLock();
+        waited(System.nanoTime() - start);
+        return stamp;
+    }
+
+    /**
+     * Acquires the read lock of a stripe, counting the time waited if it is write locked.
+     *
+     * @param stripe 0 &lt;= stripe &lt; size
+     * @return stamp to pass to the unlockRead of the lock
+     */
+    long readLock(int stripe) {
+        StampedLock lock = locks[stripe];
+        long stamp = lock.tryReadLock();
+        if(stamp != 0) {
+            return stamp;
+        }
+        long start = System.nanoTime();
+        stamp = lock.readLock();
+        waited(System.nanoTime() - start);
+        return stamp;
+    }
+
+    /**
+     * Counts time a thread waited for a lock of the board.
+     *
+     * @param nanos nanoseconds waited
+     */
+    void waited(long nanos) {
+        waitNanos.add(nanos);
+    }
+
+    /**
+     * @return nanoseconds threads waited in all for locks of the board
+     */
+    long waitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * @param fromX leftmost column of an area, fromX &gt;= 0
+     * @param fromY top row of the area, fromY &gt;= 0
+     * @param toX rightmost column of the area, toX &gt;= fromX
+     * @param toY bottom row of the area, toY &gt;= fromY
+     * @return stripes that guard cells of the area, in ascending order
+     */
+    int[] stripes(int fromX, int fromY, int toX, int toY) {
+        int firstTx = fromX >> TILE_SHIFT;
+        int firstTy = fromY >> TILE_SHIFT;
+        int countX = Math.min(stripesX, (toX >> TILE_SHIFT) - firstTx + 1);
+        int countY = Math.min(stripesY, (toY >> TILE_SHIFT) - firstTy + 1);
+        if(countX == stripesX && countY == stripesY) {
+            return all;
+        }
+        int[] area = new int[countX * countY];
+        for(int j = 0; j < countY; ++j) {
+            for(int i = 0; i < countX; ++i) {
+                area[j * countX + i] = ((firstTy + j) % stripesY) * stripesX + (firstTx + i) % stripesX;
+            }
+        }
+        Arrays.sort(area);
+        return area;
+    }
+
+    /**
+     * Acquires read locks of all stripes in ascending order.
+     *
+     * @return stamps to pass to unlockReadAll
+     */
+    long[] readLockAll() {
+        return readLock(all);
+    }
+
+    /**
+     * Starts optimistic reads of all stripes.
+     *
+     * @return stamps to pass to validateAll, or null if a stripe is write locked
+     */
+    long[] tryOptimisticReadAll() {
+        return tryOptimisticRead(all);
+    }
+
+    /**
+     * @param stamps stamps returned by tryOptimisticReadAll
+     * @return true if and only if no stripe was write locked since the stamps were taken,
+     *         so everything read in between is a consistent view of the board
+     */
+    boolean validateAll(long[] stamps) {
+        return validate(all, stamps);
+    }
+
+    /**
+     * Releases read locks acquired by readLockAll.
+     *
+     * @param stamps stamps returned by readLockAll
+     */
+    void unlockReadAll(long[] stamps) {
+        unlockRead(all, stamps);
+    }
+
+    /**
+     * Acquires read locks of stripes in the given order.
+     *
+     * @param stripes stripes in ascending order, e.g. returned by stripes
+     * @return stamps to pass to unlockRead
+     */
+    long[] readLock(int[] stripes) {
+        long[] stamps = new long[stripes.length];
+        for(int i = 0; i < stripes.length; ++i) {
+            stamps[i] = readLock(stripes[i]);
+        }
+        return stamps;
+    }
+
+    /**
+     * Starts optimistic reads of stripes.
+     *
+     * @param stripes stripes to read
+     * @return stamps to pass to validate, or null if a stripe is write locked
+     */
+    long[] tryOptimisticRead(int[] stripes) {
+        long[] stamps = new long[stripes.length];
+        for(int i = 0; i < stripes.length; ++i) {
+            stamps[i] = locks[stripes[i]].tryOptimisticRead();
+            if(stamps[i] == 0) {
+                return null;
+            }
+        }
+        return stamps;
+    }
+
+    /**
+     * @param stripes stripes passed to tryOptimisticRead
+     * @param stamps stamps returned by tryOptimisticRead
+     * @return true if and only if none of the stripes was write locked since the stamps
+     *         were taken, so everything read from them in between is consistent
+     */
+    boolean validate(int[] stripes, long[] stamps) {
+        boolean valid = true;
+        for(int i = 0; i < stripes.length; ++i) {
+            valid &= locks[stripes[i]].validate(stamps[i]);
+        }
+        return valid;
+    }
+
+    /**
+     * Releases read locks acquired by readLock.
+     *
+     * @param stripes stripes passed to readLock
+     * @param stamps stamps returned by readLock
+     */
+    void unlockRead(int[] stripes, long[] stamps) {
+        for(int i = stripes.length - 1; i >= 0; --i) {
+            locks[stripes[i]].unlockRead(stamps[i]);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package minesweeper;
+
+/**
+ * Cells changed by one move on a board, as reported to cell listeners: the version the
+ * move made, the bounding box of the changed cells, which is all a listener that watches
+ * an area needs, and the cells themselves, whose states are read only when asked for.
+ * A flood fill that changes a million cells is reported by one object, not a million calls.
+ * NOT thread safe, and valid only during the call of the listener it is given to, while
+ * the thread that made the move holds the locks of the cells.
+ */
+public class CellChanges {
+
+    /**
+     * Abstraction function
+     *
+     * represents the cells with keys changes[from..to-1] of board, changed by the move
+     * that made version; (minX, minY) and (maxX, maxY) are the corners of their bounding box
+     *
+     * Rep invariant
+     *
+     * 0 &lt;= from &lt; to &lt;= changes.length
+     * minX &lt;= x &lt;= maxX and minY &lt;= y &lt;= maxY for each changed cell (x,y),
+     * and each bound is reached by a changed cell
+     *
+     * Rep exposure
+     *
+     * all fields are private and final; changes is shared with the board on purpose and
+     * never modified or returned
+     */
+
+    private final Board board;
+    private final long[] changes;
+    private final int from;
+    private final int to;
+    private final long version;
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    /**
+     * Makes the report of a move. Called by the board that made the move.
+     *
+     * @param board board the move changed
+     * @param changes keys y * 2^32 + x of changed cells
+     * @param from index of the first change of the move in changes
+     * @param to index after the last change, to &gt; from
+     * @param version version of the board the move made
+     */
+    CellChanges(Board board, long[] changes, int from, int to, long version) {
+        this.board = board;
+        this.changes = changes;
+        this.from = from;
+        this.to = to;
+        this.version = version;
+        int lowX = Integer.MAX_VALUE;
+        int lowY = Integer.MAX_VALUE;
+        int highX = Integer.MIN_VALUE;
+        int highY = Integer.MIN_VALUE;
+        for(int i = from; i < to; ++i) {
+            int x = (int) changes[i];
+            int y = (int) (changes[i] >>> 32);
+            lowX = Math.min(lowX, x);
+            lowY = Math.min(lowY, y);
+            highX = Math.max(highX, x);
+            highY = Math.max(highY, y);
+        }
+        this.minX = lowX;
+        this.minY = lowY;
+        this.maxX = highX;
+        this.maxY = highY;
+    }
+
+    /**
+     * @return version of the board the move made
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return leftmost column of the changed cells
+     */
+    public int minX() {
+        return minX;
+    }
+
+    /**
+     * @return top row of the changed cells
+     */
+    public int minY() {
+        return minY;
+    }
+
+    /**
+     * @return rightmost column of the changed cells
+     */
+    public int maxX() {
+        return maxX;
+    }
+
+    /**
+     * @return bottom row of the changed cells
+     */
+    public int maxY() {
+        return maxY;
+    }
+
+    /**
+     * @param x leftmost column of an area
+     * @param y top row of the area
+     * @param width number of columns of the area
+     * @param height number of rows of the area
+     * @return true if and only if the bounding box of the changed cells meets the area,
+     *         so the move may have changed cells of the area
+     */
+    public boolean intersects(int x, int y, int width, int height) {
+        return maxX >= x && maxY >= y && (long) minX < (long) x + width && (long) minY < (long) y + height;
+    }
+
+    /**
+     * @return number of changes of cells; a cell changed more than once by the move is
+     *         counted each time, with its state after the move
+     */
+    public int count() {
+        return to - from;
+    }
+
+    /**
+     * @param i index of a change, 0 &lt;= i &lt; count()
+     * @return column of the changed cell
+     */
+    public int x(int i) {
+        return (int) changes[from + i];
+    }
+
+    /**
+     * @param i index of a change, 0 &lt;= i &lt; count()
+     * @return row of the changed cell
+     */
+    public int y(int i) {
+        return (int) (changes[from + i] >>> 32);
+    }
+
+    /**
+     * @param i index of a change, 0 &lt;= i &lt; count()
+     * @return state of the changed cell after the move, as in Board.toString
+     */
+    public char square(int i) {
+        return board.heldSquare(x(i), y(i));
+    }
+}
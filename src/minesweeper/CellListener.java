@@ -0,0 +1,21 @@
+package minesweeper;
+
+/**
+ * Receiver of the cells changed by moves on a board, an event stream of the board
+ * at the granularity of cells.
+ */
+public interface CellListener {
+
+    /**
+     * Called once for each move that changed cells, after the move and before other
+     * moves can change its cells again, so changes of a cell are reported in the order
+     * they happened. The report holds the bounding box of the changed cells, and the
+     * cells with their states after the move for a listener that reads them.
+     * Called by the thread that made the move while it holds locks of the board, which
+     * are not reentrant: must return quickly, in constant time as other players wait for
+     * it, must not call any method of the board and must not keep the report after it returns.
+     *
+     * @param changes cells the move changed and version of the board the move made
+     */
+    void cellsChanged(CellChanges changes);
+}
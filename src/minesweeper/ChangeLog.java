@@ -0,0 +1,127 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Log of cells changed by the latest operations on a board.
+ * Each operation that changes the board gets the next version; the log keeps
+ * the last changed cells with the versions of their operations, as many as fit.
+ * Thread safe: appends and queries hold the lock of the log, version is volatile.
+ * The lock is a ReentrantLock rather than a monitor so that virtual threads of players
+ * contending for it release their carrier threads.
+ */
+class ChangeLog {
+
+    /**
+     * Abstraction function
+     *
+     * represents changes of versions firstVersion+1..version of a board:
+     * entry number n, for appended - min(appended, capacity) &lt;= n &lt; appended,
+     * says that cell cells[n mod capacity] changed in version versions[n mod capacity]
+     *
+     * Rep invariant
+     *
+     * versions.length == cells.length &gt; 0
+     * 0 &lt;= firstVersion &lt;= version
+     * versions of entries do not decrease with n and are greater than firstVersion
+     *
+     * Rep exposure
+     *
+     * arrays are private and never shared
+     */
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] versions;
+    private final long[] cells;
+    private long appended = 0;
+    private long firstVersion = 0;
+    private volatile long version = 0;
+
+    /**
+     * Makes an empty log of the given version.
+     *
+     * @param capacity number of changes the log keeps, capacity &gt; 0
+     * @param version version of the board, version &gt;= 0; changes of earlier
+     *                versions are not kept
+     */
+    ChangeLog(int capacity, long version) {
+        versions = new long[capacity];
+        cells = new long[capacity];
+        this.firstVersion = version;
+        this.version = version;
+    }
+
+    /**
+     * @return version of the last operation that changed the board, 0 if none
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Appends changes of an operation under the next version. Must be called while
+     * the operation still holds its stripes, so versions of operations on the same
+     * cells follow the order of the operations.
+     *
+     * @param changes keys of changed cells
+     * @param from index of the first change of the operation in changes
+     * @param to index after the last change, to &gt; from
+     * @return the new version
+     */
+    long append(long[] changes, int from, int to) {
+        lock.lock();
+        try {
+            long next = version + 1;
+            for(int i = from; i < to; ++i) {
+                int slot = (int) (appended % cells.length);
+                if(appended >= cells.length) {
+                    firstVersion = versions[slot];
+                }
+                versions[slot] = next;
+                cells[slot] = changes[i];
+                ++appended;
+            }
+            version = next;
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds cells changed after the given version.
+     *
+     * @param since version of the board
+     * @return keys of cells changed by versions since+1..version() in ascending order
+     *         without repeats, or null if the log does not keep all of them or since &gt; version()
+     */
+    long[] changesSince(long since) {
+        long[] changed;
+        lock.lock();
+        try {
+            if(since < firstVersion || since > version) {
+                return null;
+            }
+            long first = Math.max(0, appended - cells.length);
+            long n = appended;
+            while(n > first && versions[(int) ((n - 1) % cells.length)] > since) {
+                --n;
+            }
+            changed = new long[(int) (appended - n)];
+            for(int i = 0; i < changed.length; ++i) {
+                changed[i] = cells[(int) ((n + i) % cells.length)];
+            }
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(changed);
+        int unique = 0;
+        for(int i = 0; i < changed.length; ++i) {
+            if(unique == 0 || changed[unique - 1] != changed[i]) {
+                changed[unique++] = changed[i];
+            }
+        }
+        return Arrays.copyOf(changed, unique);
+    }
+}
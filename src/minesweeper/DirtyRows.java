@@ -0,0 +1,100 @@
+package minesweeper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of rows of a board that changed since the board was last rendered.
+ * Thread safe: writers of different stripes mark rows concurrently, the renderer
+ * drains them.
+ */
+class DirtyRows {
+
+    /**
+     * Abstraction function
+     *
+     * row y is dirty if and only if bit (y mod 64) of words[y / 64] is set
+     *
+     * Rep invariant
+     *
+     * words.length == ceil(rows / 64), bits of rows &gt;= rows are never set
+     * if a row is dirty, then any is true or a mark call that sets it is not finished
+     *
+     * Thread safety
+     *
+     * words are only changed by atomic operations; any is volatile. mark sets the bit
+     * before any, drain clears any before taking the bits, so a row marked during
+     * drain is either drained or leaves any set.
+     */
+
+    private final AtomicLongArray words;
+    private volatile boolean any;
+
+    /**
+     * Makes a set where all rows are dirty.
+     *
+     * @param rows number of rows, rows &gt; 0
+     */
+    DirtyRows(int rows) {
+        this.words = new AtomicLongArray(((rows - 1) >>> 6) + 1);
+        for(int y = 0; y < rows; ++y) {
+            mark(y);
+        }
+    }
+
+    /**
+     * Marks row as dirty.
+     *
+     * @param row 0 &lt;= row &lt; rows
+     */
+    void mark(int row) {
+        int word = row >>> 6;
+        long bit = 1L << row;
+        if((words.get(word) & bit) == 0) {
+            words.getAndAccumulate(word, bit, (a, b) -> a | b);
+        }
+        if(!any) {
+            any = true;
+        }
+    }
+
+    /**
+     * @return false if no row is dirty; true if some row may be dirty
+     */
+    boolean any() {
+        return any;
+    }
+
+    /**
+     * Removes all dirty rows from the set.
+     *
+     * @param drained array of length ceil(rows / 64), receives the removed rows
+     *                in the same bit layout as the set
+     */
+    void drainTo(long[] drained) {
+        any = false;
+        for(int i = 0; i < drained.length; ++i) {
+            drained[i] = words.get(i) == 0 ? 0 : words.getAndSet(i, 0);
+        }
+    }
+
+    /**
+     * Adds rows drained by drainTo back to the set.
+     *
+     * @param drained rows returned by drainTo
+     */
+    void restore(long[] drained) {
+        for(int i = 0; i < drained.length; ++i) {
+            if(drained[i] != 0) {
+                words.getAndAccumulate(i, drained[i], (a, b) -> a | b);
+                any = true;
+            }
+        }
+    }
+
+    /**
+     * @return length of the array drainTo expects
+     */
+    int wordsNumber() {
+        return words.length();
+    }
+}
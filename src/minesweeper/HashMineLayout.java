@@ -0,0 +1,96 @@
+package minesweeper;
+
+/**
+ * Random layout that stores nothing: whether a cell contains a bomb is decided by
+ * a hash of the seed and the position of the cell, so it takes constant time for any
+ * cell in any order, and the same seed always gives the same bombs.
+ * Immutable.
+ */
+class HashMineLayout implements MineLayout {
+
+    /**
+     * Abstraction function
+     *
+     * cell (x,y) contains a bomb if and only if the highest 53 bits of
+     * hash(seed, x, y) are less than threshold, which happens for a fraction density
+     * of all hashes
+     *
+     * Rep invariant
+     *
+     * columns &gt; 0, rows &gt; 0, 0 &lt;= threshold &lt;= 2^53
+     */
+
+    /** Number of bits of a hash compared with the threshold */
+    private static final int HASH_BITS = 53;
+
+    private final int columns;
+    private final int rows;
+    private final long seed;
+    private final long threshold;
+
+    /**
+     * Makes a random layout.
+     *
+     * @param columns number of columns, columns &gt; 0
+     * @param rows number of rows, rows &gt; 0
+     * @param seed seed of the layout
+     * @param density probability of a cell to contain a bomb, 0 &lt;= density &lt;= 1
+     */
+    HashMineLayout(int columns, int rows, long seed, double density) {
+        if(columns <= 0 || rows <= 0 ){
+            throw new IllegalArgumentException("Number of columns and rows must be greater than zero");
+        }
+        if(!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("Density must be between 0 and 1");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.seed = seed;
+        this.threshold = (long) (density * (1L << HASH_BITS));
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return seed of the layout
+     */
+    long seed() {
+        return seed;
+    }
+
+    /**
+     * @return probability of a cell to contain a bomb, as the layout applies it
+     */
+    double density() {
+        return (double) threshold / (1L << HASH_BITS);
+    }
+
+    @Override
+    public boolean containsBomb(int x, int y) {
+        return hash(seed, x, y) >>> (64 - HASH_BITS) < threshold;
+    }
+
+    /**
+     * Mixes the seed and the position of a cell with the finalizer of SplitMix64,
+     * so that hashes of neighbor cells are independent.
+     *
+     * @param seed seed of a layout
+     * @param x column of a cell
+     * @param y row of a cell
+     * @return 64 well mixed bits
+     */
+    static long hash(long seed, int x, int y) {
+        long z = seed + ((((long) y << 32) | x) + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,28 @@
+package minesweeper;
+
+/**
+ * Placement of bombs on a new board of columns * rows cells.
+ * A board asks its layout for bombs of cells when it allocates their tile, so a layout
+ * that computes bombs instead of storing them lets the board leave untouched tiles
+ * unallocated.
+ * Implementations must be immutable and thread safe.
+ */
+interface MineLayout {
+
+    /**
+     * @return number of columns of the board, &gt; 0
+     */
+    int columns();
+
+    /**
+     * @return number of rows of the board, &gt; 0
+     */
+    int rows();
+
+    /**
+     * @param x 0 &lt;= x &lt; columns
+     * @param y 0 &lt;= y &lt; rows
+     * @return true if and only if cell (x,y) of a new board contains a bomb
+     */
+    boolean containsBomb(int x, int y);
+}
@@ -0,0 +1,13 @@
+package minesweeper;
+
+/**
+ * Kind of a move a player makes on a board.
+ */
+public enum Move {
+    /** digIfUntouched */
+    DIG,
+    /** flagIfUntouched */
+    FLAG,
+    /** deflagIfFlagged */
+    DEFLAG
+}
@@ -0,0 +1,22 @@
+package minesweeper;
+
+/**
+ * Receiver of the moves that change a board.
+ */
+public interface MoveListener {
+
+    /**
+     * Called after a move changed the board, before other moves can change the cells
+     * it changed, so moves on the same cells are reported in the order they happened.
+     * Moves that change nothing are not reported.
+     * Called by the thread that made the move while it holds locks of the board, which
+     * are not reentrant: must return quickly, in constant time as other players wait for
+     * it, and must not call any method of the board.
+     *
+     * @param move kind of the move
+     * @param x column of the cell of the move
+     * @param y row of the cell of the move
+     * @param version version of the board the move made
+     */
+    void moved(Move move, int x, int y, long version);
+}
@@ -0,0 +1,13 @@
+package minesweeper;
+
+/**
+ * Outcome of one move of a batch, see Board.applyMoves.
+ */
+public enum MoveResult {
+    /** the move found its cell in a state it does not apply to */
+    UNCHANGED,
+    /** the move changed the board */
+    CHANGED,
+    /** the move dug a cell that contained a bomb, and removed the bomb */
+    BOOM
+}
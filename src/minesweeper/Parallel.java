@@ -0,0 +1,42 @@
+package minesweeper;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Runs independent tasks of building a board on several threads.
+ */
+class Parallel {
+
+    /** Default number of threads, one per processor */
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private Parallel() {
+    }
+
+    /**
+     * Runs task(i) for each 0 &lt;= i &lt; tasks in some order, on at most threads threads,
+     * and returns when all are done. The tasks must not depend on each other or on
+     * the order they run in.
+     *
+     * @param tasks number of tasks, tasks &gt;= 0
+     * @param threads number of threads, threads &gt; 0; 1 runs the tasks in the caller
+     * @param task body of task i
+     * @throws RuntimeException if a task throws one
+     */
+    static void forEach(int tasks, int threads, IntConsumer task) {
+        if(threads == 1 || tasks <= 1) {
+            for(int i = 0; i < tasks; ++i) {
+                task.accept(i);
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, tasks).parallel().forEach(task)).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
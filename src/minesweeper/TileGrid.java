@@ -0,0 +1,412 @@
+package minesweeper;
+
+import static minesweeper.BoardStripes.TILE;
+import static minesweeper.BoardStripes.TILE_SHIFT;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cells of a board, stored in tiles of TILE x TILE cells that are allocated only
+ * when they are first written. A tile that is not allocated has all cells untouched,
+ * with bombs given by the layout of the board.
+ * Thread safe as far as Board uses it: a tile is only allocated and written by
+ * the holder of the write lock of its stripe; see Board for the locking of cells.
+ */
+class TileGrid {
+
+    /**
+     * Abstraction function
+     *
+     * represents cells of a board of columns * rows cells; cell (x,y) is
+     * tile(x &gt;&gt; TILE_SHIFT, y &gt;&gt; TILE_SHIFT)[offset(x,y)] if the tile is allocated,
+     * otherwise an untouched cell with a bomb if and only if the layout places one on (x,y)
+     * and with the number of adjacent bombs not computed yet.
+     * Tiles are leaves of a tree of depth levels: a node below the root is an array of
+     * FANOUT x FANOUT children, child ((ty &gt;&gt; shift) mod FANOUT) * FANOUT
+     * + (tx &gt;&gt; shift) mod FANOUT, where shift decreases by FANOUT_SHIFT from
+     * FANOUT_SHIFT * (levels - 1) at the root to 0 at the leaves. The root is an array of
+     * rootX * rootY children, child (ty &gt;&gt; shift) * rootX + (tx &gt;&gt; shift).
+     * A node is allocated when the first tile under it is.
+     *
+     * Rep invariant
+     *
+     * tilesX == ceil(columns / TILE), tilesY == ceil(rows / TILE)
+     * levels is the least number &gt;= 1 such that FANOUT^levels &gt;= max(tilesX, tilesY)
+     * allocated tiles have TILE * TILE cells, cells outside the board are 0
+     * a bomb of a cell in a tile that is not allocated was never removed
+     *
+     * Rep exposure
+     *
+     * tiles are returned to Board on purpose, Board is their only writer
+     *
+     * Thread safety
+     *
+     * nodes and tiles are published through atomic arrays, so a reader that finds
+     * a tile sees it initialized. Nodes are shared by stripes and are installed by
+     * compareAndSet; a tile is installed only by the holder of its stripe. A new tile
+     * takes counts of adjacent bombs from bombs of the neighbor tiles next to it,
+     * and those bombs are only removed by digs that hold the stripe of the new tile.
+     *
+     * Memory
+     *
+     * The tree takes a few KB for a board of any size until tiles are allocated.
+     * Each allocated tile takes TILE * TILE bytes, and the first tile in an area of
+     * FANOUT^k x FANOUT^k tiles adds a node of FANOUT * FANOUT references for each k.
+     */
+
+    /** log2 of the number of children on a side of a node */
+    private static final int FANOUT_SHIFT = 6;
+    /** Number of children on a side of a node */
+    private static final int FANOUT = 1 << FANOUT_SHIFT;
+    /** Side of the area of cells a new tile reads bombs from: the tile and a ring around it */
+    private static final int HALO = TILE + 2;
+
+    private final MineLayout layout;
+    private final int columns;
+    private final int rows;
+    private final int tilesX;
+    private final int tilesY;
+    private final int levels;
+    private final int rootX;
+    private final AtomicReferenceArray<Object> root;
+
+    /**
+     * Makes a grid where no tile is allocated.
+     *
+     * @param layout bombs of the board
+     */
+    TileGrid(MineLayout layout) {
+        this.layout = layout;
+        this.columns = layout.columns();
+        this.rows = layout.rows();
+        this.tilesX = ((columns - 1) >> TILE_SHIFT) + 1;
+        this.tilesY = ((rows - 1) >> TILE_SHIFT) + 1;
+        int levels = 1;
+        while((1L << (FANOUT_SHIFT * levels)) < Math.max(tilesX, tilesY)) {
+            ++levels;
+        }
+        this.levels = levels;
+        int shift = rootShift();
+        this.rootX = ((tilesX - 1) >> shift) + 1;
+        this.root = new AtomicReferenceArray<>(rootX * (((tilesY - 1) >> shift) + 1));
+    }
+
+    /**
+     * @return number of tiles in a row of tiles
+     */
+    int tilesX() {
+        return tilesX;
+    }
+
+    /**
+     * @return number of tiles in a column of tiles
+     */
+    int tilesY() {
+        return tilesY;
+    }
+
+    /**
+     * @param x column of a cell
+     * @param y row of a cell
+     * @return index of cell (x,y) in its tile
+     */
+    static int offset(int x, int y) {
+        return ((y & (TILE - 1)) << TILE_SHIFT) | (x & (TILE - 1));
+    }
+
+    /**
+     * @return shift of tile coordinates at the root
+     */
+    private int rootShift() {
+        return FANOUT_SHIFT * (levels - 1);
+    }
+
+    /**
+     * @param tx column of a tile
+     * @param ty row of a tile
+     * @param shift shift of tile coordinates at a node below the root
+     * @return index of the child of the node on the path to tile (tx,ty)
+     */
+    private static int child(int tx, int ty, int shift) {
+        return (((ty >> shift) & (FANOUT - 1)) << FANOUT_SHIFT) | ((tx >> shift) & (FANOUT - 1));
+    }
+
+    /**
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @return cells of tile (tx,ty), or null if the tile is not allocated
+     */
+    @SuppressWarnings("unchecked")
+    byte[] tile(int tx, int ty) {
+        int shift = rootShift();
+        Object node = root.get((ty >> shift) * rootX + (tx >> shift));
+        while(shift > 0 && node != null) {
+            shift -= FANOUT_SHIFT;
+            node = ((AtomicReferenceArray<Object>) node).get(child(tx, ty, shift));
+        }
+        return (byte[]) node;
+    }
+
+    /**
+     * @return layout of bombs of tiles that are not allocated
+     */
+    MineLayout layout() {
+        return layout;
+    }
+
+    /**
+     * Finds tile (tx,ty), allocating it if needed.
+     * Requires the write lock of the stripe of the tile, unless the board is not shared yet.
+     *
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @return cells of tile (tx,ty)
+     */
+    byte[] writableTile(int tx, int ty) {
+        AtomicReferenceArray<Object> node = leafNode(tx, ty);
+        int index = leafIndex(tx, ty);
+        byte[] tile = (byte[]) node.get(index);
+        if(tile == null) {
+            tile = newTile(tx, ty);
+            node.set(index, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Installs a tile of a saved board in place of tile (tx,ty). Requires the board
+     * not to be shared yet; numbers of adjacent bombs of installed tiles are computed
+     * by countInstalled.
+     *
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @param tile TILE * TILE cells with bomb and state bits, 0 outside the board
+     */
+    void install(int tx, int ty, byte[] tile) {
+        leafNode(tx, ty).set(leafIndex(tx, ty), tile);
+    }
+
+    /**
+     * Computes numbers of adjacent bombs of all allocated tiles from current bombs,
+     * after tiles are installed. Requires the board not to be shared yet.
+     */
+    void countInstalled() {
+        final byte[] halo = new byte[HALO * HALO];
+        forEachAllocated((tx, ty, tile) -> {
+            fillHalo(tx, ty, halo);
+            int width = Math.min(TILE, columns - (tx << TILE_SHIFT));
+            int height = Math.min(TILE, rows - (ty << TILE_SHIFT));
+            for(int cy = 0; cy < TILE; ++cy) {
+                for(int cx = 0; cx < TILE; ++cx) {
+                    int i = (cy << TILE_SHIFT) | cx;
+                    tile[i] = (byte) (cx < width && cy < height
+                            ? (tile[i] & ~Board.COUNT_MASK) | haloCount(halo, cx, cy) : 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the node that holds tile (tx,ty), allocating nodes on the way if needed.
+     *
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @return node whose child leafIndex(tx,ty) is the tile
+     */
+    @SuppressWarnings("unchecked")
+    private AtomicReferenceArray<Object> leafNode(int tx, int ty) {
+        int shift = rootShift();
+        AtomicReferenceArray<Object> node = root;
+        int index = (ty >> shift) * rootX + (tx >> shift);
+        while(shift > 0) {
+            if(node.get(index) == null) {
+                node.compareAndSet(index, null, new AtomicReferenceArray<Object>(FANOUT * FANOUT));
+            }
+            node = (AtomicReferenceArray<Object>) node.get(index);
+            shift -= FANOUT_SHIFT;
+            index = child(tx, ty, shift);
+        }
+        return node;
+    }
+
+    /**
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @return index of tile (tx,ty) in the node returned by leafNode
+     */
+    private int leafIndex(int tx, int ty) {
+        return levels == 1 ? ty * rootX + tx : child(tx, ty, 0);
+    }
+
+    /**
+     * Allocates all tiles, for boards whose bombs are all known up front.
+     * Rows of tiles are allocated in parallel: nodes are installed by compare and set,
+     * and a tile reads only bombs of its neighbours, which are the same in the layout
+     * and in a neighbour tile allocated meanwhile.
+     * Requires the board not to be shared yet.
+     *
+     * @param threads number of threads allocating tiles, threads &gt; 0
+     */
+    void allocateAll(int threads) {
+        Parallel.forEach(tilesY, threads, ty -> {
+            for(int tx = 0; tx < tilesX; ++tx) {
+                writableTile(tx, ty);
+            }
+        });
+    }
+
+    /**
+     * Receives allocated tiles from forEachAllocated.
+     */
+    interface TileVisitor {
+        /**
+         * @param tx column of the tile
+         * @param ty row of the tile
+         * @param tile cells of the tile
+         */
+        void visit(int tx, int ty, byte[] tile);
+    }
+
+    /**
+     * Calls the visitor for each allocated tile, skipping nodes that are not allocated.
+     *
+     * @param visitor receiver of the tiles
+     */
+    void forEachAllocated(TileVisitor visitor) {
+        visit(root, rootShift(), 0, 0, rootX, visitor);
+    }
+
+    /**
+     * Calls the visitor for each allocated tile under a node.
+     *
+     * @param node node of the tree
+     * @param shift shift of tile coordinates at the node
+     * @param firstTx column of the first tile under the node
+     * @param firstTy row of the first tile under the node
+     * @param width number of children on a side of the node
+     * @param visitor receiver of the tiles
+     */
+    @SuppressWarnings("unchecked")
+    private static void visit(AtomicReferenceArray<Object> node, int shift,
+            int firstTx, int firstTy, int width, TileVisitor visitor) {
+        for(int i = 0; i < node.length(); ++i) {
+            Object child = node.get(i);
+            if(child == null) {
+                continue;
+            }
+            int tx = firstTx + ((i % width) << shift);
+            int ty = firstTy + ((i / width) << shift);
+            if(shift == 0) {
+                visitor.visit(tx, ty, (byte[]) child);
+            } else {
+                visit((AtomicReferenceArray<Object>) child, shift - FANOUT_SHIFT, tx, ty, FANOUT, visitor);
+            }
+        }
+    }
+
+    /**
+     * Makes cells of tile (tx,ty) from the layout, with counts of adjacent bombs.
+     *
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @return untouched cells of the tile
+     */
+    private byte[] newTile(int tx, int ty) {
+        byte[] halo = new byte[HALO * HALO];
+        fillHalo(tx, ty, halo);
+        byte[] tile = new byte[TILE * TILE];
+        int width = Math.min(TILE, columns - (tx << TILE_SHIFT));
+        int height = Math.min(TILE, rows - (ty << TILE_SHIFT));
+        for(int cy = 0; cy < height; ++cy) {
+            for(int cx = 0; cx < width; ++cx) {
+                int bomb = halo[(cy + 1) * HALO + cx + 1] != 0 ? Board.BOMB : 0;
+                tile[(cy << TILE_SHIFT) | cx] = (byte) (bomb | haloCount(halo, cx, cy));
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Finds bombs of tile (tx,ty) and of the cells around it: halo[(cy + 1) * HALO + cx + 1]
+     * is 1 if cell (cx,cy) relative to the tile is on the board and contains a bomb,
+     * 0 otherwise, for -1 &lt;= cx, cy &lt;= TILE.
+     * Reads bombs of allocated tiles from their cells and of the other tiles from the layout.
+     *
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @param halo array of HALO * HALO bytes that receives the bombs
+     */
+    void fillHalo(int tx, int ty, byte[] halo) {
+        int fromX = (tx << TILE_SHIFT) - 1;
+        int fromY = (ty << TILE_SHIFT) - 1;
+        byte[] source = null;
+        int sourceTx = -1;
+        int sourceTy = -1;
+        for(int hy = 0; hy < HALO; ++hy) {
+            int y = fromY + hy;
+            for(int hx = 0; hx < HALO; ++hx) {
+                int x = fromX + hx;
+                boolean bomb = false;
+                if(x >= 0 && x < columns && y >= 0 && y < rows) {
+                    if(x >> TILE_SHIFT != sourceTx || y >> TILE_SHIFT != sourceTy) {
+                        sourceTx = x >> TILE_SHIFT;
+                        sourceTy = y >> TILE_SHIFT;
+                        source = tile(sourceTx, sourceTy);
+                    }
+                    bomb = source != null
+                            ? (source[offset(x, y)] & Board.BOMB) != 0
+                            : layout.containsBomb(x, y);
+                }
+                halo[hy * HALO + hx] = (byte) (bomb ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * @param halo bombs around a tile, as filled by fillHalo
+     * @param cx column of a cell in the tile, 0 &lt;= cx &lt; TILE
+     * @param cy row of a cell in the tile, 0 &lt;= cy &lt; TILE
+     * @return number of bombs adjacent to the cell
+     */
+    static int haloCount(byte[] halo, int cx, int cy) {
+        int center = (cy + 1) * HALO + cx + 1;
+        return halo[center - HALO - 1] + halo[center - HALO] + halo[center - HALO + 1]
+                + halo[center - 1] + halo[center + 1]
+                + halo[center + HALO - 1] + halo[center + HALO] + halo[center + HALO + 1];
+    }
+
+    /**
+     * @return number of bytes fillHalo expects
+     */
+    static int haloSize() {
+        return HALO * HALO;
+    }
+
+    /**
+     * Copies bomb and state bits of the cells of tile (tx,ty), in the same order as
+     * in an allocated tile, without allocating the tile.
+     *
+     * @param tx 0 &lt;= tx &lt; tilesX
+     * @param ty 0 &lt;= ty &lt; tilesY
+     * @param cells array of TILE * TILE bytes that receives the bits
+     */
+    void bombsAndStates(int tx, int ty, byte[] cells) {
+        byte[] tile = tile(tx, ty);
+        if(tile != null) {
+            for(int i = 0; i < cells.length; ++i) {
+                cells[i] = (byte) (tile[i] & (Board.BOMB | Board.STATE_MASK));
+            }
+            return;
+        }
+        int fromX = tx << TILE_SHIFT;
+        int fromY = ty << TILE_SHIFT;
+        for(int cy = 0; cy < TILE; ++cy) {
+            for(int cx = 0; cx < TILE; ++cx) {
+                int x = fromX + cx;
+                int y = fromY + cy;
+                boolean bomb = x < columns && y < rows && layout.containsBomb(x, y);
+                cells[(cy << TILE_SHIFT) | cx] = (byte) (bomb ? Board.BOMB : 0);
+            }
+        }
+    }
+}
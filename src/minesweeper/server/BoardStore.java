@@ -0,0 +1,227 @@
+package minesweeper.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import minesweeper.Board;
+
+/**
+ * Durable storage of a board in a data directory: a snapshot of the board plus a
+ * write-ahead log of the moves made since, so that a restarted server continues the
+ * game where it stopped.
+ * The directory holds snapshot.board, saved by Board.save, and log segments
+ * moves-N.log, see MoveLog. Snapshots are taken periodically in the background while
+ * players go on; each snapshot starts a new segment and deletes the segments it
+ * covers, so recovery replays at most the moves of one snapshot interval.
+ * Thread safe: snapshot, sync and close are synchronized, the log is thread safe.
+ */
+public class BoardStore implements Closeable {
+
+    /**
+     * Abstraction function
+     *
+     * represents the state of board in directory: the snapshot plus the moves in the
+     * segments, the last of which is segmentNumber and is appended by log
+     *
+     * Rep invariant
+     *
+     * board == null if and only if log == null, segments with numbers less than
+     * segmentNumber are covered by the snapshot once it is saved
+     *
+     * Rep exposure
+     *
+     * all fields are private, the board is shared with the server on purpose
+     */
+
+    /** Name of the snapshot file */
+    private static final String SNAPSHOT = "snapshot.board";
+    /** Name of the snapshot while it is being written */
+    private static final String SNAPSHOT_TEMPORARY = SNAPSHOT + ".tmp";
+    /** Names of log segments, group 1 is the number of the segment */
+    private static final Pattern SEGMENT = Pattern.compile("moves-(\\d+)\\.log");
+
+    private final Path directory;
+    private final long snapshotSeconds;
+    private Board board = null;
+    private MoveLog log = null;
+    private long segmentNumber;
+    private ScheduledExecutorService snapshots = null;
+
+    /**
+     * Makes a store in a directory, creating it if missing.
+     *
+     * @param directory data directory
+     * @param snapshotSeconds seconds between snapshots, &gt; 0
+     * @throws IOException if the directory cannot be created
+     */
+    public BoardStore(File directory, long snapshotSeconds) throws IOException {
+        this.directory = directory.toPath();
+        this.snapshotSeconds = snapshotSeconds;
+        Files.createDirectories(this.directory);
+        this.segmentNumber = lastSegment() + 1;
+    }
+
+    /**
+     * @return true if and only if the directory holds a board to recover
+     */
+    public boolean hasSnapshot() {
+        return Files.isRegularFile(directory.resolve(SNAPSHOT));
+    }
+
+    /**
+     * Restores the board from the snapshot and the moves logged after it, then logs the
+     * moves of the board from now on. The moves of a torn tail of the log are lost.
+     * Requires hasSnapshot() and that the store holds no board yet.
+     *
+     * @return the restored board
+     * @throws IOException if the snapshot or the log cannot be read
+     */
+    public synchronized Board recover() throws IOException {
+        Board recovered = Board.load(directory.resolve(SNAPSHOT).toFile());
+        MoveLog.replay(segments(), recovered);
+        attach(recovered);
+        return recovered;
+    }
+
+    /**
+     * Logs the moves of a new board from now on, replacing whatever the directory held.
+     * Requires that the store holds no board yet.
+     *
+     * @param board board to store
+     * @throws IOException if the board cannot be saved
+     */
+    public synchronized void start(Board board) throws IOException {
+        Files.deleteIfExists(directory.resolve(SNAPSHOT));
+        for(Path segment : segments()) {
+            Files.delete(segment);
+        }
+        attach(board);
+    }
+
+    /**
+     * Starts the log of a board, saves a snapshot and schedules the next ones.
+     *
+     * @param board board to store
+     * @throws IOException if the board cannot be saved
+     */
+    private void attach(Board board) throws IOException {
+        this.board = board;
+        this.log = new MoveLog(segment(segmentNumber));
+        board.addMoveListener(log);
+        snapshot();
+        snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "board-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch(IOException e) {
+                Log.SERVER.error("Snapshot failed", e); // the log still has the moves, try again later
+            }
+        }, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Saves a snapshot of the board and deletes the log segments it covers.
+     * Does nothing once the store is closed.
+     * Players keep moving while the snapshot is saved: moves made during the save
+     * go to a new segment and are replayed on top of the snapshot if they are not in it.
+     *
+     * @throws IOException if the snapshot cannot be saved
+     */
+    public synchronized void snapshot() throws IOException {
+        if(log == null) {
+            return;
+        }
+        log.rotate(segment(++segmentNumber));
+        Path temporary = directory.resolve(SNAPSHOT_TEMPORARY);
+        board.save(temporary.toFile());
+        Files.move(temporary, directory.resolve(SNAPSHOT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for(Path segment : segments()) {
+            if(number(segment) < segmentNumber) {
+                Files.delete(segment);
+            }
+        }
+    }
+
+    /**
+     * Waits until the moves made before the call are durable.
+     *
+     * @throws IOException if the log failed
+     */
+    public synchronized void sync() throws IOException {
+        log.sync();
+    }
+
+    /**
+     * Stops snapshots and closes the log after making the logged moves durable.
+     * The board no longer is stored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(log == null) {
+            return;
+        }
+        snapshots.shutdownNow();
+        board.removeMoveListener(log);
+        log.close();
+        log = null;
+        board = null;
+    }
+
+    /**
+     * @param number number of a segment
+     * @return file of the segment
+     */
+    private Path segment(long number) {
+        return directory.resolve(String.format("moves-%08d.log", number));
+    }
+
+    /**
+     * @param segment file of a segment
+     * @return number of the segment
+     */
+    private static long number(Path segment) {
+        Matcher matcher = SEGMENT.matcher(segment.getFileName().toString());
+        matcher.matches();
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * @return segments in the directory in the order they were written
+     * @throws IOException if the directory cannot be listed
+     */
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try(Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> SEGMENT.matcher(file.getFileName().toString()).matches())
+                    .forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(number(a), number(b)));
+        return segments;
+    }
+
+    /**
+     * @return number of the last segment in the directory, or 0 if there is none
+     * @throws IOException if the directory cannot be listed
+     */
+    private long lastSegment() throws IOException {
+        List<Path> segments = segments();
+        return segments.isEmpty() ? 0 : number(segments.get(segments.size() - 1));
+    }
+}
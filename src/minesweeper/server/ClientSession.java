@@ -0,0 +1,191 @@
+package minesweeper.server;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * State of a connection of one client to the server.
+ * NOT thread safe: used only while holding its lock, by the thread that handles the
+ * connection and by the pusher thread of its subscription.
+ */
+class ClientSession {
+
+    // Abstraction function
+    // Represents a client that receives whole boards if !deltaMode, or changes since
+    // version version of the board if deltaMode; outside delta mode, a client with
+    // viewWidth > 0 receives only the viewport of viewWidth * viewHeight cells whose
+    // top left cell is (viewX, viewY) instead of whole boards; version is the version
+    // of the board the client knows at least, from the last board message it received;
+    // subscription pushes updates to the client once it subscribed; command holds the
+    // request of the client being handled; if collapseRenders, board messages for requests
+    // followed by further requests already received are left out, and renderPending is
+    // true if such a message was left out since the client last received a board message
+
+    // Rep invariant
+    // viewWidth == 0 if and only if viewHeight == 0, both >= 0
+
+    // Rep exposure
+    // all fields are private, primitives except subscription, lock and command, which
+    // are shared with the server on purpose
+
+    private boolean deltaMode = false;
+    private long version = -1;
+    private int viewX = 0;
+    private int viewY = 0;
+    private int viewWidth = 0;
+    private int viewHeight = 0;
+    private Subscription subscription = null;
+    private boolean collapseRenders = false;
+    private boolean renderPending = false;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Command command = new Command();
+
+    /**
+     * @return lock of the session; a ReentrantLock rather than the monitor of the
+     *         session, so that a virtual thread waiting for it, or for the board while
+     *         holding it, releases its carrier thread
+     */
+    ReentrantLock lock() {
+        return lock;
+    }
+
+    /**
+     * @return true if and only if the client asked for changes instead of whole boards
+     */
+    boolean isDeltaMode() {
+        return deltaMode;
+    }
+
+    /**
+     * Switches the client to delta mode.
+     *
+     * @param version version of the board the client knows, negative if none
+     */
+    void startDeltaMode(long version) {
+        this.deltaMode = true;
+        this.version = version;
+    }
+
+    /**
+     * @return version of the board the client knows at least, negative if none
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * @param version version of the board sent to the client
+     */
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return true if and only if the client asked to receive only the last of the board
+     *         messages for requests it sent together
+     */
+    boolean collapsesRenders() {
+        return collapseRenders;
+    }
+
+    /**
+     * @param collapse true to send only the last of the board messages for requests the
+     *                 client sent together, false to send a message for each request
+     */
+    void setCollapseRenders(boolean collapse) {
+        this.collapseRenders = collapse;
+    }
+
+    /**
+     * @return true if and only if a board message was left out since the client last
+     *         received one
+     */
+    boolean isRenderPending() {
+        return renderPending;
+    }
+
+    /**
+     * @param pending true if a board message was left out, false once one is sent
+     */
+    void setRenderPending(boolean pending) {
+        this.renderPending = pending;
+    }
+
+    /**
+     * @return true if and only if the client asked for a viewport instead of whole boards
+     */
+    boolean hasViewport() {
+        return viewWidth > 0;
+    }
+
+    /**
+     * Makes the client receive a viewport of the board instead of whole boards.
+     *
+     * @param x leftmost column of the viewport
+     * @param y top row of the viewport
+     * @param width number of columns of the viewport, width &gt; 0
+     * @param height number of rows of the viewport, height &gt; 0
+     */
+    void setViewport(int x, int y, int width, int height) {
+        this.viewX = x;
+        this.viewY = y;
+        this.viewWidth = width;
+        this.viewHeight = height;
+    }
+
+    /**
+     * Makes the client receive whole boards again.
+     */
+    void clearViewport() {
+        viewWidth = 0;
+        viewHeight = 0;
+    }
+
+    /**
+     * @return leftmost column of the viewport, requires hasViewport()
+     */
+    int viewX() {
+        return viewX;
+    }
+
+    /**
+     * @return top row of the viewport, requires hasViewport()
+     */
+    int viewY() {
+        return viewY;
+    }
+
+    /**
+     * @return number of columns of the viewport, requires hasViewport()
+     */
+    int viewWidth() {
+        return viewWidth;
+    }
+
+    /**
+     * @return number of rows of the viewport, requires hasViewport()
+     */
+    int viewHeight() {
+        return viewHeight;
+    }
+
+    /**
+     * @return command the requests of the client are parsed into, reused for all of them
+     */
+    Command command() {
+        return command;
+    }
+
+    /**
+     * @return pusher of updates to the client, null if none was set
+     */
+    Subscription subscription() {
+        return subscription;
+    }
+
+    /**
+     * @param subscription pusher of updates to the client
+     */
+    void setSubscription(Subscription subscription) {
+        this.subscription = subscription;
+    }
+}
@@ -0,0 +1,391 @@
+package minesweeper.server;
+
+import java.util.Arrays;
+
+import minesweeper.Move;
+
+/**
+ * Request of a client, parsed from a line by the grammar of messages from the user in
+ * protocol.md. The tokenizer reads the characters of the line once, left to right, and
+ * makes no objects: no pattern, no tokens, no boxed numbers. A connection parses all its
+ * requests into the same Command, whose array of batch moves only grows, so parsing a
+ * request allocates nothing once the connection has run its longest batch.
+ * NOT thread safe: used only while holding the lock of the session it belongs to.
+ */
+class Command {
+
+    /**
+     * Kinds of requests of the protocol.
+     */
+    enum Kind {
+        /** "look" */
+        LOOK,
+        /** "look X Y W H" */
+        VIEW,
+        /** "dig X Y" */
+        DIG,
+        /** "flag X Y" */
+        FLAG,
+        /** "deflag X Y" */
+        DEFLAG,
+        /** "batch" followed by moves */
+        BATCH,
+        /** "delta VERSION" */
+        DELTA,
+        /** "subscribe RATE" */
+        SUBSCRIBE,
+        /** "unsubscribe" */
+        UNSUBSCRIBE,
+        /** "collapse on" or "collapse off" */
+        COLLAPSE,
+        /** "stats" */
+        STATS,
+        /** "help" */
+        HELP,
+        /** "bye" */
+        BYE
+    }
+
+    /**
+     * Abstraction function
+     *
+     * represents the request last parsed, none if kind == null: a request of kind kind,
+     * on cell (x, y) for DIG, FLAG and DEFLAG, on width columns and height rows from
+     * cell (x, y) for VIEW, with version number for DELTA, rate number for SUBSCRIBE and
+     * on if number == 1, off if number == 0, for COLLAPSE,
+     * and for BATCH the moves moves[i] on cells (moveXs[i], moveYs[i]) for 0 &lt;= i &lt; count
+     *
+     * Rep invariant
+     *
+     * moves.length == moveXs.length == moveYs.length &gt; 0
+     * 0 &lt;= count &lt;= moves.length, count &gt; 0 if kind == BATCH
+     * line == null between calls of parse
+     *
+     * Rep exposure
+     *
+     * all fields are private; arrays are never shared, moves are returned one by one
+     */
+
+    /** Initial number of moves of a batch the command holds */
+    private static final int INITIAL_MOVES = 16;
+
+    private Kind kind = null;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private long number;
+    private Move[] moves = new Move[INITIAL_MOVES];
+    private int[] moveXs = new int[INITIAL_MOVES];
+    private int[] moveYs = new int[INITIAL_MOVES];
+    private int count = 0;
+    /** Line being parsed */
+    private CharSequence line = null;
+    /** Index of the next character of line to read */
+    private int position;
+
+    private void checkRep() {
+        assert moves.length == moveXs.length && moves.length == moveYs.length && moves.length > 0;
+        assert 0 <= count && count <= moves.length;
+        assert kind != Kind.BATCH || count > 0;
+        assert line == null;
+    }
+
+    /**
+     * Parses a line as a request, replacing the request parsed before.
+     *
+     * @param input line from a client, without its line break
+     * @return true if and only if input is a message of the protocol; the command holds
+     *         the request then, and no request otherwise
+     */
+    boolean parse(CharSequence input) {
+        line = input;
+        position = 0;
+        count = 0;
+        kind = parseMessage();
+        if(position != line.length()) {
+            kind = null;
+        }
+        line = null;
+        checkRep();
+        return kind != null;
+    }
+
+    /**
+     * Reads a message from position.
+     *
+     * @return its kind, null if the line does not start with a message
+     */
+    private Kind parseMessage() {
+        if(word("look")) {
+            if(atEnd()) {
+                return Kind.LOOK;
+            }
+            if(!coordinates()) {
+                return null;
+            }
+            if(!space() || !integer(true, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                return null;
+            }
+            width = (int) number;
+            if(!space() || !integer(true, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                return null;
+            }
+            height = (int) number;
+            return Kind.VIEW;
+        } else if(word("dig")) {
+            return coordinates() ? Kind.DIG : null;
+        } else if(word("flag")) {
+            return coordinates() ? Kind.FLAG : null;
+        } else if(word("deflag")) {
+            return coordinates() ? Kind.DEFLAG : null;
+        } else if(word("batch")) {
+            while(!atEnd()) {
+                if(!space()) {
+                    return null;
+                }
+                Move move = move();
+                if(move == null || !coordinates()) {
+                    return null;
+                }
+                add(move);
+            }
+            return count > 0 ? Kind.BATCH : null;
+        } else if(word("delta")) {
+            return space() && integer(true, Long.MIN_VALUE, Long.MAX_VALUE) ? Kind.DELTA : null;
+        } else if(word("subscribe")) {
+            return space() && integer(false, 0, Integer.MAX_VALUE) ? Kind.SUBSCRIBE : null;
+        } else if(word("unsubscribe")) {
+            return Kind.UNSUBSCRIBE;
+        } else if(word("collapse")) {
+            if(!space()) {
+                return null;
+            }
+            if(word("on")) {
+                number = 1;
+            } else if(word("off")) {
+                number = 0;
+            } else {
+                return null;
+            }
+            return Kind.COLLAPSE;
+        } else if(word("stats")) {
+            return Kind.STATS;
+        } else if(word("help")) {
+            return Kind.HELP;
+        } else if(word("bye")) {
+            return Kind.BYE;
+        }
+        return null;
+    }
+
+    /**
+     * @return the move named at position, which is skipped, or null if none
+     */
+    private Move move() {
+        if(word("dig")) {
+            return Move.DIG;
+        } else if(word("flag")) {
+            return Move.FLAG;
+        } else if(word("deflag")) {
+            return Move.DEFLAG;
+        }
+        return null;
+    }
+
+    /**
+     * Reads " X Y" into x and y.
+     *
+     * @return true if and only if read
+     */
+    private boolean coordinates() {
+        if(!space() || !integer(true, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            return false;
+        }
+        x = (int) number;
+        if(!space() || !integer(true, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            return false;
+        }
+        y = (int) number;
+        return true;
+    }
+
+    /**
+     * Skips a word if the line has it at position.
+     *
+     * @param word word of the protocol
+     * @return true if and only if the line has word at position
+     */
+    private boolean word(String word) {
+        int length = word.length();
+        if(line.length() - position < length) {
+            return false;
+        }
+        for(int i = 0; i < length; ++i) {
+            if(line.charAt(position + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        position += length;
+        return true;
+    }
+
+    /**
+     * Skips a space if the line has one at position.
+     *
+     * @return true if and only if the line has a space at position
+     */
+    private boolean space() {
+        if(atEnd() || line.charAt(position) != ' ') {
+            return false;
+        }
+        ++position;
+        return true;
+    }
+
+    /**
+     * @return true if and only if all of the line was read
+     */
+    private boolean atEnd() {
+        return position == line.length();
+    }
+
+    /**
+     * Reads a decimal integer at position into number, accumulating it as a negative
+     * number like Long.parseLong, so that overflow is found without wider arithmetic.
+     *
+     * @param signed true if the integer may start with '-'
+     * @param min least value allowed
+     * @param max greatest value allowed
+     * @return true if and only if the line has an integer from min to max at position
+     */
+    private boolean integer(boolean signed, long min, long max) {
+        boolean negative = signed && position < line.length() && line.charAt(position) == '-';
+        if(negative) {
+            ++position;
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        int start = position;
+        while(position < line.length()) {
+            int digit = line.charAt(position) - '0';
+            if(digit < 0 || digit > 9) {
+                break;
+            }
+            if(result < limit / 10 || result * 10 < limit + digit) {
+                return false;
+            }
+            result = result * 10 - digit;
+            ++position;
+        }
+        if(position == start) {
+            return false;
+        }
+        number = negative ? result : -result;
+        return number >= min && number <= max;
+    }
+
+    /**
+     * Adds a move of a batch on cell (x, y), growing the arrays of moves if full.
+     *
+     * @param move kind of the move
+     */
+    private void add(Move move) {
+        if(count == moves.length) {
+            moves = Arrays.copyOf(moves, 2 * count);
+            moveXs = Arrays.copyOf(moveXs, 2 * count);
+            moveYs = Arrays.copyOf(moveYs, 2 * count);
+        }
+        moves[count] = move;
+        moveXs[count] = x;
+        moveYs[count] = y;
+        ++count;
+    }
+
+    /**
+     * @return kind of the request, null if the last line parsed was not a message of the protocol
+     */
+    Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return column of the cell of a DIG, FLAG or DEFLAG request, or leftmost column of a VIEW request
+     */
+    int x() {
+        return x;
+    }
+
+    /**
+     * @return row of the cell of a DIG, FLAG or DEFLAG request, or top row of a VIEW request
+     */
+    int y() {
+        return y;
+    }
+
+    /**
+     * @return number of columns of a VIEW request
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * @return number of rows of a VIEW request
+     */
+    int height() {
+        return height;
+    }
+
+    /**
+     * @return version of a DELTA request
+     */
+    long version() {
+        return number;
+    }
+
+    /**
+     * @return greatest number of pushes per second of a SUBSCRIBE request
+     */
+    int rate() {
+        return (int) number;
+    }
+
+    /**
+     * @return true for "collapse on", false for "collapse off" of a COLLAPSE request
+     */
+    boolean on() {
+        return number == 1;
+    }
+
+    /**
+     * @return number of moves of a BATCH request
+     */
+    int moves() {
+        return count;
+    }
+
+    /**
+     * @param i index of a move of a BATCH request, 0 &lt;= i &lt; moves()
+     * @return kind of move i
+     */
+    Move move(int i) {
+        return moves[i];
+    }
+
+    /**
+     * @param i index of a move of a BATCH request, 0 &lt;= i &lt; moves()
+     * @return column of the cell of move i
+     */
+    int moveX(int i) {
+        return moveXs[i];
+    }
+
+    /**
+     * @param i index of a move of a BATCH request, 0 &lt;= i &lt; moves()
+     * @return row of the cell of move i
+     */
+    int moveY(int i) {
+        return moveYs[i];
+    }
+}
@@ -0,0 +1,159 @@
+package minesweeper.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, such as latencies in nanoseconds, with buckets of
+ * bounded relative width as in an HDR histogram: values below 2 * SUB_BUCKETS have a
+ * bucket each, and every further power of two is split into SUB_BUCKETS buckets of equal
+ * width, so a percentile is exact to 1 / SUB_BUCKETS of its value over the whole range of
+ * long, in a fixed array of counts. Recording a value costs an atomic increment and an
+ * add to a striped sum, and allocates nothing.
+ * Thread safe: counts are atomic; a percentile read while values are recorded is the
+ * percentile of some of the values recorded up to the read.
+ */
+class Histogram {
+
+    /**
+     * Abstraction function
+     *
+     * represents the multiset of recorded values where counts[i] values are in bucket i,
+     * values highest(i-1)+1..highest(i), with the greatest value max, 0 if none was recorded,
+     * and the sum of all values sum
+     *
+     * Rep invariant
+     *
+     * counts.length == BUCKETS, counts[i] &gt;= 0
+     * max is the greatest recorded value, 0 if none; sum is the sum of recorded values
+     *
+     * Rep exposure
+     *
+     * all fields are private and final and never shared
+     */
+
+    /** log2 of the number of buckets of each power of two */
+    private static final int SUB_BUCKET_BITS = 5;
+    /** Number of buckets each power of two is split into */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Number of buckets for all values of long */
+    private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param value value &gt;= 0
+     * @return bucket of the value
+     */
+    static int bucket(long value) {
+        if(value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @param bucket 0 &lt;= bucket &lt; BUCKETS
+     * @return greatest value of the bucket
+     */
+    static long highest(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - (long) shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value value to record, a negative value is recorded as 0
+     */
+    void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(bucket(recorded));
+        sum.add(recorded);
+        if(recorded > max.get()) {
+            max.accumulateAndGet(recorded, Math::max);
+        }
+    }
+
+    /**
+     * @return copy of the counts of the buckets
+     */
+    private long[] snapshot() {
+        long[] copy = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; ++i) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    long count() {
+        long count = 0;
+        for(int i = 0; i < BUCKETS; ++i) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return greatest recorded value, 0 if none
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @return mean of the recorded values, 0 if none
+     */
+    double mean() {
+        long count = count();
+        return count == 0 ? 0 : sum.doubleValue() / count;
+    }
+
+    /**
+     * @param percentiles percentiles, each from 0 to 100
+     * @return for each percentile, the greatest value of the bucket that holds it, at
+     *         most max() and exact to 1 / SUB_BUCKETS of the value; 0 if no value was recorded
+     */
+    long[] percentiles(double... percentiles) {
+        long[] copy = snapshot();
+        long count = 0;
+        for(long bucketCount : copy) {
+            count += bucketCount;
+        }
+        long greatest = max.get();
+        long[] values = new long[percentiles.length];
+        for(int p = 0; p < percentiles.length; ++p) {
+            if(count == 0) {
+                continue;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * count));
+            long seen = 0;
+            int bucket = 0;
+            while(bucket < BUCKETS - 1 && seen + copy[bucket] < rank) {
+                seen += copy[bucket];
+                ++bucket;
+            }
+            values[p] = Math.min(highest(bucket), greatest);
+        }
+        return values;
+    }
+
+    /**
+     * @param percentile percentile from 0 to 100
+     * @return the value of percentiles for the single percentile
+     */
+    long percentile(double percentile) {
+        return percentiles(percentile)[0];
+    }
+}
@@ -0,0 +1,206 @@
+package minesweeper.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bytes read from a client and not handled yet, split into lines ended by "\n", "\r"
+ * or "\r\n". Reads take all the bytes the connection has, so a client that sends many
+ * requests without waiting for replies gets them all handled by one read, and the
+ * server can tell whether another complete request is already waiting.
+ * NOT thread safe: used only by the thread that reads its connection.
+ */
+class LineBuffer {
+
+    /**
+     * Abstraction function
+     *
+     * represents the bytes bytes[start..end) read and not taken as lines yet; if
+     * afterReturn, the last line taken ended with '\r', so a '\n' at start ends no line;
+     * bytes[start..scanned) were searched and hold no line break that ends a line
+     *
+     * Rep invariant
+     *
+     * 0 &lt;= start &lt;= scanned &lt;= end &lt;= bytes.length &lt;= maximumLine
+     *
+     * Rep exposure
+     *
+     * all fields are private, bytes is never shared
+     */
+
+    /** Initial size of the buffer */
+    private static final int INITIAL_SIZE = 1024;
+    /** Longest line a client may send by default, in bytes */
+    static final int MAXIMUM_LINE = 1 << 20;
+
+    private final int maximumLine;
+    private byte[] bytes;
+    private int start = 0;
+    private int end = 0;
+    private int scanned = 0;
+    private boolean afterReturn = false;
+
+    private void checkRep() {
+        assert 0 <= start && start <= scanned && scanned <= end;
+        assert end <= bytes.length && bytes.length <= maximumLine;
+    }
+
+    /**
+     * Makes an empty buffer for lines of at most MAXIMUM_LINE bytes.
+     */
+    LineBuffer() {
+        this(MAXIMUM_LINE);
+    }
+
+    /**
+     * Makes an empty buffer.
+     *
+     * @param maximumLine longest line the buffer holds in bytes, with its line break, &gt; 0
+     */
+    LineBuffer(int maximumLine) {
+        this.maximumLine = maximumLine;
+        this.bytes = new byte[Math.min(INITIAL_SIZE, maximumLine)];
+        checkRep();
+    }
+
+    /**
+     * Reads what a stream has, blocking until it has something.
+     *
+     * @param in stream of the client
+     * @return number of bytes read, -1 at the end of the stream
+     * @throws IOException if the stream fails
+     * @throws IllegalStateException if tooLong()
+     */
+    int read(InputStream in) throws IOException {
+        makeRoom();
+        int read = in.read(bytes, end, bytes.length - end);
+        if(read > 0) {
+            end += read;
+        }
+        checkRep();
+        return read;
+    }
+
+    /**
+     * Reads what a channel has, without blocking if it does not block.
+     *
+     * @param channel channel of the client
+     * @return number of bytes read, -1 at the end of the stream
+     * @throws IOException if the channel fails
+     * @throws IllegalStateException if tooLong()
+     */
+    int read(ReadableByteChannel channel) throws IOException {
+        makeRoom();
+        int read = channel.read(ByteBuffer.wrap(bytes, end, bytes.length - end));
+        if(read > 0) {
+            end += read;
+        }
+        checkRep();
+        return read;
+    }
+
+    /**
+     * Moves the bytes not taken to the start of the buffer, and grows it if they fill it.
+     */
+    private void makeRoom() {
+        if(tooLong()) {
+            throw new IllegalStateException("Line longer than " + maximumLine + " bytes");
+        }
+        if(start > 0) {
+            System.arraycopy(bytes, start, bytes, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if(end == bytes.length) {
+            byte[] larger = new byte[(int) Math.min(2L * bytes.length, maximumLine)];
+            System.arraycopy(bytes, 0, larger, 0, end);
+            bytes = larger;
+        }
+    }
+
+    /**
+     * @return true if and only if the buffer holds maximumLine bytes not taken as lines,
+     *         so it cannot read any more; once nextLine() returned null, the client sent
+     *         a line longer than allowed
+     */
+    boolean tooLong() {
+        return end - start == maximumLine;
+    }
+
+    /**
+     * Takes the next complete line.
+     *
+     * @return next line without its line break, decoded as UTF-8, or null if no complete
+     *         line was read
+     */
+    String nextLine() {
+        if(afterReturn && start < end) {
+            afterReturn = false;
+            if(bytes[start] == '\n') {
+                ++start;
+                scanned = Math.max(scanned, start);
+            }
+        }
+        int lineEnd = lineEnd(start);
+        if(lineEnd < 0) {
+            return null;
+        }
+        String line = new String(bytes, start, lineEnd - start, StandardCharsets.UTF_8);
+        afterReturn = bytes[lineEnd] == '\r';
+        start = lineEnd + 1;
+        scanned = start;
+        checkRep();
+        return line;
+    }
+
+    /**
+     * @return true if and only if a complete line was read and not taken yet, so
+     *         nextLine() returns it without reading
+     */
+    boolean hasLine() {
+        int from = afterReturn && start < end && bytes[start] == '\n' ? start + 1 : start;
+        return lineEnd(from) >= 0;
+    }
+
+    /**
+     * Takes the bytes of an incomplete line, once the client has closed its stream.
+     *
+     * @return bytes not taken as lines, decoded as UTF-8, or null if none
+     */
+    String remainder() {
+        if(afterReturn && start < end && bytes[start] == '\n') {
+            ++start;
+        }
+        afterReturn = false;
+        if(start == end) {
+            return null;
+        }
+        String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        start = end;
+        scanned = end;
+        checkRep();
+        return line;
+    }
+
+    /**
+     * Finds the first line break at from or after it, searching only bytes not searched
+     * before, so a long line read in many parts is searched once.
+     *
+     * @param from index of bytes to search from, start &lt;= from, bytes[start..from)
+     *             hold no line break that ends a line
+     * @return index of the first line break at from or after it, -1 if none
+     */
+    private int lineEnd(int from) {
+        for(int i = Math.max(from, scanned); i < end; ++i) {
+            if(bytes[i] == '\n' || bytes[i] == '\r') {
+                return i;
+            }
+        }
+        scanned = end;
+        return -1;
+    }
+}
@@ -0,0 +1,302 @@
+package minesweeper.server;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled log of the server, written by a background thread.
+ * Threads that log only claim a slot of a bounded ring by compare-and-set and copy
+ * their message into it; they never take a lock and never wait for the output, and
+ * when the ring is full the message is dropped and counted instead. The writer thread
+ * takes messages in order of their slots, writes them and flushes the output whenever
+ * the ring is empty, and then parks until a thread logs again, so an idle log costs
+ * no wakeups. A message below the level of the log costs one volatile read.
+ * Thread safe: slots are handed between the threads that log and the writer by the
+ * sequence number of each slot, as in a bounded multi-producer queue; the output is
+ * used only by the writer.
+ */
+class Log {
+
+    /**
+     * Levels of messages, from the most to the least severe.
+     */
+    enum Level {
+        /** no message at all, only as the level of a log */
+        OFF,
+        /** failures the server goes on after */
+        ERROR,
+        /** clients refused and other conditions the operator should know of */
+        WARN,
+        /** start of the server, at most a few messages */
+        INFO,
+        /** connections and every request */
+        DEBUG
+    }
+
+    /**
+     * Abstraction function
+     *
+     * represents the messages of slots head..tail-1 of the ring, oldest first, slot n
+     * being entries[n mod capacity], to be written to out by writer, with
+     * dropped messages that found the ring full; messages of levels after level are ignored
+     *
+     * Rep invariant
+     *
+     * capacity == entries.length == sequences.length() is a power of two
+     * for each n, head &lt;= n &lt; tail: sequences[n mod capacity] == n + 1 once slot n is filled
+     * for each free slot index i: sequences[i] == n for the next n with n mod capacity == i
+     * head &lt;= tail &lt;= head + capacity, written &lt;= head
+     *
+     * Rep exposure
+     *
+     * all fields are private, entries are never shared; out is shared with the caller on purpose
+     */
+
+    /** Default number of slots of the ring */
+    static final int CAPACITY = 1 << 13;
+    /** Nanoseconds a flush waits between checks of the progress of the writer */
+    private static final long FLUSH_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /** Milliseconds a flush at exit waits for the writer */
+    private static final long EXIT_FLUSH_MILLIS = 1000;
+
+    /** Size of the buffer of the standard output of the server log, in bytes */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /**
+     * Log of the server, INFO by default, written to the standard output through a buffer
+     * of its own that is flushed only when the ring is empty, instead of System.out,
+     * which flushes every line
+     */
+    static final Log SERVER = new Log(new PrintStream(new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER), false), CAPACITY, Level.INFO);
+
+    /**
+     * Message in a slot of the ring.
+     */
+    private static class Entry {
+        Level level;
+        long time;
+        String thread;
+        String message;
+        Throwable throwable;
+    }
+
+    private final PrintStream out;
+    private final int mask;
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /** Next slot the writer takes; used only by the writer */
+    private long head = 0;
+    /** Slots the writer has written and flushed */
+    private volatile long written = 0;
+    /** True while the writer is parked or about to park, waiting for a message */
+    private volatile boolean sleeping = false;
+    private final LongAdder dropped = new LongAdder();
+    private volatile Level level;
+    private final Thread writer;
+
+    /**
+     * Makes a log and starts its writer thread, a daemon; messages still in the ring
+     * when the virtual machine exits are written if the writer keeps up for a second.
+     *
+     * @param out output of the messages, one per line
+     * @param capacity number of messages the ring holds, a power of two
+     * @param level most detailed level of messages written
+     */
+    Log(PrintStream out, int capacity, Level level) {
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.out = out;
+        this.mask = capacity - 1;
+        this.entries = new Entry[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; ++i) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        this.level = level;
+        this.writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(EXIT_FLUSH_MILLIS)));
+    }
+
+    /**
+     * @param level most detailed level of messages written from now on
+     */
+    void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * @return most detailed level of messages written
+     */
+    Level level() {
+        return level;
+    }
+
+    /**
+     * @param level level of a message
+     * @return true if and only if messages of the level are written; callers check it
+     *         before they build a message that costs more than a reference
+     */
+    boolean enabled(Level level) {
+        return level != Level.OFF && level.compareTo(this.level) <= 0;
+    }
+
+    /**
+     * @param message message for the DEBUG level
+     */
+    void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    /**
+     * @param message message for the INFO level
+     */
+    void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    /**
+     * @param message message for the WARN level
+     */
+    void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    /**
+     * @param message message for the ERROR level
+     * @param throwable cause of the error, its stack trace is written after the message
+     */
+    void error(String message, Throwable throwable) {
+        log(Level.ERROR, message, throwable);
+    }
+
+    /**
+     * Queues a message for the writer if its level is enabled. Never blocks: if the
+     * ring is full, the message is dropped, and the writer reports the number of
+     * dropped messages later.
+     *
+     * @param level level of the message, not OFF
+     * @param message text of the message
+     * @param throwable cause to write the stack trace of, null if none
+     * @return true if and only if the message was queued
+     */
+    boolean log(Level level, String message, Throwable throwable) {
+        if(!enabled(level)) {
+            return false;
+        }
+        long slot = tail.get();
+        while(true) {
+            long sequence = sequences.get((int) (slot & mask));
+            if(sequence == slot) {
+                if(tail.compareAndSet(slot, slot + 1)) {
+                    break;
+                }
+                slot = tail.get();
+            } else if(sequence < slot) {
+                // the writer has not taken the message a capacity ago yet
+                dropped.increment();
+                return false;
+            } else {
+                slot = tail.get();
+            }
+        }
+        int index = (int) (slot & mask);
+        Entry entry = entries[index];
+        entry.level = level;
+        entry.time = System.currentTimeMillis();
+        entry.thread = Thread.currentThread().getName();
+        entry.message = message;
+        entry.throwable = throwable;
+        // a volatile write, so that the writer either sees the message or is seen sleeping
+        sequences.set(index, slot + 1);
+        if(sleeping) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of messages dropped because the ring was full
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until the writer has written and flushed the messages queued before the call.
+     *
+     * @param timeoutMillis greatest number of milliseconds to wait
+     * @return true if and only if they were written in time
+     */
+    boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while(written < target) {
+            if(System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(FLUSH_POLL_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Body of the writer thread: writes the messages of the ring in order, and flushes
+     * the output and reports dropped messages whenever the ring is empty. Then it parks
+     * until a thread that logs unparks it: it announces sleeping before it checks the
+     * ring a last time, and a thread that logs publishes its slot before it checks
+     * sleeping, so a message is never left in the ring while the writer sleeps.
+     */
+    private void write() {
+        long reported = 0;
+        boolean unflushed = false;
+        while(true) {
+            int index = (int) (head & mask);
+            if(sequences.get(index) != head + 1) {
+                long drops = dropped.sum();
+                if(drops != reported) {
+                    out.println(Instant.now() + " " + Level.WARN + " [" + writer.getName() + "] "
+                            + (drops - reported) + " log messages dropped, the ring was full");
+                    reported = drops;
+                    unflushed = true;
+                }
+                if(unflushed) {
+                    out.flush();
+                    unflushed = false;
+                }
+                written = head;
+                sleeping = true;
+                if(sequences.get(index) != head + 1) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+            Entry entry = entries[index];
+            out.println(Instant.ofEpochMilli(entry.time) + " " + entry.level + " [" + entry.thread + "] "
+                    + entry.message);
+            if(entry.throwable != null) {
+                entry.throwable.printStackTrace(out);
+            }
+            entry.thread = null;
+            entry.message = null;
+            entry.throwable = null;
+            sequences.lazySet(index, head + mask + 1);
+            ++head;
+            unflushed = true;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package minesweeper.server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import minesweeper.Board;
+
+/**
+ * Runtime figures of a server: connections, requests by kind, latencies of requests and
+ * of board messages, bytes read and written, and time waited for locks of the board.
+ * Counters are striped, so the threads that serve clients never contend on them, and
+ * latencies go to histograms of fixed size; recording allocates nothing. Figures are
+ * read by the stats request and by JMX.
+ * Thread safe: all counters are thread safe; a reading taken while clients are served
+ * may mix figures of slightly different times.
+ */
+class Metrics implements MetricsMXBean {
+
+    /**
+     * Abstraction function
+     *
+     * represents the figures of a server of board: connections clients connected now,
+     * accepted connections accepted and refused of them refused, commands[k.ordinal()]
+     * requests of kind k and commands[INVALID] invalid requests, latencies of requests
+     * in requests and of board messages in renders, bytesIn bytes read and bytesOut
+     * bytes written
+     *
+     * Rep invariant
+     *
+     * commands.length == Command.Kind.values().length + 1
+     * connections &gt;= 0 once every disconnected matches a connected
+     *
+     * Rep exposure
+     *
+     * all fields are private and final; board is shared with the server on purpose
+     * and only read
+     */
+
+    /** Index of commands that counts invalid requests */
+    private static final int INVALID = Command.Kind.values().length;
+    /** Percentiles of latencies in the stats message */
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    /** Names of PERCENTILES in the stats message */
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+    private final Board board;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder[] commands = new LongAdder[INVALID + 1];
+    private final Histogram requests = new Histogram();
+    private final Histogram renders = new Histogram();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * Makes the metrics of a server with no client yet.
+     *
+     * @param board board of the server, whose lock waits are reported
+     */
+    Metrics(Board board) {
+        this.board = board;
+        for(int i = 0; i < commands.length; ++i) {
+            commands[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. A failure is logged, not
+     * thrown: the server runs without JMX then.
+     *
+     * @param port port of the server, which names the metrics
+     */
+    void register(int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("minesweeper.server:type=Metrics,port=" + port));
+        } catch(JMException | SecurityException e) {
+            Log.SERVER.warn("Metrics not registered with JMX: " + e);
+        }
+    }
+
+    /**
+     * Counts a client that connected.
+     */
+    void connected() {
+        connections.incrementAndGet();
+        accepted.increment();
+    }
+
+    /**
+     * Counts a client that disconnected, or was refused after connected.
+     */
+    void disconnected() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Counts a client refused because the server was full.
+     */
+    void refused() {
+        refused.increment();
+    }
+
+    /**
+     * Counts a request.
+     *
+     * @param kind kind of the request, null if it was invalid
+     */
+    void command(Command.Kind kind) {
+        commands[kind == null ? INVALID : kind.ordinal()].increment();
+    }
+
+    /**
+     * @param nanos time taken to handle a request
+     */
+    void request(long nanos) {
+        requests.record(nanos);
+    }
+
+    /**
+     * @param nanos time taken to make a board message
+     */
+    void render(long nanos) {
+        renders.record(nanos);
+    }
+
+    /**
+     * @param bytes number of bytes read from a client
+     */
+    void read(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * @param bytes number of bytes written to a client
+     */
+    void wrote(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * @param out stream to a client
+     * @return stream that writes to out and counts the bytes as written
+     */
+    OutputStream counting(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                wrote(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                wrote(len);
+            }
+        };
+    }
+
+    /**
+     * @return STATS message of the protocol: the number of figures, then a line
+     *         "NAME VALUE" for each, latencies in nanoseconds
+     */
+    String message() {
+        Map<String, Long> figures = new LinkedHashMap<>();
+        figures.put("connections", (long) getConnections());
+        figures.put("connections_accepted", getConnectionsAccepted());
+        figures.put("connections_refused", getConnectionsRefused());
+        for(Map.Entry<String, Long> command : getCommands().entrySet()) {
+            figures.put("command_" + command.getKey(), command.getValue());
+        }
+        latencies(figures, "request", requests);
+        latencies(figures, "render", renders);
+        figures.put("bytes_in", getBytesIn());
+        figures.put("bytes_out", getBytesOut());
+        figures.put("lock_wait_ns", getLockWaitNanos());
+        StringBuilder message = new StringBuilder("stats ").append(figures.size());
+        for(Map.Entry<String, Long> figure : figures.entrySet()) {
+            message.append("\r\n").append(figure.getKey()).append(' ').append(figure.getValue());
+        }
+        return message.toString();
+    }
+
+    /**
+     * Adds the figures of a histogram of latencies.
+     *
+     * @param figures figures by name, in order
+     * @param name name of the latencies
+     * @param histogram latencies in nanoseconds
+     */
+    private static void latencies(Map<String, Long> figures, String name, Histogram histogram) {
+        figures.put(name + "_count", histogram.count());
+        figures.put(name + "_mean_ns", Math.round(histogram.mean()));
+        long[] values = histogram.percentiles(PERCENTILES);
+        for(int i = 0; i < values.length; ++i) {
+            figures.put(name + "_" + PERCENTILE_NAMES[i] + "_ns", values[i]);
+        }
+        figures.put(name + "_max_ns", histogram.max());
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public long getConnectionsAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getConnectionsRefused() {
+        return refused.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCommands() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(Command.Kind kind : Command.Kind.values()) {
+            counts.put(kind.name().toLowerCase(Locale.ROOT), commands[kind.ordinal()].sum());
+        }
+        counts.put("invalid", commands[INVALID].sum());
+        return Collections.unmodifiableMap(counts);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.count();
+    }
+
+    @Override
+    public double getRequestMeanNanos() {
+        return requests.mean();
+    }
+
+    @Override
+    public long getRequestP50Nanos() {
+        return requests.percentile(50);
+    }
+
+    @Override
+    public long getRequestP99Nanos() {
+        return requests.percentile(99);
+    }
+
+    @Override
+    public long getRequestP999Nanos() {
+        return requests.percentile(99.9);
+    }
+
+    @Override
+    public long getRequestMaxNanos() {
+        return requests.max();
+    }
+
+    @Override
+    public long getRenderCount() {
+        return renders.count();
+    }
+
+    @Override
+    public long getRenderP50Nanos() {
+        return renders.percentile(50);
+    }
+
+    @Override
+    public long getRenderP99Nanos() {
+        return renders.percentile(99);
+    }
+
+    @Override
+    public long getRenderMaxNanos() {
+        return renders.max();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return board.lockWaitNanos();
+    }
+}
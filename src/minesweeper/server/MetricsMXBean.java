@@ -0,0 +1,97 @@
+package minesweeper.server;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of a server, registered with the platform MBean
+ * server as minesweeper.server:type=Metrics,port=PORT, so that JMX clients such as
+ * jconsole read the same figures as the stats request of the protocol.
+ * Latencies are in nanoseconds; percentiles are exact to about 3%.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return number of clients connected now
+     */
+    int getConnections();
+
+    /**
+     * @return number of connections accepted since the server started, refused ones included
+     */
+    long getConnectionsAccepted();
+
+    /**
+     * @return number of connections refused because the server was full
+     */
+    long getConnectionsRefused();
+
+    /**
+     * @return number of requests handled by kind, in lower case, and of invalid requests as "invalid"
+     */
+    Map<String, Long> getCommands();
+
+    /**
+     * @return number of requests handled
+     */
+    long getRequestCount();
+
+    /**
+     * @return mean time to handle a request
+     */
+    double getRequestMeanNanos();
+
+    /**
+     * @return median time to handle a request
+     */
+    long getRequestP50Nanos();
+
+    /**
+     * @return 99th percentile of the time to handle a request
+     */
+    long getRequestP99Nanos();
+
+    /**
+     * @return 99.9th percentile of the time to handle a request
+     */
+    long getRequestP999Nanos();
+
+    /**
+     * @return longest time to handle a request
+     */
+    long getRequestMaxNanos();
+
+    /**
+     * @return number of board messages made
+     */
+    long getRenderCount();
+
+    /**
+     * @return median time to make a board message
+     */
+    long getRenderP50Nanos();
+
+    /**
+     * @return 99th percentile of the time to make a board message
+     */
+    long getRenderP99Nanos();
+
+    /**
+     * @return longest time to make a board message
+     */
+    long getRenderMaxNanos();
+
+    /**
+     * @return number of bytes read from clients
+     */
+    long getBytesIn();
+
+    /**
+     * @return number of bytes written to clients
+     */
+    long getBytesOut();
+
+    /**
+     * @return nanoseconds threads waited in all for locks of the board
+     */
+    long getLockWaitNanos();
+}
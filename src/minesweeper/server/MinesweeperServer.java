@@ -2,9 +2,17 @@ package minesweeper.server;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import minesweeper.Board;
+import minesweeper.BoardConverter;
+import minesweeper.BoardMove;
+import minesweeper.Move;
+import minesweeper.MoveResult;
 
 /**
  * Multiplayer Minesweeper server.
@@ -12,68 +20,102 @@ import minesweeper.Board;
 public class MinesweeperServer {
 
     // System thread safety argument
-    // serverSocket is only used by main thread
+    // serverSocket and serverChannel are only used by main thread
     // debug is immutable
-    // clientNumber is int - thread safe type
+    // metrics is Metrics - thread safe type
     // board is Board - thread safe type
+    // a ClientSession is used by the thread of its connection and the pusher thread of its
+    // subscription, or by one task at a time of its connection served by a selector, each
+    // holding the lock of the session; its stream is written under the same lock
+    // core is immutable; its executor and thread factory are thread safe
+    // Log.SERVER is thread safe and never blocks the threads that log
 
-    /** Default server port. */
-    private static final int DEFAULT_PORT = 4444;
-    /** Maximum port number as defined by ServerSocket. */
-    private static final int MAXIMUM_PORT = 65535;
-    /** Default square board size. */
-    private static final int DEFAULT_SIZE = 10;
+    /** Default seed of random boards. */
+    private static final long DEFAULT_SEED = 47;
+    /** Default probability of a cell of a random board to contain a bomb. */
+    private static final double DEFAULT_DENSITY = 1.0 / 3;
+    /** Size of the buffers of a connection served by blocking reads and writes, in chars. */
+    private static final int CONNECTION_BUFFER = 512;
+    /** Default number of connections waiting for a worker of a pool. */
+    private static final int DEFAULT_QUEUE = 50;
 
     /** Help message for clients */
     private static final String helpMessage = "Supported commands are:\r\n"
             + String.format("%-15s", "look")
             + "displays current state of a board\r\n"
+            + String.format("%-15s", "look [x y w h]")
+            + "displays w columns and h rows from column x row y, and only them after moves\r\n"
             + String.format("%-15s", "dig [x] [y]")
             + "digs a cell in column x row yif it was untouched\r\n"
             + String.format("%-15s", "flag [x] [y]")
             + "flags a cell in column x row y if it was untouched\r\n"
             + String.format("%-15s", "deflag [x] [y]")
             + "deflags a cell in column x row y if it was flagged\r\n"
+            + String.format("%-15s", "batch [m x y]+")
+            + "makes moves m (dig, flag or deflag) on cells x y at once and shows the board once\r\n"
+            + String.format("%-15s", "delta [v]")
+            + "from now on sends changes since version v instead of whole boards\r\n"
+            + String.format("%-15s", "subscribe [n]")
+            + "from now on also sends the board when other players change it, at most n times a second\r\n"
+            + String.format("%-15s", "unsubscribe")
+            + "stops sending the board when other players change it\r\n"
+            + String.format("%-15s", "collapse [on]")
+            + "from now on answers requests sent together with the board only after the last one\r\n"
+            + String.format("%-15s", "stats")
+            + "shows figures of the server: connections, requests, latencies and traffic\r\n"
             + String.format("%-15s", "help")
             + "shows instructions\r\n"
             + String.format("%-15s", "bye")
             + "ends a connection";
     /** Boom message */
     private static final String boomMessage = "BOOM!";
+    /** Message for clients that would get a board too large to render as a whole */
+    private static final String tooLargeMessage = "Board too large to show. Use 'look x y w h' to see a part of it, or 'delta' to see changes.";
+    /** Message for clients refused because the server is full */
+    private static final String busyMessage = "Server busy. Try again later.";
     /** Pattern of welcome message */
     private static final String welcomeMessage = "Welcome to Minesweeper. Players: %d including you. Board: %d columns by %d rows. Type 'help' for help.\r\n";
     
     
-    /** Socket for receiving incoming connections. */
+    /** Socket for receiving incoming connections, null if they are served by selectors. */
     private final ServerSocket serverSocket;
+    /** Channel for receiving incoming connections served by selectors, null otherwise. */
+    private final ServerSocketChannel serverChannel;
+    /** How connections are served. */
+    private final ServerCore core;
     /** True if the server should *not* disconnect a client after a BOOM message. */
     private final boolean debug;
-    /** Number of clients connected to the server. */
-    private int clientNumber = 0;
+    /** Figures of the server, such as the number of clients connected to it. */
+    private final Metrics metrics;
     /** Minesweeper board */
     private final Board board;
     
 
     // Abstraction function
     // Represents a server running on localhost and serves a board board
-    // Accepting messages with socket serverSocket and working in debug mode if debug is true
-    // clientNumber is number of clients connected to this server
+    // Accepting messages with socket serverSocket, or with channel serverChannel if core is a selector,
+    // and working in debug mode if debug is true
+    // metrics are the figures of this server, its number of connected clients among them
     
     // Rep invariant
-    // serverSocket != null
-    // clientNumber equals number of connected sockets
-    // board != null
+    // serverSocket != null if and only if !core.isSelector()
+    // serverChannel != null if and only if core.isSelector()
+    // metrics.getConnections() equals number of connected sockets
+    // board != null, metrics != null
     
     // Rep exposure
-    // all fields are private
-    // all fields, except clientNumber, are final
-    // clientNumber is int, debug is boolean, immutable types
+    // all fields are private and final
+    // debug is boolean, immutable type
+    // metrics is final and shared only with the SelectorServer of the server and the platform MBean server
     // serverSocket is final and reference is never shared
+    // serverChannel is final and shared only with the SelectorServer that serves it
     // board is final and reference is never shared
     
     private void checkRep() {
-        assert serverSocket != null;
+        assert (serverSocket != null) == !core.isSelector();
+        assert (serverChannel != null) == core.isSelector();
         assert board != null;
+        assert metrics != null;
     }
     
 
@@ -86,9 +128,33 @@ public class MinesweeperServer {
      * @throws IOException if an error occurs opening the server socket
      */
     public MinesweeperServer(Board board, int port, boolean debug) throws IOException {
+        this(board, port, debug, ServerCore.threadPerConnection());
+    }
+
+    /**
+     * Make a MinesweeperServer that listens for connections on port and serves them by the given core.
+     * 
+     * @param board default board
+     * @param port port number, requires 0 &lt; port &lt;= 65535
+     * @param debug debug mode flag
+     * @param core how connections are served
+     * @throws IOException if an error occurs opening the server socket
+     */
+    public MinesweeperServer(Board board, int port, boolean debug, ServerCore core) throws IOException {
         this.board = board;
-        serverSocket = new ServerSocket(port);
-        System.out.println("Created on port " + port);
+        this.core = core;
+        this.metrics = new Metrics(board);
+        if (core.isSelector()) {
+            serverSocket = null;
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(port), core.backlog());
+        } else {
+            serverSocket = new ServerSocket(port, core.backlog());
+            serverChannel = null;
+        }
+        Log.SERVER.info("Created on port " + port + ", serving connections by " + core);
+        metrics.register(core.isSelector() ? serverChannel.socket().getLocalPort() : serverSocket.getLocalPort());
         this.debug = debug;
         checkRep();
     }
@@ -101,112 +167,459 @@ public class MinesweeperServer {
      *                     (IOExceptions from individual clients do *not* terminate serve())
      */
     public void serve() throws IOException { 
-        System.out.println("Waiting on port " + serverSocket.getLocalPort());
+        if (core.isSelector()) {
+            Log.SERVER.info("Waiting on port " + serverChannel.socket().getLocalPort());
+            new SelectorServer(this, serverChannel, core.eventLoops()).serve();
+            return;
+        }
+        Log.SERVER.info("Waiting on port " + serverSocket.getLocalPort());
         while (true) {
             // block until a client connects
             Socket socket = serverSocket.accept();
-            System.out.println("Accepted client");
-            clientNumber++;
-            new Thread(() -> {
-                try {
-                    handleConnection(socket);
-                } catch (IOException ioe) {
-                    ioe.printStackTrace(); // but don't terminate serve()
-                } finally {
+            Log.SERVER.debug("Accepted client");
+            connected();
+            try {
+                core.connections().execute(() -> {
                     try {
-                        clientNumber--;
-                        socket.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                        handleConnection(socket);
+                    } catch (IOException ioe) {
+                        Log.SERVER.error("Connection failed", ioe); // but don't terminate serve()
+                    } finally {
+                        try {
+                            disconnected();
+                            socket.close();
+                        } catch (IOException e) {
+                            Log.SERVER.error("Closing a connection failed", e);
+                        }
                     }
-                }
-            }).start();
+                });
+            } catch (RejectedExecutionException ree) {
+                Log.SERVER.warn("Refused client, server busy");
+                disconnected();
+                metrics.refused();
+                refuse(socket);
+            }
             checkRep();
         }
     }
 
+    /**
+     * Sends the BUSY message to a client the server has no room for and closes its
+     * connection. The message fits the empty send buffer of the new socket, so the
+     * acceptor never waits for the client to read it.
+     * 
+     * @param socket socket where the client is connected
+     */
+    private void refuse(Socket socket) {
+        try {
+            byte[] busy = (busyMessage + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            socket.getOutputStream().write(busy);
+            metrics.wrote(busy.length);
+        } catch (IOException ioe) {
+            // the client is gone already
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.SERVER.error("Closing a connection failed", e);
+            }
+        }
+    }
+
     /**
      * Handle a single client connection. Returns when client disconnects.
+     * Requests are pipelined: each read takes all the requests the client has sent, they
+     * are handled in order, and their replies are flushed together once no received
+     * request is left, so a client that sends many requests without waiting costs few
+     * writes. Pushes of the subscription are flushed at once.
+     * Its buffers are small, so that many idle connections served by virtual threads
+     * cost little memory; longer lines and replies still pass through them whole.
      * 
      * @param socket socket where the client is connected
      * @throws IOException if the connection encounters an error or terminates unexpectedly
      */
     private void handleConnection(Socket socket) throws IOException {
-        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-        System.out.println("welcome " + Thread.activeCount());        
-        out.format(String.format(welcomeMessage, clientNumber, board.columnsNumber(), board.rowsNumber()));
+        InputStream in = socket.getInputStream();
+        LineBuffer lines = new LineBuffer();
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(metrics.counting(socket.getOutputStream())), CONNECTION_BUFFER), false);
+        ClientSession session = new ClientSession();
+        session.setSubscription(new Subscription(board, changed -> push(session, message -> {
+            out.println(message);
+            out.flush();
+        }, changed), core.threads()));
+        if (Log.SERVER.enabled(Log.Level.DEBUG)) {
+            Log.SERVER.debug("welcome " + Thread.activeCount());
+        }
+        out.format(welcome());
         try {
-            for (String line = in.readLine(); line != null; line = in.readLine()) {
-                System.out.println(line);
-                String output = handleRequest(line);
-                if (output != "") {
-                    out.println(output);
+            while (true) {
+                String line = lines.nextLine();
+                if (line == null) {
+                    // all requests received are handled, send their replies at once
+                    out.flush();
+                    if (lines.tooLong()) {
+                        break;
+                    }
+                    int read = lines.read(in);
+                    if (read > 0) {
+                        metrics.read(read);
+                    }
+                    if (read < 0) {
+                        line = lines.remainder();
+                        if (line != null) {
+                            Log.SERVER.debug(line);
+                            request(session, line, out::println, false);
+                        }
+                        break;
+                    }
+                    continue;
                 }
-                if(output == "" || (output == boomMessage && !debug)) break;
+                Log.SERVER.debug(line);
+                String output = request(session, line, out::println, lines.hasLine());
+                if(closesConnection(output)) break;
             }
         } finally {
+            session.subscription().stop();
             out.close();
             in.close();
             checkRep();
         }
     }
 
+    /**
+     * @return how connections are served
+     */
+    ServerCore core() {
+        return core;
+    }
+
+    /**
+     * @return board of the server
+     */
+    Board board() {
+        return board;
+    }
+
+    /**
+     * @return figures of the server
+     */
+    Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Counts a client that connected.
+     */
+    void connected() {
+        metrics.connected();
+    }
+
+    /**
+     * Counts a client that disconnected.
+     */
+    void disconnected() {
+        metrics.disconnected();
+    }
+
+    /**
+     * @return HELLO message for a client that just connected, with its line break
+     */
+    String welcome() {
+        return String.format(welcomeMessage, metrics.getConnections(), board.columnsNumber(), board.rowsNumber());
+    }
+
+    /**
+     * Handles a line from a client and sends the reply, holding the lock of the session so
+     * that pushes of its subscription never come between the request and the reply.
+     * If the client collapses renders and another of its requests is already received, a
+     * board message the request would get is left out, and the next reply that is not a
+     * board message is preceded by a board message, so the client still sees the board
+     * after its last move before any other reply.
+     * 
+     * @param session state of the client connection
+     * @param line message from client
+     * @param send sender of messages to the client, takes a message without its line break
+     * @param more true if another request of the client is already received
+     * @return the reply, empty string if none, null if it was a board message left out
+     */
+    String request(ClientSession session, String line, Consumer<String> send, boolean more) {
+        session.lock().lock();
+        try {
+            long start = System.nanoTime();
+            String output = handleRequest(session, line, more && session.collapsesRenders());
+            metrics.request(System.nanoTime() - start);
+            if (output != null) {
+                if (session.isRenderPending()) {
+                    send.accept(boardMessage(session));
+                }
+                if ( ! output.isEmpty()) {
+                    send.accept(output);
+                }
+            }
+            watch(session);
+            return output;
+        } finally {
+            session.lock().unlock();
+        }
+    }
+
+    /**
+     * @param output reply returned by request, null if left out
+     * @return true if and only if the server closes the connection after the reply
+     */
+    boolean closesConnection(String output) {
+        return output != null && (output.isEmpty() || (!debug && output.equals(boomMessage)));
+    }
+
     /**
      * Handler for client input, performing requested operations and returning an output message.
      * 
+     * @param session state of the client connection
      * @param input message from client
-     * @return message to client, or empty string if none
+     * @param collapse true to leave out a board message for the request
+     * @return message to client, or empty string if none, or null if it was a board message left out
      */
-    private String handleRequest(String input) {
-        String regex = "(look)|(help)|(bye)|"
-                     + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)";
-        if ( ! input.matches(regex)) {
+    private String handleRequest(ClientSession session, String input, boolean collapse) {
+        Command command = session.command();
+        boolean valid = command.parse(input);
+        metrics.command(command.kind());
+        if ( ! valid) {
             // invalid input
             return helpMessage;
         }
-        String[] tokens = input.split(" ");
-        if (tokens[0].equals("look")) {
+        switch (command.kind()) {
+        case VIEW:
+            // 'look x y w h' request
+            return viewport(session, command.x(), command.y(), command.width(), command.height(), collapse);
+        case LOOK:
             // 'look' request
-            return board.toString();
-        } else if (tokens[0].equals("help")) {
+            session.clearViewport();
+            return boardReply(session, collapse);
+        case HELP:
             // 'help' request
             return helpMessage;
-        } else if (tokens[0].equals("bye")) {
+        case STATS:
+            // 'stats' request
+            return metrics.message();
+        case BYE:
             // 'bye' request
             return "";
-        } else {
-            int x = Integer.parseInt(tokens[1]);
-            int y = Integer.parseInt(tokens[2]);
-            if (tokens[0].equals("dig")) {
-                // 'dig x y' request
-                if(x >= 0 && y >= 0 && x < board.columnsNumber() && y < board.rowsNumber()) {
-                    boolean bomb = board.digIfUntouched(x, y);
-                    if(bomb) return boomMessage;
-                    return board.toString();
+        case SUBSCRIBE:
+            // 'subscribe n' request
+            int perSecond = command.rate();
+            if (perSecond <= 0 || perSecond > Subscription.MAXIMUM_RATE) {
+                return helpMessage;
+            }
+            session.subscription().start(perSecond);
+            return boardReply(session, collapse);
+        case UNSUBSCRIBE:
+            // 'unsubscribe' request
+            session.subscription().stop();
+            return boardReply(session, collapse);
+        case COLLAPSE:
+            // 'collapse on|off' request
+            session.setCollapseRenders(command.on());
+            return boardReply(session, collapse);
+        case DELTA:
+            // 'delta v' request
+            session.startDeltaMode(command.version());
+            return boardReply(session, collapse);
+        case BATCH:
+            // 'batch m x y ...' request
+            List<BoardMove> moves = new ArrayList<>(command.moves());
+            for (int i = 0; i < command.moves(); ++i) {
+                int x = command.moveX(i);
+                int y = command.moveY(i);
+                if (!onBoard(x, y)) {
+                    return helpMessage;
                 }
-            } else if (tokens[0].equals("flag")) {
+                moves.add(new BoardMove(command.move(i), x, y));
+            }
+            if (board.applyMoves(moves).contains(MoveResult.BOOM)) {
+                return boomMessage;
+            }
+            return boardReply(session, collapse);
+        default:
+            int x = command.x();
+            int y = command.y();
+            if (!onBoard(x, y)) {
+                // a cell outside the board, answered as a batch with such a cell
+                return helpMessage;
+            }
+            if (command.kind() == Command.Kind.DIG) {
+                // 'dig x y' request
+                boolean bomb = board.digIfUntouched(x, y);
+                if(bomb) return boomMessage;
+            } else if (command.kind() == Command.Kind.FLAG) {
                 // 'flag x y' request
-                if(x >= 0 && y >= 0 && x < board.columnsNumber() && y < board.rowsNumber()) {
-                    board.flagIfUntouched(x, y);
-                    return board.toString();
-                }
-            } else if (tokens[0].equals("deflag")) {
+                board.flagIfUntouched(x, y);
+            } else {
                 // 'deflag x y' request
-                if(x >= 0 && y >= 0 && x < board.columnsNumber() && y < board.rowsNumber()) {
-                    board.deflagIfFlagged(x, y);
-                    return board.toString();
-                }
+                board.deflagIfFlagged(x, y);
+            }
+            return boardReply(session, collapse);
+        }
+    }
+
+    /**
+     * @param x column of a cell
+     * @param y row of a cell
+     * @return true if and only if cell (x,y) is on the board
+     */
+    private boolean onBoard(int x, int y) {
+        return x >= 0 && y >= 0 && x < board.columnsNumber() && y < board.rowsNumber();
+    }
+
+    /**
+     * Makes the board message for a request, unless it is left out.
+     * 
+     * @param session state of the client connection
+     * @param collapse true to leave out the message
+     * @return board message as made by boardMessage, or null if left out, and then the
+     *         render of the session is pending
+     */
+    private String boardReply(ClientSession session, boolean collapse) {
+        if (collapse) {
+            session.setRenderPending(true);
+            return null;
+        }
+        return boardMessage(session);
+    }
+
+    /**
+     * Makes a message with the board for the client: the whole board, or in delta mode
+     * the cells changed since the version the client knows, if the board still keeps them.
+     * The time taken is recorded as a render in the metrics.
+     * A board too large to render as a whole, a huge sparse board, is never rendered: the
+     * client is told to look at a part of it or to ask for changes instead, and its version
+     * is updated all the same, so that the reply to its move comes at once and later deltas
+     * start from there.
+     * 
+     * @param session state of the client connection, its version is updated and its render is not pending
+     * @return BOARD or VIEW message, or in delta mode DELTA or FULL_BOARD message of the protocol,
+     *         or TOO_LARGE message instead of a whole board too large to render
+     */
+    private String boardMessage(ClientSession session) {
+        long start = System.nanoTime();
+        String message = renderBoardMessage(session);
+        metrics.render(System.nanoTime() - start);
+        return message;
+    }
+
+    /**
+     * Makes a board message as described by boardMessage, without timing it.
+     * 
+     * @param session state of the client connection, its version is updated and its render is not pending
+     * @return BOARD or VIEW message, or in delta mode DELTA or FULL_BOARD message of the protocol,
+     *         or TOO_LARGE message instead of a whole board too large to render
+     */
+    private String renderBoardMessage(ClientSession session) {
+        session.setRenderPending(false);
+        boolean renderable = Board.canRender(board.columnsNumber(), board.rowsNumber());
+        if (!session.isDeltaMode()) {
+            session.setVersion(board.version());
+            if (session.hasViewport()) {
+                return viewMessage(session);
             }
+            return renderable ? board.toString() : tooLargeMessage;
+        }
+        long version = board.version();
+        Optional<List<String>> changes = board.changesSince(session.version());
+        session.setVersion(version);
+        if (!changes.isPresent()) {
+            return renderable ? "board " + version + "\r\n" + board.toString() : tooLargeMessage;
+        }
+        StringBuilder message = new StringBuilder("delta ").append(version)
+                .append(' ').append(changes.get().size());
+        for (String change : changes.get()) {
+            message.append("\r\n").append(change);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Sets the viewport of the client to the part of a region that is on the board.
+     * 
+     * @param session state of the client connection, its viewport is updated
+     * @param x leftmost column of the region
+     * @param y top row of the region
+     * @param width number of columns of the region
+     * @param height number of rows of the region
+     * @param collapse true to leave out a board message for the request
+     * @return VIEW message with the viewport, or HELP message if no cell of the region is on the board,
+     *         or TOO_LARGE message if the part on the board is too large to render and the
+     *         viewport is left as it was, or null if it was a board message left out
+     */
+    private String viewport(ClientSession session, int x, int y, int width, int height, boolean collapse) {
+        long fromX = Math.max(x, 0);
+        long fromY = Math.max(y, 0);
+        long toX = Math.min((long) x + width, board.columnsNumber());
+        long toY = Math.min((long) y + height, board.rowsNumber());
+        if (toX <= fromX || toY <= fromY) {
+            return helpMessage;
+        }
+        if (!Board.canRender((int) (toX - fromX), (int) (toY - fromY))) {
+            return tooLargeMessage;
+        }
+        session.setViewport((int) fromX, (int) fromY, (int) (toX - fromX), (int) (toY - fromY));
+        return session.isDeltaMode() ? viewMessage(session) : boardReply(session, collapse);
+    }
+
+    /**
+     * Makes a message with the cells of the viewport of the client, read in time
+     * proportional to the viewport whatever the size of the board.
+     * 
+     * @param session state of the client connection, requires session.hasViewport()
+     * @return VIEW message of the protocol
+     */
+    private String viewMessage(ClientSession session) {
+        return "view " + session.viewX() + " " + session.viewY() + " " + session.viewWidth()
+                + " " + session.viewHeight() + "\r\n"
+                + board.render(session.viewX(), session.viewY(), session.viewWidth(), session.viewHeight());
+    }
+
+    /**
+     * Sends the client a message with the board if it does not know a version at least as
+     * new as the given one. Called by the subscription of the client.
+     * 
+     * @param session state of the client connection
+     * @param send sender of messages to the client, takes a message without its line break
+     * @param changed version of the last change the client watches
+     * @return version of the board the client knows after the call
+     */
+    long push(ClientSession session, Consumer<String> send, long changed) {
+        session.lock().lock();
+        try {
+            if (changed > session.version()) {
+                send.accept(boardMessage(session));
+            }
+            return session.version();
+        } finally {
+            session.lock().unlock();
+        }
+    }
+
+    /**
+     * Makes the subscription of the client watch the cells the client receives:
+     * its viewport outside delta mode if it has one, otherwise all cells.
+     * 
+     * @param session state of the client connection
+     */
+    private static void watch(ClientSession session) {
+        if (!session.isDeltaMode() && session.hasViewport()) {
+            session.subscription().watch(session.viewX(), session.viewY(),
+                    session.viewWidth(), session.viewHeight());
+        } else {
+            session.subscription().watchAll();
         }
-        throw new UnsupportedOperationException();
     }
 
     /**
      * Start a MinesweeperServer using the given arguments.
      * 
      * <br> Usage:
-     *      MinesweeperServer [--debug | --no-debug] [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE]
+     *      MinesweeperServer [--debug | --no-debug] [--port PORT] [--size SIZE_X,SIZE_Y [--sparse] [--seed SEED] [--density DENSITY] | --file FILE] [--data DIR [--snapshot SECONDS]] [--selector LOOPS | --virtual | --workers WORKERS [--queue QUEUE]] [--backlog BACKLOG] [--log LEVEL]
      * 
      * <br> The --debug argument means the server should run in debug mode. The server should disconnect a
      *      client after a BOOM message if and only if the --debug flag was NOT given.
@@ -222,6 +635,20 @@ public class MinesweeperServer {
      * <br> E.g. "MinesweeperServer --size 42,58" starts the server initialized with a random board of size
      *      42*58.
      * 
+     * <br> The --sparse argument means the random board should decide bombs by a hash of a seed and the
+     *      position of a cell and store cells only when players dig or flag them, so that the server starts
+     *      at once with a board of any size and its memory grows only with the play. Such a board may be
+     *      too large to be sent whole, clients should use delta mode starting from version 0 instead.
+     * <br> E.g. "MinesweeperServer --size 100000,100000 --sparse" starts the server initialized with a sparse
+     *      random board of size 100000*100000.
+     * 
+     * <br> SEED is an optional integer and DENSITY an optional number from 0 to 1: the random board places a
+     *      bomb on each cell with probability DENSITY, 1/3 by default, decided by a generator seeded with SEED,
+     *      47 by default. A board that is not sparse is generated on all processors and depends only on its
+     *      size, SEED and DENSITY. Without --seed and --density the board is the one of Board(int, int).
+     * <br> E.g. "MinesweeperServer --size 20000,20000 --seed 7 --density 0.15" starts the server initialized
+     *      with a random board of size 20000*20000 where about 15% of the cells contain bombs.
+     * 
      * <br> FILE is an optional argument specifying a file pathname where a board has been stored. If this
      *      argument is given, the stored board should be loaded as the starting board.
      * <br> E.g. "MinesweeperServer --file boardfile.txt" starts the server initialized with the board stored
@@ -240,6 +667,43 @@ public class MinesweeperServer {
      *   INT ::= [0-9]+
      * </pre>
      * 
+     * <br> A FILE whose name ends with ".board" is a binary board saved by Board.save or converted from the
+     *      format above by BoardConverter; it restores dug and flagged cells as well.
+     * 
+     * <br> DIR is an optional directory where the server stores the board: a snapshot taken every SECONDS
+     *      seconds, 60 by default, and a log of the moves made since. If DIR holds a board, the server
+     *      recovers it, ignoring --file and --size, so a restarted server continues the game; otherwise it
+     *      stores the new board there. The moves of the last few milliseconds before a crash may be lost.
+     * <br> E.g. "MinesweeperServer --data games --snapshot 30" continues the board stored in the directory
+     *      games and takes a snapshot every 30 seconds.
+     * 
+     * <br> LOOPS is an optional positive number of event loops: the server serves all connections by LOOPS
+     *      threads with selectors and non-blocking reads and writes, instead of a thread per connection, so
+     *      it holds many more connections at less memory and fewer context switches. The protocol is the same.
+     * <br> E.g. "MinesweeperServer --selector 4" serves all connections by 4 threads.
+     * 
+     * <br> The --virtual argument means the server should serve each connection by a virtual thread of its own,
+     *      with the same blocking reads and writes as the default thread per connection: a virtual thread waiting
+     *      for its client or for a lock of the board releases the platform thread that carries it, so the server
+     *      holds many mostly idle connections on a few platform threads. Virtual threads need Java 21; on older
+     *      versions the server serves a platform thread per connection and says so when it starts.
+     * <br> E.g. "MinesweeperServer --virtual" serves each connection by a virtual thread.
+     * 
+     * <br> WORKERS is an optional positive number of worker threads: the server serves at most WORKERS
+     *      connections at once, each by a worker of a bounded pool; up to QUEUE more connections, 50 by default,
+     *      wait for a worker without a welcome message, and further clients are refused with a BUSY message. So a
+     *      storm of connections takes neither threads nor memory from the players already connected.
+     * <br> E.g. "MinesweeperServer --workers 200 --queue 20" plays with at most 200 players at once.
+     * 
+     * <br> BACKLOG is an optional positive number of connections the operating system keeps waiting for the
+     *      server to accept them; clients beyond it are refused by the operating system.
+     * <br> E.g. "MinesweeperServer --backlog 100" keeps at most 100 connections waiting to be accepted.
+     * 
+     * <br> LEVEL is an optional level of the messages the server writes to the standard output: off, error,
+     *      warn, info (the default) or debug, which writes every connection and request. Messages are written
+     *      by a background thread, so players never wait for the output; if it falls behind, messages are dropped.
+     * <br> E.g. "MinesweeperServer --log debug" writes every request.
+     * 
      * <br> If neither --file nor --size is given, generate a random board of size 10x10.
      * 
      * <br> Note that --file and --size may not be specified simultaneously.
@@ -247,11 +711,12 @@ public class MinesweeperServer {
      * @param args arguments as described
      */
     public static void main(String[] args) {
-        boolean debug = false;
-        int port = DEFAULT_PORT;
-        int sizeX = DEFAULT_SIZE;
-        int sizeY = DEFAULT_SIZE;
-        Optional<File> file = Optional.empty();
+        ServerConfig.Builder config = ServerConfig.builder();
+        ServerCore core = ServerCore.threadPerConnection();
+        Optional<String> coreFlag = Optional.empty();
+        OptionalInt workers = OptionalInt.empty();
+        int queue = DEFAULT_QUEUE;
+        OptionalInt backlog = OptionalInt.empty();
 
         Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
         try {
@@ -259,26 +724,49 @@ public class MinesweeperServer {
                 String flag = arguments.remove();
                 try {
                     if (flag.equals("--debug")) {
-                        debug = true;
+                        config.debug(true);
                     } else if (flag.equals("--no-debug")) {
-                        debug = false;
+                        config.debug(false);
                     } else if (flag.equals("--port")) {
-                        port = Integer.parseInt(arguments.remove());
-                        if (port < 0 || port > MAXIMUM_PORT) {
-                            throw new IllegalArgumentException("port " + port + " out of range");
-                        }
+                        config.port(Integer.parseInt(arguments.remove()));
                     } else if (flag.equals("--size")) {
                         String[] sizes = arguments.remove().split(",");
-                        sizeX = Integer.parseInt(sizes[0]);
-                        sizeY = Integer.parseInt(sizes[1]);
-                        file = Optional.empty();
+                        config.size(Integer.parseInt(sizes[0]), Integer.parseInt(sizes[1]));
+                    } else if (flag.equals("--sparse")) {
+                        config.sparse(true);
+                    } else if (flag.equals("--seed")) {
+                        config.seed(Long.parseLong(arguments.remove()));
+                    } else if (flag.equals("--density")) {
+                        config.density(Double.parseDouble(arguments.remove()));
+                    } else if (flag.equals("--data")) {
+                        config.data(new File(arguments.remove()));
+                    } else if (flag.equals("--snapshot")) {
+                        config.snapshotSeconds(Long.parseLong(arguments.remove()));
+                    } else if (flag.equals("--selector")) {
+                        core = ServerCore.selector(Integer.parseInt(arguments.remove()));
+                        coreFlag = Optional.of(flag);
+                    } else if (flag.equals("--virtual")) {
+                        core = ServerCore.virtualThreads();
+                        coreFlag = Optional.of(flag);
+                    } else if (flag.equals("--workers")) {
+                        workers = OptionalInt.of(Integer.parseInt(arguments.remove()));
+                    } else if (flag.equals("--queue")) {
+                        queue = Integer.parseInt(arguments.remove());
+                    } else if (flag.equals("--backlog")) {
+                        backlog = OptionalInt.of(Integer.parseInt(arguments.remove()));
+                    } else if (flag.equals("--log")) {
+                        String level = arguments.remove();
+                        try {
+                            Log.SERVER.setLevel(Log.Level.valueOf(level.toUpperCase(Locale.ROOT)));
+                        } catch (IllegalArgumentException iae) {
+                            throw new IllegalArgumentException("unknown log level: \"" + level + "\"");
+                        }
                     } else if (flag.equals("--file")) {
-                        sizeX = -1;
-                        sizeY = -1;
-                        file = Optional.of(new File(arguments.remove()));
-                        if ( ! file.get().isFile()) {
-                            throw new IllegalArgumentException("file not found: \"" + file.get() + "\"");
+                        File file = new File(arguments.remove());
+                        if ( ! file.isFile()) {
+                            throw new IllegalArgumentException("file not found: \"" + file + "\"");
                         }
+                        config.file(file);
                     } else {
                         throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
                     }
@@ -288,14 +776,27 @@ public class MinesweeperServer {
                     throw new IllegalArgumentException("unable to parse number for " + flag);
                 }
             }
+            if (workers.isPresent()) {
+                if (coreFlag.isPresent()) {
+                    throw new IllegalArgumentException(coreFlag.get() + " may not be used with --workers");
+                }
+                core = ServerCore.pool(workers.getAsInt(), queue);
+            }
+            if (backlog.isPresent()) {
+                core = core.withBacklog(backlog.getAsInt());
+            }
+            config.core(core);
         } catch (IllegalArgumentException iae) {
             System.err.println(iae.getMessage());
-            System.err.println("usage: MinesweeperServer [--debug | --no-debug] [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE]");
+            System.err.println("usage: MinesweeperServer [--debug | --no-debug] [--port PORT] [--size SIZE_X,SIZE_Y [--sparse] [--seed SEED] [--density DENSITY] | --file FILE] [--data DIR [--snapshot SECONDS]] [--selector LOOPS | --virtual | --workers WORKERS [--queue QUEUE]] [--backlog BACKLOG] [--log LEVEL]");
             return;
         }
 
         try {
-            runMinesweeperServer(debug, file, sizeX, sizeY, port);
+            runMinesweeperServer(config.build());
+        } catch (IllegalArgumentException iae) {
+            // malformed board file
+            System.err.println(iae.getMessage());
         } catch (IOException ioe) {
             throw new RuntimeException(ioe);
         }
@@ -316,14 +817,68 @@ public class MinesweeperServer {
      * @throws IOException if a network error occurs
      */
     public static void runMinesweeperServer(boolean debug, Optional<File> file, int sizeX, int sizeY, int port) throws IOException {
+        ServerConfig.Builder config = ServerConfig.builder().debug(debug).port(port);
+        if (file.isPresent()) {
+            config.file(file.get());
+        } else {
+            config.size(sizeX, sizeY);
+        }
+        runMinesweeperServer(config.build());
+    }
+
+    /**
+     * Start a MinesweeperServer as configured: with a board recovered from its data directory,
+     * a random new board or a board loaded from a file, serving connections by its core.
+     * 
+     * @param config how the server starts, see ServerConfig and the options of main(..)
+     * @throws IOException if a network error occurs or the data directory cannot be used
+     */
+    public static void runMinesweeperServer(ServerConfig config) throws IOException {
+        Optional<BoardStore> store = Optional.empty();
+        if(config.data().isPresent()) {
+            store = Optional.of(new BoardStore(config.data().get(), config.snapshotSeconds()));
+        }
         Board board;
-        if(file.isPresent()) {
-                board = new Board(file.get());
-            } else {
-                board = new Board(sizeX, sizeY);
-            }        
-        MinesweeperServer server = new MinesweeperServer(board, port, debug);
+        if(store.isPresent() && store.get().hasSnapshot()) {
+            board = store.get().recover();
+            Log.SERVER.info("Recovered board version " + board.version() + " from " + config.data().get());
+        } else {
+            board = newBoard(config);
+            if(store.isPresent()) {
+                store.get().start(board);
+            }
+        }
+        MinesweeperServer server = new MinesweeperServer(board, config.port(), config.debug(), config.core());
         server.serve();
     }
+
+    /**
+     * Makes the starting board of a server without a stored board: the board loaded from the
+     * file of the configuration if present, otherwise a random board of its size, whose seed
+     * and density are DEFAULT_SEED and DEFAULT_DENSITY if empty.
+     * 
+     * @param config configuration of the server
+     * @return the board
+     * @throws IOException if the file cannot be read
+     */
+    private static Board newBoard(ServerConfig config) throws IOException {
+        Optional<File> file = config.file();
+        int sizeX = config.sizeX();
+        int sizeY = config.sizeY();
+        OptionalLong seed = config.seed();
+        OptionalDouble density = config.density();
+        boolean sparse = config.sparse();
+        if(file.isPresent() && file.get().getName().endsWith(BoardConverter.EXTENSION)) {
+            return Board.load(file.get());
+        } else if(file.isPresent()) {
+            return new Board(file.get());
+        } else if(sparse) {
+            return new Board(sizeX, sizeY, seed.orElse(DEFAULT_SEED), density.orElse(DEFAULT_DENSITY));
+        } else if(seed.isPresent() || density.isPresent()) {
+            return Board.generate(sizeX, sizeY, seed.orElse(DEFAULT_SEED), density.orElse(DEFAULT_DENSITY));
+        } else {
+            return new Board(sizeX, sizeY);
+        }
+    }
    
 }
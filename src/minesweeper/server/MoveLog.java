@@ -0,0 +1,428 @@
+package minesweeper.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import minesweeper.Board;
+import minesweeper.Move;
+import minesweeper.MoveListener;
+
+/**
+ * Write-ahead log of the moves that change a board, in segment files.
+ * Players only copy their moves into a buffer in memory; a background thread writes
+ * everything buffered since its last write in one batch and forces it to the device
+ * once per batch (group commit), so no player waits for the device. A crash loses at
+ * most the moves of the batch being written.
+ * Each record is
+ * <pre>
+ *   RECORD ::= VERSION MOVE X Y CHECKSUM
+ *   VERSION ::= long     MOVE ::= byte, ordinal of Move
+ *   X, Y, CHECKSUM ::= int, CHECKSUM is CRC-32 of the other bytes of the record
+ * </pre>
+ * Records may be out of version order when players on different cells move at once.
+ * Thread safe: the buffer and the segment are guarded by the lock of the log, the
+ * channels are used only by the writer thread, and close joins the writer. The lock is
+ * a ReentrantLock rather than a monitor: players take it while they hold stripes of the
+ * board, and a virtual thread that waits for a monitor would pin its carrier thread.
+ */
+class MoveLog implements MoveListener, Closeable {
+
+    /**
+     * Abstraction function
+     *
+     * represents the moves written to the segments plus the records in pending, of
+     * which appended - durable are not yet forced to the device; records in pending
+     * before rotateAt belong to the current segment, the rest to nextSegment
+     *
+     * Rep invariant
+     *
+     * durable &lt;= appended, pending holds appended - durable - (records being written)
+     * rotateAt &lt; 0 if and only if nextSegment == null
+     *
+     * Rep exposure
+     *
+     * all fields are private, buffers and channels are never shared
+     */
+
+    /** Number of bytes of a record */
+    static final int RECORD_SIZE = 8 + 1 + 4 + 4 + 4;
+    /** Initial size of the buffer of pending records */
+    private static final int INITIAL_BUFFER = 1024 * RECORD_SIZE;
+
+    private final Thread writer;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when records are buffered, a rotation is asked for or the log is closed */
+    private final Condition work = lock.newCondition();
+    /** Signalled when records become durable, a rotation is done or the log fails */
+    private final Condition progress = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER);
+    private final CRC32 checksum = new CRC32();
+    private long appended = 0;
+    private long durable = 0;
+    private Path segment;
+    private Path nextSegment = null;
+    private int rotateAt = -1;
+    private boolean closed = false;
+    /** true once the writer thread is done */
+    private boolean stopped = false;
+    private IOException failure = null;
+
+    /**
+     * Makes a log that appends to a segment and starts its writer thread.
+     *
+     * @param segment file of the first segment, created if missing
+     * @throws IOException if the segment cannot be opened
+     */
+    MoveLog(Path segment) throws IOException {
+        this.segment = segment;
+        FileChannel channel = open(segment);
+        writer = new Thread(() -> write(channel), "move-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param segment file of a segment
+     * @return channel that appends to the segment
+     * @throws IOException if the segment cannot be opened
+     */
+    private static FileChannel open(Path segment) throws IOException {
+        return FileChannel.open(segment, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Buffers a record of the move; the writer thread makes it durable soon after.
+     * Moves after close are dropped.
+     */
+    @Override
+    public void moved(Move move, int x, int y, long version) {
+        lock.lock();
+        try {
+            if(closed) {
+                return;
+            }
+            if(pending.remaining() < RECORD_SIZE) {
+                ByteBuffer larger = ByteBuffer.allocate(2 * pending.capacity());
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            int start = pending.position();
+            pending.putLong(version).put((byte) move.ordinal()).putInt(x).putInt(y);
+            checksum.reset();
+            checksum.update(pending.array(), start, RECORD_SIZE - 4);
+            pending.putInt((int) checksum.getValue());
+            ++appended;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Body of the writer thread: writes pending records in batches until the log is closed.
+     *
+     * @param first channel of the first segment, closed on return
+     */
+    private void write(FileChannel first) {
+        FileChannel channel = first;
+        try {
+            while(true) {
+                ByteBuffer batch;
+                long records;
+                int boundary;
+                Path next;
+                lock.lock();
+                try {
+                    while(pending.position() == 0 && nextSegment == null && !closed) {
+                        work.await();
+                    }
+                    if(pending.position() == 0 && nextSegment == null) {
+                        return;
+                    }
+                    batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    records = batch.position() / RECORD_SIZE;
+                    boundary = rotateAt;
+                    next = nextSegment;
+                } finally {
+                    lock.unlock();
+                }
+                batch.flip();
+                if(next != null) {
+                    ByteBuffer head = batch.duplicate();
+                    head.limit(boundary);
+                    writeFully(channel, head);
+                    channel.force(false);
+                    channel.close();
+                    channel = open(next);
+                    batch.position(boundary);
+                }
+                writeFully(channel, batch);
+                channel.force(false);
+                batch.clear();
+                lock.lock();
+                try {
+                    durable += records;
+                    if(next != null) {
+                        segment = next;
+                        nextSegment = null;
+                        rotateAt = -1;
+                    }
+                    progress.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch(IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                closed = true;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            Log.SERVER.error("Writing the move log failed", e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch(IOException e) {
+                Log.SERVER.error("Closing a segment of the move log failed", e);
+            }
+            lock.lock();
+            try {
+                stopped = true;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param channel channel to write
+     * @param buffer bytes to write, consumed on return
+     * @throws IOException if the channel cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Makes moves buffered from now on go to a new segment, so that older segments can be
+     * deleted once a snapshot covers them. Returns after the writer closed the old segment.
+     *
+     * @param next file of the new segment, created if missing
+     * @throws IOException if the log failed or was closed
+     */
+    void rotate(Path next) throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            nextSegment = next;
+            rotateAt = pending.position();
+            work.signal();
+            awaitWhile(() -> nextSegment != null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until all moves buffered before the call are forced to the device.
+     *
+     * @throws IOException if the log failed or was closed
+     */
+    void sync() throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            long target = appended;
+            awaitWhile(() -> durable < target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return file of the segment the log appends to
+     */
+    Path segment() {
+        lock.lock();
+        try {
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the buffered moves durable, stops the writer and closes the segment.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            work.signal();
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if(failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws IOException if the log failed or was closed
+     */
+    private void checkOpen() throws IOException {
+        if(failure != null) {
+            throw failure;
+        }
+        if(closed) {
+            throw new IOException("move log is closed");
+        }
+    }
+
+    /**
+     * State the caller of awaitWhile waits to leave.
+     */
+    private interface Guard {
+        boolean holds();
+    }
+
+    /**
+     * Waits for progress of the writer while the condition holds and the log did not fail.
+     * Must be called with the lock held.
+     *
+     * @param condition condition over fields guarded by the lock
+     * @throws IOException if the log failed while waiting or the wait was interrupted
+     */
+    private void awaitWhile(Guard condition) throws IOException {
+        try {
+            while(condition.holds() && failure == null && !stopped) {
+                progress.await();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the move log", e);
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Applies the moves of the segments that come after the version of the board, in
+     * version order. Each segment is read up to its first incomplete or corrupt record,
+     * the tail a crash leaves; replay stops at the first version that is missing, so the
+     * board always ends at a version it really had.
+     *
+     * @param segments files of segments, in the order they were written
+     * @param board board restored from a snapshot, or with no moves
+     * @return number of moves applied
+     * @throws IOException if a segment cannot be read
+     */
+    static int replay(List<Path> segments, Board board) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        for(Path segment : segments) {
+            read(segment, records, board.version());
+        }
+        records.sort((a, b) -> Long.compare(a[0], b[0]));
+        int applied = 0;
+        for(long[] record : records) {
+            if(record[0] <= board.version()) {
+                continue;
+            }
+            if(record[0] != board.version() + 1) {
+                break;
+            }
+            int x = (int) record[2];
+            int y = (int) record[3];
+            switch(Move.values()[(int) record[1]]) {
+            case DIG:
+                board.digIfUntouched(x, y);
+                break;
+            case FLAG:
+                board.flagIfUntouched(x, y);
+                break;
+            case DEFLAG:
+                board.deflagIfFlagged(x, y);
+                break;
+            }
+            ++applied;
+        }
+        return applied;
+    }
+
+    /**
+     * Reads the valid records of a segment that come after a version.
+     *
+     * @param segment file of a segment
+     * @param records list to add {version, move, x, y} of each record to
+     * @param after version below and at which records are skipped
+     * @throws IOException if the segment cannot be read
+     */
+    private static void read(Path segment, List<long[]> records, long after) throws IOException {
+        try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER);
+            CRC32 checksum = new CRC32();
+            while(channel.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                if(buffer.remaining() < RECORD_SIZE) {
+                    if(channel.position() == channel.size()) {
+                        return;
+                    }
+                    buffer.compact();
+                    continue;
+                }
+                while(buffer.remaining() >= RECORD_SIZE) {
+                    int start = buffer.position();
+                    checksum.reset();
+                    checksum.update(buffer.array(), start, RECORD_SIZE - 4);
+                    long version = buffer.getLong();
+                    int move = buffer.get();
+                    int x = buffer.getInt();
+                    int y = buffer.getInt();
+                    if(buffer.getInt() != (int) checksum.getValue()
+                            || move < 0 || move >= Move.values().length) {
+                        return;
+                    }
+                    if(version > after) {
+                        records.add(new long[] { version, move, x, y });
+                    }
+                }
+                buffer.compact();
+            }
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package minesweeper.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Core of a MinesweeperServer that serves all connections by a fixed number of event
+ * loops instead of a thread per connection. Each loop owns a selector and the
+ * connections the acceptor handed to it, reads them without blocking into a buffer of
+ * each connection and writes their replies without blocking, keeping what the socket
+ * does not take yet. The loops do only this I/O: the complete lines of a connection
+ * are handed together to a request worker of the core, which handles them by the
+ * protocol of the server and queues their replies, so a large flood fill or a render
+ * of the whole board takes a worker, never a loop and the other connections on it.
+ * A connection has at most one task at a worker and is not read meanwhile, so its
+ * requests are handled in order and all replies to requests read together are
+ * written at once.
+ * A connection whose client does not read its replies is neither read nor pushed to
+ * until they drain, so it never makes the server buffer without bound.
+ * Subscriptions of the connections have no thread of their own: a move the client
+ * misses flags the connection and wakes the selector, the loop hands the push to a
+ * worker like a request, and a push held back by the rate of the subscription waits in
+ * a timer queue of the loop, whose earliest time bounds the select.
+ * Thread safe: a connection is read, written and scheduled only by its loop; its
+ * session and subscription are used by one task at a time, handed over through the
+ * queues of the executor and of the loop; output is guarded by the lock of the
+ * connection; other threads (players whose moves change what a subscription watches)
+ * only queue the connection for its loop and wake the selector.
+ */
+class SelectorServer {
+
+    /**
+     * Abstraction function
+     *
+     * represents a server that accepts connections on channel and serves them by the
+     * protocol of server, connection of key k of loops[i] by loops[i]
+     *
+     * Rep invariant
+     *
+     * loops.length &gt; 0
+     *
+     * Rep exposure
+     *
+     * all fields are private, server and channel are shared with MinesweeperServer on purpose
+     */
+
+    /** Bytes of queued output above which a connection is neither read nor pushed to */
+    private static final int MAXIMUM_PENDING = 1 << 20;
+    /** Line separator of replies, as written by PrintWriter.println in the blocking core */
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final MinesweeperServer server;
+    private final ServerSocketChannel channel;
+    private final EventLoop[] loops;
+
+    /**
+     * Makes a core that serves connections accepted on a channel.
+     *
+     * @param server server whose protocol the core speaks
+     * @param channel bound channel to accept connections on
+     * @param eventLoops number of event loops, eventLoops &gt; 0
+     * @throws IOException if a selector cannot be opened
+     */
+    SelectorServer(MinesweeperServer server, ServerSocketChannel channel, int eventLoops) throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.loops = new EventLoop[eventLoops];
+        for(int i = 0; i < eventLoops; ++i) {
+            loops[i] = new EventLoop(Selector.open());
+        }
+    }
+
+    /**
+     * Starts the event loops and accepts connections, handing them to the loops in turn.
+     * Never returns unless an exception is thrown.
+     *
+     * @throws IOException if the channel is broken
+     */
+    void serve() throws IOException {
+        for(int i = 0; i < loops.length; ++i) {
+            Thread thread = new Thread(loops[i], "event-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        channel.configureBlocking(true);
+        for(int next = 0; ; next = (next + 1) % loops.length) {
+            SocketChannel accepted = channel.accept();
+            server.connected();
+            try {
+                accepted.configureBlocking(false);
+                accepted.socket().setTcpNoDelay(true);
+            } catch(IOException e) {
+                Log.SERVER.error("Configuring a connection failed", e); // but don't stop accepting
+                server.disconnected();
+                closeQuietly(accepted);
+                continue;
+            }
+            loops[next].hand(new Connection(loops[next], accepted));
+        }
+    }
+
+    /**
+     * Thread that serves the connections registered with its selector.
+     */
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        /** Connections accepted for this loop and not registered yet */
+        private final Queue<Connection> accepted = new ConcurrentLinkedQueue<>();
+        /** Connections whose subscription was flagged by other threads */
+        private final Queue<Connection> flagged = new ConcurrentLinkedQueue<>();
+        /** Connections whose task a worker completed */
+        private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+        /** Connections whose subscription waits for the end of its interval, by time */
+        private final PriorityQueue<Connection> timers =
+                new PriorityQueue<>(Comparator.comparingLong(connection -> connection.due));
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Hands an accepted connection to the loop. Called by the acceptor.
+         *
+         * @param connection connection with a non-blocking channel, not registered yet
+         */
+        void hand(Connection connection) {
+            accepted.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks the loop to push the subscription of a connection. Called by the thread
+         * of a player, while it holds locks of the board.
+         *
+         * @param connection connection of this loop
+         */
+        void flag(Connection connection) {
+            flagged.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Gives a connection back to the loop once its task is done. Called by the worker.
+         *
+         * @param connection connection of this loop
+         */
+        void complete(Connection connection) {
+            completed.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Waits until a channel is ready, the selector is woken up or the earliest timer
+         * is due.
+         *
+         * @throws IOException if the selector fails
+         */
+        private void select() throws IOException {
+            Connection first = timers.peek();
+            if(first == null) {
+                selector.select();
+                return;
+            }
+            long wait = first.due - System.nanoTime();
+            if(wait <= 0) {
+                selector.selectNow();
+            } else {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            }
+        }
+
+        @Override
+        public void run() {
+            while(true) {
+                try {
+                    select();
+                } catch(IOException e) {
+                    Log.SERVER.error("Event loop stopped", e);
+                    return;
+                }
+                for(Connection connection = accepted.poll(); connection != null; connection = accepted.poll()) {
+                    connection.register(selector);
+                }
+                for(Connection connection = completed.poll(); connection != null; connection = completed.poll()) {
+                    connection.completed();
+                }
+                for(Connection connection = flagged.poll(); connection != null; connection = flagged.poll()) {
+                    connection.push();
+                }
+                long now = System.nanoTime();
+                while(!timers.isEmpty() && timers.peek().due - now <= 0) {
+                    Connection connection = timers.poll();
+                    connection.timed = false;
+                    connection.push();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if(key.isWritable()) {
+                            connection.flush();
+                        }
+                        if(key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch(CancelledKeyException e) {
+                        connection.close();
+                    } catch(RuntimeException e) {
+                        Log.SERVER.error("Connection failed", e); // but don't stop serving the other connections
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * State of one connection: its channel, the bytes of a line not complete yet, the
+     * replies not written yet, its task at a worker and when its subscription is due
+     * for a push.
+     * Used only by the loop, except the session, the subscription and closing, which its
+     * task uses, and output, which its task queues under the lock of the connection;
+     * the subscription flags it from other threads.
+     */
+    private class Connection {
+
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final ClientSession session = new ClientSession();
+        private SelectionKey key;
+        private final LineBuffer input = new LineBuffer();
+        /** Replies not written yet, guarded by the lock of the connection */
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+        /** Bytes of output, guarded by the lock of the connection */
+        private int pending = 0;
+        /** true once the connection is to be closed after its output is written */
+        private volatile boolean closing = false;
+        private boolean closed = false;
+        /** true while a task of the connection is at a worker; the connection is not read meanwhile */
+        private boolean busy = false;
+        /** true if the subscription is to be pushed once the connection is neither busy nor full */
+        private boolean pushWanted = false;
+        /** Nanoseconds after which the last task asked for its push to be tried again, or -1 */
+        private long pushWait = -1;
+        /** true if the last task failed */
+        private boolean failed = false;
+        /** true while the connection is in the timers of its loop */
+        private boolean timed = false;
+        /** System.nanoTime at which the subscription is due while timed */
+        private long due;
+
+        /**
+         * Makes a connection and queues the welcome message, with the number of players
+         * at the time it was accepted. Called by the acceptor.
+         *
+         * @param loop loop that will serve the connection
+         * @param channel connected non-blocking channel
+         */
+        Connection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            session.setSubscription(new Subscription(server.board(),
+                    changed -> server.push(session, this::queueLine, changed), () -> loop.flag(this)));
+            queue(server.welcome().getBytes(StandardCharsets.US_ASCII), false);
+        }
+
+        /**
+         * Registers the connection with the selector of its loop and sends the welcome
+         * message. Called by the loop.
+         *
+         * @param selector selector of the loop
+         */
+        void register(Selector selector) {
+            try {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+            } catch(IOException e) {
+                Log.SERVER.error("Registering a connection failed", e);
+                close();
+                return;
+            }
+            flush();
+        }
+
+        /**
+         * Reads what the channel has and hands the complete lines to a worker. Called by the loop.
+         */
+        void read() {
+            int read;
+            try {
+                read = input.read(channel);
+            } catch(IOException e) {
+                close();
+                return;
+            }
+            if(read < 0) {
+                close();
+                return;
+            }
+            server.metrics().read(read);
+            if(input.tooLong() && !closing) {
+                close();
+                return;
+            }
+            dispatch();
+            flush();
+        }
+
+        /**
+         * Asks for a push of the subscription, made by a worker as soon as the
+         * connection is neither busy nor full. Called by the loop.
+         */
+        void push() {
+            if(closed) {
+                return;
+            }
+            pushWanted = true;
+            dispatch();
+        }
+
+        /**
+         * Hands the complete lines read so far and a wanted push to a worker, unless a
+         * task of the connection is already there. A push is not handed over while too
+         * much output is queued: it stays wanted, and the subscription stays flagged so
+         * the moves of players do not wake the loop for it, until flush drains the
+         * output. Called by the loop.
+         */
+        private void dispatch() {
+            if(busy || closed) {
+                return;
+            }
+            List<String> lines = new ArrayList<>();
+            if(!closing) {
+                for(String line = input.nextLine(); line != null; line = input.nextLine()) {
+                    lines.add(line);
+                }
+            }
+            boolean full;
+            synchronized(this) {
+                full = pending >= MAXIMUM_PENDING;
+            }
+            boolean pushing = pushWanted && !full && !closing;
+            if(lines.isEmpty() && !pushing) {
+                return;
+            }
+            if(pushing) {
+                pushWanted = false;
+            }
+            busy = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            server.core().requests().execute(() -> work(lines, pushing));
+        }
+
+        /**
+         * Handles lines by the protocol and queues their replies, then pushes the
+         * subscription if asked to, and gives the connection back to its loop.
+         * Called by a worker.
+         *
+         * @param lines lines from the client, in order, without their line breaks
+         * @param pushing true to push the subscription if it is due
+         */
+        private void work(List<String> lines, boolean pushing) {
+            try {
+                for(int i = 0; i < lines.size() && !closing; ++i) {
+                    String reply = server.request(session, lines.get(i), this::queueLine, i + 1 < lines.size());
+                    if(server.closesConnection(reply)) {
+                        closing = true;
+                    }
+                }
+                pushWait = pushing && !closing ? session.subscription().pushIfDue() : -1;
+            } catch(RuntimeException e) {
+                Log.SERVER.error("Connection failed", e); // but don't stop serving the other connections
+                failed = true;
+            } finally {
+                loop.complete(this);
+            }
+        }
+
+        /**
+         * Takes the connection back from the worker: times the next push its task asked
+         * for, writes the replies and hands over what was read or wanted meanwhile.
+         * Called by the loop.
+         */
+        void completed() {
+            busy = false;
+            if(closed) {
+                session.subscription().stop();
+                return;
+            }
+            if(failed) {
+                close();
+                return;
+            }
+            if(pushWait > 0 && !timed) {
+                timed = true;
+                due = System.nanoTime() + pushWait;
+                loop.timers.add(this);
+            }
+            flush();
+            dispatch();
+        }
+
+        /**
+         * Queues a reply. Called by the worker of the task of the connection.
+         *
+         * @param text reply without its line break
+         */
+        private void queueLine(String text) {
+            queue(text.getBytes(StandardCharsets.UTF_8), true);
+        }
+
+        /**
+         * @param bytes bytes to write
+         * @param newline true to write a line break after them
+         */
+        private synchronized void queue(byte[] bytes, boolean newline) {
+            output.add(ByteBuffer.wrap(bytes));
+            pending += bytes.length;
+            if(newline) {
+                output.add(ByteBuffer.wrap(NEWLINE));
+                pending += NEWLINE.length;
+            }
+        }
+
+        /**
+         * Writes as much queued output as the channel takes, and asks the selector to
+         * tell when the channel takes more if some is left. Stops reading the
+         * connection while too much output is queued or its task is at a worker,
+         * hands over a push held back by too much output once it drains, and closes the
+         * connection once the output of its last reply is written. Called by the loop.
+         */
+        void flush() {
+            if(closed) {
+                return;
+            }
+            boolean drained;
+            boolean full;
+            synchronized(this) {
+                try {
+                    while(!output.isEmpty()) {
+                        ByteBuffer head = output.peek();
+                        int written = channel.write(head);
+                        pending -= written;
+                        server.metrics().wrote(written);
+                        if(head.hasRemaining()) {
+                            break;
+                        }
+                        output.remove();
+                    }
+                } catch(IOException e) {
+                    output.clear();
+                    pending = 0;
+                    closing = true;
+                }
+                drained = output.isEmpty();
+                full = pending >= MAXIMUM_PENDING;
+            }
+            if(drained && closing && !busy) {
+                close();
+                return;
+            }
+            int interest = drained ? 0 : SelectionKey.OP_WRITE;
+            if(!full && !closing && !busy) {
+                interest |= SelectionKey.OP_READ;
+            }
+            key.interestOps(interest);
+            if(pushWanted && !full) {
+                dispatch();
+            }
+        }
+
+        /**
+         * Closes the connection and stops its subscription, at once or, if its task is at
+         * a worker, once the task is done. Called by the loop.
+         */
+        void close() {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            if(!busy) {
+                session.subscription().stop();
+            }
+            if(key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            server.disconnected();
+        }
+    }
+
+    /**
+     * @param channel channel to close, errors are logged
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch(IOException e) {
+            Log.SERVER.error("Closing a connection failed", e);
+        }
+    }
+}
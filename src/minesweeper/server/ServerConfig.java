@@ -0,0 +1,310 @@
+package minesweeper.server;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+
+/**
+ * How MinesweeperServer.runMinesweeperServer starts a server: its port and debug mode,
+ * where its board comes from, where the board is stored and how connections are served.
+ * Made by a Builder, which starts from the defaults of the command line, so callers set
+ * only what they change.
+ * Immutable.
+ */
+public class ServerConfig {
+
+    /**
+     * Abstraction function
+     *
+     * represents a server on port port, in debug mode if debug, whose board is
+     * recovered from data if it holds a board, otherwise loaded from file if present,
+     * otherwise a random board of sizeX columns and sizeY rows, sparse if sparse, with
+     * bombs decided by seed and density if present; the board is stored in data if
+     * present with a snapshot every snapshotSeconds seconds; connections are served by core
+     *
+     * Rep invariant
+     *
+     * 0 &lt;= port &lt;= MAXIMUM_PORT
+     * sizeX &gt; 0 and sizeY &gt; 0 if file is empty
+     * 0 &lt;= density &lt;= 1 if present
+     * snapshotSeconds &gt; 0
+     * file, seed, density, data, core != null
+     *
+     * Rep exposure
+     *
+     * all fields are private and final, of immutable types except core, which is immutable too
+     */
+
+    /** Default server port. */
+    static final int DEFAULT_PORT = 4444;
+    /** Maximum port number as defined by ServerSocket. */
+    static final int MAXIMUM_PORT = 65535;
+    /** Default square board size. */
+    static final int DEFAULT_SIZE = 10;
+    /** Default number of seconds between snapshots of a stored board. */
+    static final long DEFAULT_SNAPSHOT_SECONDS = 60;
+
+    private final boolean debug;
+    private final int port;
+    private final Optional<File> file;
+    private final int sizeX;
+    private final int sizeY;
+    private final boolean sparse;
+    private final OptionalLong seed;
+    private final OptionalDouble density;
+    private final Optional<File> data;
+    private final long snapshotSeconds;
+    private final ServerCore core;
+
+    private void checkRep() {
+        assert port >= 0 && port <= MAXIMUM_PORT;
+        assert file.isPresent() || (sizeX > 0 && sizeY > 0);
+        assert !density.isPresent() || (density.getAsDouble() >= 0 && density.getAsDouble() <= 1);
+        assert snapshotSeconds > 0;
+        assert seed != null && data != null && core != null;
+    }
+
+    /**
+     * @param builder builder whose settings the configuration takes
+     */
+    private ServerConfig(Builder builder) {
+        this.debug = builder.debug;
+        this.port = builder.port;
+        this.file = builder.file;
+        this.sizeX = builder.sizeX;
+        this.sizeY = builder.sizeY;
+        this.sparse = builder.sparse;
+        this.seed = builder.seed;
+        this.density = builder.density;
+        this.data = builder.data;
+        this.snapshotSeconds = builder.snapshotSeconds;
+        this.core = builder.core;
+        checkRep();
+    }
+
+    /**
+     * @return builder of a configuration, with the defaults of the command line: port 4444,
+     *         no debug mode, a random 10x10 board that is not stored, a thread per connection
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if the server should *not* disconnect a client after a BOOM message
+     */
+    public boolean debug() {
+        return debug;
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return file to load the board from, empty for a random board
+     */
+    public Optional<File> file() {
+        return file;
+    }
+
+    /**
+     * @return number of columns of a random board
+     */
+    public int sizeX() {
+        return sizeX;
+    }
+
+    /**
+     * @return number of rows of a random board
+     */
+    public int sizeY() {
+        return sizeY;
+    }
+
+    /**
+     * @return true if a random board allocates cells only when they are dug or flagged
+     */
+    public boolean sparse() {
+        return sparse;
+    }
+
+    /**
+     * @return seed of a random board, empty for the default
+     */
+    public OptionalLong seed() {
+        return seed;
+    }
+
+    /**
+     * @return probability of a cell of a random board to contain a bomb, empty for the default
+     */
+    public OptionalDouble density() {
+        return density;
+    }
+
+    /**
+     * @return directory the board is stored in and recovered from, empty if not stored
+     */
+    public Optional<File> data() {
+        return data;
+    }
+
+    /**
+     * @return seconds between snapshots of a stored board
+     */
+    public long snapshotSeconds() {
+        return snapshotSeconds;
+    }
+
+    /**
+     * @return how connections are served
+     */
+    public ServerCore core() {
+        return core;
+    }
+
+    /**
+     * Settings of a ServerConfig, changed one by one.
+     * NOT thread safe.
+     */
+    public static class Builder {
+
+        private boolean debug = false;
+        private int port = DEFAULT_PORT;
+        private Optional<File> file = Optional.empty();
+        private int sizeX = DEFAULT_SIZE;
+        private int sizeY = DEFAULT_SIZE;
+        private boolean sparse = false;
+        private OptionalLong seed = OptionalLong.empty();
+        private OptionalDouble density = OptionalDouble.empty();
+        private Optional<File> data = Optional.empty();
+        private long snapshotSeconds = DEFAULT_SNAPSHOT_SECONDS;
+        private ServerCore core = ServerCore.threadPerConnection();
+
+        private Builder() {
+        }
+
+        /**
+         * @param debug true if the server should *not* disconnect a client after a BOOM message
+         * @return this builder
+         */
+        public Builder debug(boolean debug) {
+            this.debug = debug;
+            return this;
+        }
+
+        /**
+         * @param port port to listen on, 0 &lt;= port &lt;= 65535
+         * @return this builder
+         * @throws IllegalArgumentException if the port is out of range
+         */
+        public Builder port(int port) {
+            if(port < 0 || port > MAXIMUM_PORT) {
+                throw new IllegalArgumentException("port " + port + " out of range");
+            }
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param file file to load the board from, in the format of MinesweeperServer.main,
+         *             or a binary board whose name ends with ".board"; replaces a random board
+         * @return this builder
+         */
+        public Builder file(File file) {
+            this.file = Optional.of(file);
+            return this;
+        }
+
+        /**
+         * @param sizeX number of columns of a random board, sizeX &gt; 0
+         * @param sizeY number of rows of a random board, sizeY &gt; 0
+         * @return this builder, with a random board instead of one from a file
+         * @throws IllegalArgumentException if a size is not positive
+         */
+        public Builder size(int sizeX, int sizeY) {
+            if(sizeX <= 0 || sizeY <= 0) {
+                throw new IllegalArgumentException("size " + sizeX + "," + sizeY + " out of range");
+            }
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.file = Optional.empty();
+            return this;
+        }
+
+        /**
+         * @param sparse true if a random board should allocate cells only when they are dug or flagged
+         * @return this builder
+         */
+        public Builder sparse(boolean sparse) {
+            this.sparse = sparse;
+            return this;
+        }
+
+        /**
+         * @param seed seed of a random board
+         * @return this builder
+         */
+        public Builder seed(long seed) {
+            this.seed = OptionalLong.of(seed);
+            return this;
+        }
+
+        /**
+         * @param density probability of a cell of a random board to contain a bomb, from 0 to 1
+         * @return this builder
+         * @throws IllegalArgumentException if the density is out of range
+         */
+        public Builder density(double density) {
+            if( ! (density >= 0 && density <= 1)) {
+                throw new IllegalArgumentException("density " + density + " out of range");
+            }
+            this.density = OptionalDouble.of(density);
+            return this;
+        }
+
+        /**
+         * @param data directory to store the board in; if it already holds a board, the server
+         *             starts with that board instead of the one given by file or size
+         * @return this builder
+         */
+        public Builder data(File data) {
+            this.data = Optional.of(data);
+            return this;
+        }
+
+        /**
+         * @param snapshotSeconds seconds between snapshots of a stored board, snapshotSeconds &gt; 0
+         * @return this builder
+         * @throws IllegalArgumentException if the interval is not positive
+         */
+        public Builder snapshotSeconds(long snapshotSeconds) {
+            if(snapshotSeconds <= 0) {
+                throw new IllegalArgumentException("snapshot interval must be positive");
+            }
+            this.snapshotSeconds = snapshotSeconds;
+            return this;
+        }
+
+        /**
+         * @param core how connections are served
+         * @return this builder
+         */
+        public Builder core(ServerCore core) {
+            this.core = core;
+            return this;
+        }
+
+        /**
+         * @return configuration with the settings of this builder
+         */
+        public ServerConfig build() {
+            return new ServerConfig(this);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package minesweeper.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How a MinesweeperServer serves its connections.
+ * Immutable.
+ */
+public class ServerCore {
+
+    /**
+     * Abstraction function
+     *
+     * represents serving each connection by a blocking task that connections runs, if
+     * eventLoops == 0, otherwise serving all connections by eventLoops threads with
+     * selectors and non-blocking channels, which hand the requests and pushes of the
+     * connections to requests; other threads of the server, such as those
+     * that push updates to subscribed clients, are made by threads; description tells
+     * the core to people; at most backlog connections wait to be accepted, or as many as
+     * the operating system allows if backlog == 0
+     *
+     * Rep invariant
+     *
+     * eventLoops &gt;= 0, connections == null if and only if eventLoops &gt; 0
+     * requests != null if and only if eventLoops &gt; 0
+     * threads != null, description != null, backlog &gt;= 0
+     *
+     * Rep exposure
+     *
+     * all fields are private and final, executors and factories are shared with the
+     * server on purpose
+     */
+
+    /** Factory of daemon platform threads */
+    private static final ThreadFactory PLATFORM_THREADS = task -> {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private final Executor connections;
+    private final Executor requests;
+    private final ThreadFactory threads;
+    private final int eventLoops;
+    private final String description;
+    private final int backlog;
+
+    private void checkRep() {
+        assert eventLoops >= 0;
+        assert (connections == null) == (eventLoops > 0);
+        assert (requests != null) == (eventLoops > 0);
+        assert threads != null && description != null;
+        assert backlog >= 0;
+    }
+
+    /**
+     * @param connections executor of blocking connection tasks, null if served by selectors
+     * @param requests executor of the requests of connections served by selectors, null otherwise
+     * @param threads factory of other threads of the server
+     * @param eventLoops number of event loops, 0 if not served by selectors
+     * @param description description of the core
+     * @param backlog greatest number of connections waiting to be accepted, 0 for the default
+     */
+    private ServerCore(Executor connections, Executor requests, ThreadFactory threads, int eventLoops,
+            String description, int backlog) {
+        this.connections = connections;
+        this.requests = requests;
+        this.threads = threads;
+        this.eventLoops = eventLoops;
+        this.description = description;
+        this.backlog = backlog;
+        checkRep();
+    }
+
+    /**
+     * @return core that serves each connection by a platform thread of its own with
+     *         blocking reads and writes, the simplest and original way
+     */
+    public static ServerCore threadPerConnection() {
+        return new ServerCore(task -> new Thread(task).start(), null, PLATFORM_THREADS, 0,
+                "thread per connection", 0);
+    }
+
+    /**
+     * Makes a core that serves each connection by a virtual thread of its own, with the
+     * same blocking reads and writes as threadPerConnection. A virtual thread blocked on a
+     * read or on a lock of the board releases its carrier thread, so idle players cost
+     * little more than their buffers. Threads that push updates are virtual as well.
+     * Virtual threads exist from Java 21 on; they are looked up at run time, so the
+     * server still runs on older versions, where this core is threadPerConnection.
+     *
+     * @return core that serves each connection by a virtual thread, or threadPerConnection
+     *         if the runtime has no virtual threads
+     */
+    public static ServerCore virtualThreads() {
+        ThreadFactory virtual = virtualThreadFactory();
+        if(virtual == null) {
+            return new ServerCore(task -> new Thread(task).start(), null, PLATFORM_THREADS, 0,
+                    "thread per connection (virtual threads need Java 21)", 0);
+        }
+        return new ServerCore(task -> virtual.newThread(task).start(), null, virtual, 0,
+                "virtual thread per connection", 0);
+    }
+
+    /**
+     * @return factory of virtual threads, Thread.ofVirtual().factory(), or null if the
+     *         runtime has no virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param executor executor that runs the task of each connection, reading and writing
+     *                 it with blocking calls until the client disconnects
+     * @return core that serves connections by tasks of the executor; connections the
+     *         executor rejects are refused with a BUSY message
+     */
+    public static ServerCore executor(Executor executor) {
+        return new ServerCore(executor, null, PLATFORM_THREADS, 0, "executor " + executor, 0);
+    }
+
+    /**
+     * Makes a core that serves connections by a bounded pool of worker threads. As
+     * connections block their workers until the clients disconnect, at most workers
+     * players play at once; up to queue more connections wait, without a welcome, for a
+     * worker to be free, and connections beyond these are refused with a BUSY message.
+     * So a storm of connections takes neither more threads nor more memory from the
+     * players already connected. Workers idle for a minute end.
+     *
+     * @param workers greatest number of connections served at once, workers &gt; 0
+     * @param queue greatest number of accepted connections waiting for a worker, queue &gt;= 0
+     * @return core that serves connections by a pool of at most workers threads
+     */
+    public static ServerCore pool(int workers, int queue) {
+        if(workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be greater than zero");
+        }
+        if(queue < 0) {
+            throw new IllegalArgumentException("Length of the queue must not be negative");
+        }
+        BlockingQueue<Runnable> waiting = queue == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queue);
+        AtomicInteger workerNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 1, TimeUnit.MINUTES, waiting,
+                task -> new Thread(task, "connection-worker-" + workerNumber.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return new ServerCore(executor, null, PLATFORM_THREADS, 0,
+                "pool of " + workers + " workers with a queue of " + queue, 0);
+    }
+
+    /**
+     * Makes a core that serves all connections by a fixed number of event loops, each
+     * waiting on a selector for connections ready to read or write. The loops only read,
+     * write and time pushes: the requests of a connection, moves and renders of the board
+     * among them, and the pushes of its subscription are handled by a pool of request
+     * workers, one task of a connection at a time, so a large flood fill or render of one
+     * client never stalls the other connections of its loop. Workers idle for a minute end.
+     *
+     * @param eventLoops number of threads that serve connections, eventLoops &gt; 0
+     * @return core that serves all connections by eventLoops threads and handles their
+     *         requests by as many workers as there are processors
+     */
+    public static ServerCore selector(int eventLoops) {
+        if(eventLoops <= 0) {
+            throw new IllegalArgumentException("Number of event loops must be greater than zero");
+        }
+        int workers = Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerNumber = new AtomicInteger();
+        ThreadPoolExecutor requests = new ThreadPoolExecutor(workers, workers, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "request-worker-" + workerNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        requests.allowCoreThreadTimeOut(true);
+        return new ServerCore(null, requests, PLATFORM_THREADS, eventLoops, eventLoops + " event loops", 0);
+    }
+
+    /**
+     * @param backlog greatest number of connections the operating system keeps waiting to be
+     *                accepted, backlog &gt; 0; clients beyond it are refused by the operating system
+     * @return core that serves connections like this one, with the given backlog
+     */
+    public ServerCore withBacklog(int backlog) {
+        if(backlog <= 0) {
+            throw new IllegalArgumentException("Backlog must be greater than zero");
+        }
+        return new ServerCore(connections, requests, threads, eventLoops, description, backlog);
+    }
+
+    /**
+     * @return greatest number of connections waiting to be accepted, 0 for the default of
+     *         the operating system
+     */
+    public int backlog() {
+        return backlog;
+    }
+
+    /**
+     * @return true if and only if connections are served by selectors
+     */
+    public boolean isSelector() {
+        return eventLoops > 0;
+    }
+
+    /**
+     * @return number of event loops, 0 if connections are not served by selectors
+     */
+    public int eventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * @return executor of blocking connection tasks, requires !isSelector()
+     */
+    Executor connections() {
+        return connections;
+    }
+
+    /**
+     * @return executor of the requests and pushes of connections served by selectors,
+     *         requires isSelector()
+     */
+    Executor requests() {
+        return requests;
+    }
+
+    /**
+     * @return factory of other threads of the server
+     */
+    ThreadFactory threads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        return backlog == 0 ? description : description + ", backlog of " + backlog;
+    }
+}
@@ -0,0 +1,283 @@
+package minesweeper.server;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import minesweeper.Board;
+import minesweeper.CellChanges;
+import minesweeper.CellListener;
+
+/**
+ * Pushes updates of a board to a subscribed client, at most a given number of times
+ * per second. Changes that come between two pushes are coalesced into the next one:
+ * the pusher only learns that the board changed after the version the client knows,
+ * and the push sends the board message of the client, so a burst of moves costs one
+ * message. Moves whose changed cells are all outside the area the client watches are
+ * ignored. A move costs a subscription a test of its bounding box and an atomic maximum;
+ * only the first move after the pusher started waiting takes the lock to signal it.
+ * Pushes are made either by a pusher thread of the subscription, or by an event loop
+ * that owns the connection: then the subscription has no thread, the first move after
+ * the loop last looked only flags it through a callback, and the loop calls pushIfDue
+ * when it is flagged and when the interval since the last push ends.
+ * Thread safe: fields shared with players' threads are guarded by the lock of the
+ * subscription, or are atomic or volatile; the pusher thread only calls the push. The lock is a
+ * ReentrantLock rather than a monitor so that virtual pusher threads waiting for it
+ * or for a change release their carrier threads. A subscription pushed by an event loop
+ * is started, stopped and pushed by one thread at a time, the loop or a task of its
+ * connection handed over by the loop, and only they use loopKnown and loopLastPush.
+ */
+class Subscription implements CellListener {
+
+    /**
+     * Abstraction function
+     *
+     * represents a subscription of a client to changes of board up to version changed
+     * in the cells it watches: all cells if watched == null, otherwise watched[2]
+     * columns and watched[3] rows from cell (watched[0], watched[1]); if started,
+     * updates are pushed at most once every interval nanoseconds, by pusher if threads
+     * != null, otherwise by the event loop that flagged calls; waiting is true while
+     * the pusher waits for a change and no thread has signalled it yet; flagged is true
+     * while the loop was told of a change it did not push yet; the last push of the
+     * loop was at loopLastPush, and the client knew version loopKnown after it
+     *
+     * Rep invariant
+     *
+     * exactly one of threads and flagger is null
+     * interval &gt; 0 if started
+     * pusher != null only if started and threads != null
+     * watched == null or watched.length == 4
+     *
+     * Rep exposure
+     *
+     * all fields are private, watched is copied from ints and never shared, threads and
+     * flagger are shared with the server on purpose
+     */
+
+    /** Greatest number of pushes per second a client may ask for */
+    static final int MAXIMUM_RATE = 1000;
+
+    /**
+     * Sends updates to the client.
+     */
+    interface Push {
+        /**
+         * Sends the client a message with the board, unless it already knows a version
+         * of the board at least as new as the given one.
+         *
+         * @param changed version of the last change the client watches
+         * @return version of the board the client knows after the call
+         */
+        long push(long changed);
+    }
+
+    private final Board board;
+    private final Push push;
+    private final ThreadFactory threads;
+    private final Runnable flagger;
+    private final AtomicBoolean flagged = new AtomicBoolean();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changes = lock.newCondition();
+    private volatile int[] watched = null;
+    private final AtomicLong changed = new AtomicLong();
+    private volatile boolean waiting = false;
+    private long interval = 0;
+    private boolean started = false;
+    private Thread pusher = null;
+    private long loopKnown = -1;
+    private long loopLastPush = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    /**
+     * Makes a subscription that does not push yet, and pushes by a thread of its own
+     * once started.
+     *
+     * @param board board of the client
+     * @param push sender of updates to the client
+     * @param threads factory of the pusher thread
+     */
+    Subscription(Board board, Push push, ThreadFactory threads) {
+        this.board = board;
+        this.push = push;
+        this.threads = threads;
+        this.flagger = null;
+    }
+
+    /**
+     * Makes a subscription that does not push yet, and is pushed by an event loop once
+     * started: it calls flagger when the client misses a change, and the loop then calls
+     * pushIfDue.
+     *
+     * @param board board of the client
+     * @param push sender of updates to the client, called from pushIfDue
+     * @param flagger tells the loop that the client misses a change; called by the
+     *                threads of players while they hold locks of the board, so it must
+     *                return quickly
+     */
+    Subscription(Board board, Push push, Runnable flagger) {
+        this.board = board;
+        this.push = push;
+        this.threads = null;
+        this.flagger = flagger;
+    }
+
+    /**
+     * Starts pushing updates, or changes the rate of the pushes if already started.
+     *
+     * @param perSecond greatest number of pushes per second, 0 &lt; perSecond &lt;= MAXIMUM_RATE
+     */
+    void start(int perSecond) {
+        lock.lock();
+        try {
+            interval = 1000000000L / perSecond;
+            if(!started) {
+                started = true;
+                board.addCellListener(this);
+                if(threads != null) {
+                    pusher = threads.newThread(this::run);
+                    pusher.setName("subscription-push");
+                    pusher.start();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops pushing updates. Returns at once; a push in progress completes.
+     */
+    void stop() {
+        lock.lock();
+        try {
+            if(started) {
+                started = false;
+                board.removeCellListener(this);
+                if(pusher != null) {
+                    pusher.interrupt();
+                    pusher = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the cells the client watches.
+     *
+     * @param x leftmost column of the watched cells
+     * @param y top row of the watched cells
+     * @param width number of watched columns
+     * @param height number of watched rows
+     */
+    void watch(int x, int y, int width, int height) {
+        watched = new int[] { x, y, width, height };
+    }
+
+    /**
+     * Makes the client watch all cells.
+     */
+    void watchAll() {
+        watched = null;
+    }
+
+    @Override
+    public void cellsChanged(CellChanges cells) {
+        int[] area = watched;
+        if(area != null && !cells.intersects(area[0], area[1], area[2], area[3])) {
+            return;
+        }
+        // changed is written before waiting is read, and the pusher writes waiting before
+        // it reads changed, so either the pusher sees the change or this thread signals it
+        changed.accumulateAndGet(cells.version(), Math::max);
+        if(flagger != null) {
+            // the same order with flagged, which the loop clears before it reads changed
+            if(!flagged.get() && flagged.compareAndSet(false, true)) {
+                flagger.run();
+            }
+            return;
+        }
+        if(waiting) {
+            lock.lock();
+            try {
+                if(waiting) {
+                    waiting = false;
+                    changes.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Pushes an update if the client misses a change and the interval since the last
+     * push ended. Called for the event loop that pushes the subscription, when it was
+     * flagged and when the time it was told to wait for passed; the subscription is
+     * not flagged again until the loop pushed or found nothing to push.
+     *
+     * @return nanoseconds after which the loop must call again, as a change is left
+     *         for the next push, or -1 if nothing is left to push
+     */
+    long pushIfDue() {
+        assert flagger != null;
+        if(!started) {
+            flagged.set(false);
+            return -1;
+        }
+        long now = System.nanoTime();
+        long wait = loopLastPush + interval - now;
+        if(wait > 0) {
+            return wait;
+        }
+        flagged.set(false);
+        long latest = changed.get();
+        if(latest > loopKnown) {
+            loopKnown = push.push(latest);
+            loopLastPush = now;
+        }
+        return -1;
+    }
+
+    /**
+     * Body of the pusher thread: waits for a change the client does not know, then for
+     * the end of the interval since the last push, and pushes, until stopped.
+     */
+    private void run() {
+        Thread self = Thread.currentThread();
+        long known = -1;
+        long lastPush = System.nanoTime() - Long.MAX_VALUE / 2;
+        try {
+            while(true) {
+                long wait;
+                lock.lock();
+                try {
+                    while(changed.get() <= known && pusher == self) {
+                        waiting = true;
+                        if(changed.get() > known) {
+                            break;
+                        }
+                        changes.await();
+                    }
+                    waiting = false;
+                    if(pusher != self) {
+                        return;
+                    }
+                    wait = lastPush + interval - System.nanoTime();
+                } finally {
+                    lock.unlock();
+                }
+                if(wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                known = push.push(changed.get());
+                lastPush = System.nanoTime();
+            }
+        } catch(InterruptedException e) {
+            // stopped
+        }
+    }
+}
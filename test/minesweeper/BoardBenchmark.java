@@ -0,0 +1,232 @@
+package minesweeper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Scanner;
+
+/**
+ * Manual benchmarks for Board ADT.
+ * Not a JUnit test: run main with a large heap, e.g.
+ * <pre>
+ *   java -Xmx4g -cp bin minesweeper.BoardBenchmark
+ * </pre>
+ */
+public class BoardBenchmark {
+
+    /** Side of the square board used by benchmarks */
+    private static final int SIZE = 5000;
+
+    /**
+     * Layout of a cell before the packed representation, kept here only to measure it.
+     */
+    private static class LegacyCell {
+        @SuppressWarnings("unused") private boolean containsBomb;
+        @SuppressWarnings("unused") private Object state = LegacyCell.class;
+        @SuppressWarnings("unused") private int neighborBombs;
+
+        LegacyCell(boolean bomb) {
+            containsBomb = bomb;
+        }
+    }
+
+    /**
+     * @return bytes of heap in use after garbage collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 5; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Compares heap taken by a SIZE * SIZE board with the heap taken by
+     * the same number of cells in the legacy Cell[][] layout.
+     */
+    private static void memory() {
+        long before = usedHeap();
+        Board board = new Board(SIZE, SIZE);
+        long boardBytes = usedHeap() - before;
+        System.out.println(board.columnsNumber() + "x" + board.rowsNumber() + " board: "
+                + boardBytes / (1 << 20) + " MB");
+        board = null;
+
+        before = usedHeap();
+        LegacyCell[][] legacy = new LegacyCell[SIZE][SIZE];
+        for(int i = 0; i < SIZE; ++i) {
+            for(int j = 0; j < SIZE; ++j) {
+                legacy[i][j] = new LegacyCell((i + j) % 3 == 0);
+            }
+        }
+        long legacyBytes = usedHeap() - before;
+        System.out.println(legacy.length + "x" + legacy[0].length + " Cell[][]: "
+                + legacyBytes / (1 << 20) + " MB");
+    }
+
+    /**
+     * Measures throughput of flags, deflags and digs by threads that work in
+     * different horizontal bands of the board.
+     *
+     * @param threadsNumber number of threads
+     * @throws InterruptedException if interrupted
+     */
+    private static void parallelOperations(int threadsNumber) throws InterruptedException {
+        final int operations = 2000000;
+        final int size = 2048;
+        final Board board = new Board(size, size);
+        final int band = size / threadsNumber;
+        Thread[] threads = new Thread[threadsNumber];
+        for(int t = 0; t < threadsNumber; ++t) {
+            final int firstRow = t * band;
+            threads[t] = new Thread(() -> {
+                java.util.Random r = new java.util.Random(firstRow);
+                for(int i = 0; i < operations / threadsNumber; ++i) {
+                    int x = r.nextInt(size);
+                    int y = firstRow + r.nextInt(band);
+                    board.flagIfUntouched(x, y);
+                    board.deflagIfFlagged(x, y);
+                    if(i % 16 == 0) {
+                        board.digIfUntouched(x, y);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println(threadsNumber + " threads: " + operations + " operations in "
+                + millis + " ms");
+    }
+
+    /**
+     * Measures time of generating a random board on one thread and on all processors.
+     *
+     * @param size side of the board
+     */
+    private static void generation(int size) {
+        for(int warmup = 0; warmup < 2; ++warmup) {
+            long start = System.nanoTime();
+            Board.generate(size, size, 47, 1.0 / 3, 1);
+            long sequential = (System.nanoTime() - start) / 1000000;
+            start = System.nanoTime();
+            Board.generate(size, size, 47, 1.0 / 3);
+            long parallel = (System.nanoTime() - start) / 1000000;
+            if(warmup == 1) {
+                System.out.println(size + "x" + size + " board generated in " + sequential
+                        + " ms on 1 thread, " + parallel + " ms on " + Parallel.THREADS + " threads");
+            }
+        }
+    }
+
+    /**
+     * Loads a board file the way Board(File) did before the memory mapped parser:
+     * with a Scanner into a boolean[rows][columns], kept here only to measure it.
+     *
+     * @param file board file
+     * @return bombs of the board
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean[][] scannerLoad(File file) throws IOException {
+        try(Scanner c = new Scanner(new FileInputStream(file))) {
+            int columns = c.nextInt();
+            int rows = c.nextInt();
+            boolean[][] bombs = new boolean[rows][columns];
+            for(int y = 0; y < rows; ++y) {
+                for(int x = 0; x < columns; ++x) {
+                    bombs[y][x] = c.nextInt() == 1;
+                }
+            }
+            return bombs;
+        }
+    }
+
+    /**
+     * @param size side of the board
+     * @return temporary board file of size x size cells with random bombs
+     * @throws IOException if the file cannot be written
+     */
+    private static File randomBoardFile(int size) throws IOException {
+        File file = File.createTempFile("board", ".txt");
+        file.deleteOnExit();
+        java.util.Random r = new java.util.Random(size);
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.println(size + " " + size);
+            StringBuilder line = new StringBuilder();
+            for(int y = 0; y < size; ++y) {
+                line.setLength(0);
+                for(int x = 0; x < size; ++x) {
+                    line.append(x == 0 ? "" : " ").append(r.nextInt(5) == 0 ? '1' : '0');
+                }
+                out.println(line);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Compares time of loading board files by the Scanner and by Board(File),
+     * for the files in boards/ and for a generated 4000 x 4000 file.
+     *
+     * @throws IOException if a file cannot be read
+     */
+    private static void fileLoading() throws IOException {
+        File[] files = new File("boards").listFiles((dir, name) -> name.endsWith(".txt"));
+        if(files == null) {
+            files = new File[0];
+        }
+        for(File file : files) {
+            compareLoading(file, 1000);
+        }
+        compareLoading(randomBoardFile(4000), 3);
+    }
+
+    /**
+     * Prints average times of loading a file by the Scanner and by Board(File).
+     *
+     * @param file board file
+     * @param repeats number of loads of each kind
+     * @throws IOException if the file cannot be read
+     */
+    private static void compareLoading(File file, int repeats) throws IOException {
+        for(int warmup = 0; warmup < 2; ++warmup) {
+            long start = System.nanoTime();
+            for(int i = 0; i < repeats; ++i) {
+                scannerLoad(file);
+            }
+            long scanner = (System.nanoTime() - start) / repeats;
+            start = System.nanoTime();
+            for(int i = 0; i < repeats; ++i) {
+                new Board(file);
+            }
+            long mapped = (System.nanoTime() - start) / repeats;
+            if(warmup == 1) {
+                System.out.println(file.getName() + ": Scanner " + scanner / 1000 + " us, Board(File) "
+                        + mapped / 1000 + " us");
+            }
+        }
+    }
+
+    /**
+     * Runs all benchmarks.
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted
+     * @throws IOException if a board file cannot be read
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        fileLoading();
+        generation(SIZE);
+        memory();
+        for(int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            parallelOperations(threads);
+        }
+    }
+}
@@ -4,6 +4,12 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.junit.Test;
 
@@ -16,6 +22,8 @@ public class BoardTest {
      * Testing strategy
      * 
      * Downloading board from file, creating new random board
+     * Board files with "\n" and "\r\n" line breaks, with and without the last line break;
+     *   malformed files: wrong value, short row, long row, missing and extra rows, zero size
      * Number of columns and rows - entered and from file
      * Parameters legal or illegal
      * Observers on different kinds of cells ( untouched, flagged, dug + empty, bomb)
@@ -26,7 +34,26 @@ public class BoardTest {
      * 0 0 0        - - -
      * 0 0 0        - - -
      * dig(1,1) must open all cells
+     * Digging large empty area (deeper than thread stack allows to recurse)
+     * Concurrent digs and flags from many threads, overlapping flood fills
+     * Readers running with a writer see the board between operations
+     * toString of unchanged board, after changes in one row, after a bomb removal
+     * Versions: new board, after changes, after operation that changes nothing;
+     *   changes since current, older, too old and future versions
+     * Sparse boards: huge dimensions, tiles allocated only by digs and flags,
+     *   digs across tiles and bomb removals next to tiles that are not allocated,
+     *   largest dimensions, density of hashed bombs
+     * Invariant checks with assertions on: mutations of a large board check only the
+     *   cells they change
+     * Batches: results of each kind, moves outside the board, versions of moves,
+     *   concurrent batches with flood fills equal to their moves replayed in version order
+     * Move listeners: digs, flags and deflags reported with their versions,
+     *   moves that change nothing not reported, removed listener
+     * Save and load: file board with dug, flagged and removed bombs; sparse board;
+     *   version kept; corrupt files rejected; saves while players move, each at one version
      * Equals, hashCode, toString
+     * Hash: same moves in another order, flag and deflag back, bomb removal, saved
+     *   and loaded board, huge sparse board, boards that differ only in untouched bombs
      */
     
     /**
@@ -121,4 +148,619 @@ public class BoardTest {
         //System.out.println(s);
         assertEquals("String representation", s, board1.toString());
     }
+    
+    @Test(timeout=10000)
+    public void testIncrementalHash() throws IOException {
+        Board board1 = new Board(new File("test/boards/board_5_4.txt"));
+        Board board2 = new Board(new File("test/boards/board_5_4.txt"));
+        board1.flagIfUntouched(4, 3);
+        board1.digIfUntouched(1, 0);
+        board2.digIfUntouched(1, 0);
+        board2.flagIfUntouched(2, 2);
+        board2.flagIfUntouched(4, 3);
+        assertNotEquals("Different flags", board1.hashCode(), board2.hashCode());
+        board2.deflagIfFlagged(2, 2);
+        assertEquals("Same moves in another order", board1, board2);
+        assertEquals("Same hash after bomb removal", board1.hashCode(), board2.hashCode());
+        
+        File file = File.createTempFile("board", ".board");
+        file.deleteOnExit();
+        board1.save(file);
+        assertEquals("Hash of loaded board", board1.hashCode(), Board.load(file).hashCode());
+        
+        Board huge1 = new Board(Integer.MAX_VALUE, Integer.MAX_VALUE, 3, 0.2);
+        Board huge2 = new Board(Integer.MAX_VALUE, Integer.MAX_VALUE, 3, 0.2);
+        Board other = new Board(Integer.MAX_VALUE, Integer.MAX_VALUE, 4, 0.2);
+        assertEquals("Huge new boards", huge1.hashCode(), huge2.hashCode());
+        assertEquals("Only untouched bombs differ", huge1.hashCode(), other.hashCode());
+        huge1.flagIfUntouched(123456789, 987654321);
+        assertNotEquals("Huge boards", huge1.hashCode(), huge2.hashCode());
+        assertFalse("Told apart by hash", huge1.equals(huge2));
+        huge2.flagIfUntouched(123456789, 987654321);
+        assertEquals("Huge boards", huge1.hashCode(), huge2.hashCode());
+    }
+    
+    /**
+     * Writes a board file with x columns and y rows without bombs.
+     * 
+     * @param x number of columns
+     * @param y number of rows
+     * @return temporary file, deleted on exit
+     * @throws IOException if file cannot be written
+     */
+    private static File emptyBoardFile(int x, int y) throws IOException {
+        File file = File.createTempFile("emptyBoard", ".txt");
+        file.deleteOnExit();
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.println(x + " " + y);
+            StringBuilder line = new StringBuilder("0");
+            for(int i = 1; i < x; ++i) {
+                line.append(" 0");
+            }
+            for(int j = 0; j < y; ++j) {
+                out.println(line);
+            }
+        }
+        return file;
+    }
+    
+    /**
+     * Testing digging of a large empty area
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testDigLargeArea() throws IOException {
+        Board board = new Board(emptyBoardFile(1000, 1000));
+        board.flagIfUntouched(999, 0);
+        assertFalse("Dig empty cell", board.digIfUntouched(0, 999));
+        assertTrue("Far corner dug", board.isDug(999, 0));
+        for(int x = 0; x < 1000; x += 37) {
+            for(int y = 0; y < 1000; y += 41) {
+                assertTrue("Cell dug", board.isDug(x, y));
+                assertEquals("No neighbors", 0, board.neighborBombs(x, y));
+            }
+        }
+    }
+    
+    /**
+     * Testing concurrent flood fills and flags on the same board
+     * 
+     * @throws Exception if a thread failed
+     */
+    @Test(timeout=60000)
+    public void testConcurrentOperations() throws Exception {
+        final int size = 300;
+        final Board board = new Board(emptyBoardFile(size, size));
+        final Board random = new Board(size, size);
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[8];
+        for(int t = 0; t < threads.length; ++t) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    java.util.Random r = new java.util.Random(seed);
+                    for(int i = 0; i < 200; ++i) {
+                        int x = r.nextInt(size);
+                        int y = r.nextInt(size);
+                        random.flagIfUntouched(x, y);
+                        random.deflagIfFlagged(x, y);
+                        random.digIfUntouched(r.nextInt(size), r.nextInt(size));
+                    }
+                    board.digIfUntouched(seed * 37, size - 1 - seed * 37);
+                } catch (Throwable e) {
+                    synchronized(failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        synchronized(failure) {
+            if(failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+        }
+        String dug = board.toString().replaceAll("[^ ]", "");
+        assertEquals("All cells dug", 2 * size * size - size, dug.length());
+    }
+    
+    /**
+     * Testing that toString sees a consistent board while a writer changes cells
+     * guarded by different stripes
+     * 
+     * @throws Exception if the writer failed
+     */
+    @Test(timeout=60000)
+    public void testConsistentReads() throws Exception {
+        final int size = 100;
+        final Board board = new Board(emptyBoardFile(size, size));
+        final boolean[] done = new boolean[1];
+        Thread writer = new Thread(() -> {
+            while(true) {
+                synchronized(done) {
+                    if(done[0]) {
+                        return;
+                    }
+                }
+                // (size-1,size-1) is flagged only while (0,0) is flagged
+                board.flagIfUntouched(0, 0);
+                board.flagIfUntouched(size - 1, size - 1);
+                board.deflagIfFlagged(size - 1, size - 1);
+                board.deflagIfFlagged(0, 0);
+            }
+        });
+        writer.start();
+        try {
+            for(int i = 0; i < 2000; ++i) {
+                String s = board.toString();
+                boolean first = s.charAt(0) == 'F';
+                boolean last = s.charAt(s.length() - 1) == 'F';
+                assertTrue("Last cell flagged only after the first one", first || !last);
+            }
+        } finally {
+            synchronized(done) {
+                done[0] = true;
+            }
+            writer.join();
+        }
+    }
+    
+    /**
+     * Testing that toString follows changes after the board was rendered
+     * 
+     * @throws FileNotFoundException
+     */
+    @Test
+    public void testRenderAfterChanges() throws FileNotFoundException {
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        String untouched = board.toString();
+        assertSame("Unchanged board", untouched, board.toString());
+        board.flagIfUntouched(4, 3);
+        assertEquals("Flag in last row", "- - - - -\r\n- - - - -\r\n- - - - -\r\n- - - - F", board.toString());
+        board.deflagIfFlagged(4, 3);
+        assertEquals("Deflagged", untouched, board.toString());
+        board.digIfUntouched(1, 2);
+        board.digIfUntouched(0, 3);
+        assertEquals("Dug area", "- - - - -\r\n- - - - -\r\n1 2 - - -\r\n  1 - - -", board.toString());
+        assertTrue("Dig bomb", board.digIfUntouched(0, 1));
+        assertEquals("Counts after bomb removal", "- - - - -\r\n1 - - - -\r\n  1 - - -\r\n  1 - - -", board.toString());
+    }
+    
+    /**
+     * Testing versions and changes since a version
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testChangesSince() throws IOException {
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        assertEquals("New board", 0, board.version());
+        assertEquals("No changes", Optional.of(Arrays.asList()), board.changesSince(0));
+        assertFalse("Future version", board.changesSince(1).isPresent());
+        
+        board.flagIfUntouched(4, 3);
+        board.flagIfUntouched(4, 3);
+        assertEquals("Flag changes version once", 1, board.version());
+        board.digIfUntouched(0, 3);
+        assertEquals("Dig", 2, board.version());
+        assertEquals("Changes since flag", Optional.of(Arrays.asList("0 2 1", "1 2 2", "0 3  ", "1 3 1")),
+                board.changesSince(1));
+        board.deflagIfFlagged(4, 3);
+        assertEquals("Changes since new board",
+                Optional.of(Arrays.asList("0 2 1", "1 2 2", "0 3  ", "1 3 1", "4 3 -")),
+                board.changesSince(0));
+        
+        Board large = new Board(emptyBoardFile(300, 300));
+        large.digIfUntouched(299, 299);
+        assertFalse("Too many changes", large.changesSince(0).isPresent());
+        List<String> changes = large.changesSince(1).get();
+        assertTrue("Changes kept after overflow", changes.isEmpty());
+    }
+    
+    /**
+     * Testing a sparse board larger than the memory could hold densely
+     */
+    @Test
+    public void testSparseHugeBoard() {
+        Board board = new Board(100000, 100000, 1, 0.2);
+        assertEquals("Columns number", 100000, board.columnsNumber());
+        assertEquals("Nothing allocated", 0, board.allocatedTiles());
+        assertTrue("Untouched", board.isUntouched(99999, 99999));
+        
+        board.flagIfUntouched(50000, 50000);
+        assertTrue("Flagged", board.isFlagged(50000, 50000));
+        assertEquals("Tile of flag", 1, board.allocatedTiles());
+        board.deflagIfFlagged(50000, 50000);
+        assertTrue("Deflagged", board.isUntouched(50000, 50000));
+        
+        board.digIfUntouched(99999, 0);
+        assertTrue("Dug", board.isDug(99999, 0));
+        assertTrue("Few tiles", board.allocatedTiles() < 100);
+    }
+    
+    /**
+     * Testing digs on a sparse board: counts of new tiles, bomb removals and
+     * flood fills across tiles, checked by checkRep
+     */
+    @Test
+    public void testSparseDigs() {
+        Board empty = new Board(300, 200, 7, 0);
+        empty.digIfUntouched(150, 100);
+        assertEquals("All tiles dug", 10 * 7, empty.allocatedTiles());
+        assertTrue("Far cell dug", empty.isDug(0, 199));
+        
+        Board board = new Board(100, 70, 5, 0.3);
+        Board same = new Board(100, 70, 5, 0.3);
+        assertEquals("Same seed", board, same);
+        assertEquals("Same hash", board.hashCode(), same.hashCode());
+        assertNotEquals("Different seed", board, new Board(100, 70, 6, 0.3));
+        
+        board.digIfUntouched(40, 40);
+        assertNotEquals("Dug", board, same);
+        for(int x = 0; x < 100; ++x) {
+            for(int y = 0; y < 70; ++y) {
+                board.digIfUntouched(x, y);
+            }
+        }
+        for(int x = 0; x < 100; ++x) {
+            for(int y = 0; y < 70; ++y) {
+                assertEquals("No bombs left", 0, board.neighborBombs(x, y));
+            }
+        }
+        assertFalse("Rendered", board.toString().contains("-"));
+    }
+    
+    /**
+     * Testing hashed bombs: the largest board and the density of bombs
+     */
+    @Test
+    public void testHashedBombs() {
+        Board huge = new Board(Integer.MAX_VALUE, Integer.MAX_VALUE, 3, 0.1);
+        huge.digIfUntouched(Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 1);
+        huge.flagIfUntouched(0, Integer.MAX_VALUE - 1);
+        assertTrue("Corner dug", huge.isDug(Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 1));
+        assertTrue("Corner flagged", huge.isFlagged(0, Integer.MAX_VALUE - 1));
+        assertTrue("Few tiles", huge.allocatedTiles() < 100);
+        
+        Board board = new Board(200, 200, 11, 0.25);
+        int bombs = 0;
+        for(int x = 0; x < 200; ++x) {
+            for(int y = 0; y < 200; ++y) {
+                if(board.digIfUntouched(x, y)) {
+                    ++bombs;
+                }
+            }
+        }
+        assertTrue("Density " + bombs, bombs > 9500 && bombs < 10500);
+        assertEquals("All bombs whatever the seed", new Board(3, 3, 11, 1), new Board(3, 3, 12, 1));
+    }
+    
+    /**
+     * Testing rendering of regions: the same cells as toString, regions at the edges
+     * and in a board too large for toString, and regions outside the board
+     */
+    @Test
+    public void testRender() {
+        Board board = Board.generate(100, 70, 9, 0.1, 2);
+        board.digIfUntouched(50, 35);
+        board.flagIfUntouched(31, 33);
+        board.digIfUntouched(99, 69);
+        assertEquals("Whole board", board.toString(), board.render(0, 0, 100, 70));
+        String[] lines = board.toString().split("\r\n");
+        String[] region = board.render(29, 30, 40, 9).split("\r\n");
+        assertEquals("Rows", 9, region.length);
+        for(int row = 0; row < 9; ++row) {
+            assertEquals("Row " + row, lines[30 + row].substring(58, 58 + 79), region[row]);
+        }
+        assertEquals("Corner", lines[69].substring(198), board.render(99, 69, 1, 1));
+        
+        assertTrue("Renders whole", Board.canRender(100, 70));
+        assertFalse("Too large for a string", Board.canRender(100000, 100000));
+        Board huge = new Board(Integer.MAX_VALUE, Integer.MAX_VALUE, 3, 0);
+        huge.flagIfUntouched(Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 2);
+        assertEquals("Huge board", "- -\r\n- F",
+                huge.render(Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 3, 2, 2));
+        assertEquals("Huge corner", "- F\r\n- -",
+                huge.render(Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 2, 2, 2));
+        
+        for(int[] outside : new int[][] { { -1, 0, 2, 2 }, { 99, 0, 2, 1 }, { 0, 69, 1, 2 }, { 0, 0, 0, 1 } }) {
+            try {
+                board.render(outside[0], outside[1], outside[2], outside[3]);
+                fail("Region outside the board");
+            } catch(IllegalArgumentException e) {
+            }
+        }
+    }
+    
+    /**
+     * Testing generated boards: the same board whatever the number of threads, the density
+     * of bombs, and different boards for different seeds
+     */
+    @Test
+    public void testGenerate() {
+        Board board = Board.generate(300, 500, 5, 0.2, 1);
+        assertEquals("Any number of threads", board, Board.generate(300, 500, 5, 0.2, 3));
+        assertEquals("Any number of threads", board.toString(), Board.generate(300, 500, 5, 0.2, 8).toString());
+        assertEquals("Public generation", board, Board.generate(300, 500, 5, 0.2));
+        assertNotEquals("Another seed", board, Board.generate(300, 500, 6, 0.2, 3));
+        
+        int bombs = 0;
+        for(int x = 0; x < 300; ++x) {
+            for(int y = 0; y < 500; ++y) {
+                if(board.digIfUntouched(x, y)) {
+                    ++bombs;
+                }
+            }
+        }
+        assertTrue("Density " + bombs, bombs > 28500 && bombs < 31500);
+        
+        Board empty = Board.generate(70, 130, 5, 0, 4);
+        empty.digIfUntouched(0, 0);
+        assertFalse("No bombs", empty.toString().contains("-"));
+        Board full = Board.generate(70, 130, 5, 1, 4);
+        assertTrue("All bombs", full.digIfUntouched(69, 129));
+    }
+    
+    /**
+     * @param content content of a board file
+     * @return temporary file with the content
+     * @throws IOException if the file cannot be written
+     */
+    private static File boardFile(String content) throws IOException {
+        File file = File.createTempFile("board", ".txt");
+        file.deleteOnExit();
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.print(content);
+        }
+        return file;
+    }
+    
+    /**
+     * @param content content of a malformed board file
+     * @return message of the error the board constructor throws
+     * @throws IOException if the file cannot be written
+     */
+    private static String fileError(String content) throws IOException {
+        try {
+            new Board(boardFile(content));
+        } catch(IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        throw new AssertionError("no error for " + content);
+    }
+    
+    /**
+     * Testing line breaks and errors of board files
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testFileFormat() throws IOException {
+        Board expected = new Board(new File("test/boards/board_3_1.txt"));
+        assertEquals("CRLF", expected, new Board(boardFile("3 1\r\n1 0 1\r\n")));
+        assertEquals("CR", expected, new Board(boardFile("3 1\r1 0 1\r")));
+        assertEquals("No last line break", expected, new Board(boardFile("3 1\n1 0 1")));
+        
+        assertTrue(fileError("3 1\n1 x 1\n").endsWith(":2:3: expected 0 or 1 but found 'x'"));
+        assertTrue(fileError("3 2\n1 0\n1 0 1\n").endsWith(":2:4: expected space but found end of line"));
+        assertTrue(fileError("3 1\n1 0 1 1\n").endsWith(":2:6: expected end of line but found ' '"));
+        assertTrue(fileError("3 2\r\n1 0 1\r\n").endsWith(":3:1: expected 0 or 1 but found end of file"));
+        assertTrue(fileError("3 1\n1 0 1\n0 0 0\n").endsWith(":3:1: expected end of file after 1 rows but found '0'"));
+        assertTrue(fileError("0 1\n").endsWith(":1:4: Number of columns and rows must be greater than zero"));
+        assertTrue(fileError("3,1\n").endsWith(":1:2: expected space but found ','"));
+    }
+    
+    /**
+     * Testing save and load of boards
+     * 
+     * @throws IOException
+     */
+    @Test(timeout=20000)
+    public void testCheapChecks() {
+        Board board = new Board(3000, 3000);
+        for(int i = 0; i < 5000; ++i) {
+            int x = i * 7 % 3000;
+            int y = i * 13 % 3000;
+            board.flagIfUntouched(x, y);
+            board.deflagIfFlagged(x, y);
+        }
+        assertTrue("Flags removed", board.isUntouched(0, 0));
+    }
+    
+    @Test
+    public void testApplyMoves() throws FileNotFoundException {
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        List<MoveResult> results = board.applyMoves(Arrays.asList(
+                new BoardMove(Move.FLAG, 4, 3), new BoardMove(Move.FLAG, 4, 3),
+                new BoardMove(Move.DIG, 0, 3), new BoardMove(Move.DIG, 1, 0),
+                new BoardMove(Move.DEFLAG, 4, 3), new BoardMove(Move.DEFLAG, 0, 0)));
+        assertEquals("Results", Arrays.asList(MoveResult.CHANGED, MoveResult.UNCHANGED,
+                MoveResult.CHANGED, MoveResult.BOOM, MoveResult.CHANGED, MoveResult.UNCHANGED), results);
+        assertEquals("Version per changing move", 4, board.version());
+        assertTrue("Dug", board.isDug(1, 3));
+        
+        try {
+            board.applyMoves(Arrays.asList(new BoardMove(Move.FLAG, 0, 0), new BoardMove(Move.DIG, 5, 0)));
+            fail("Move outside the board");
+        } catch(IllegalArgumentException e) {
+            assertTrue("No move made", board.isUntouched(0, 0));
+        }
+    }
+    
+    @Test
+    public void testConcurrentBatches() throws InterruptedException {
+        Board board = new Board(300, 300, 21, 0.05);
+        java.util.Map<Long, BoardMove> made = new java.util.concurrent.ConcurrentSkipListMap<>();
+        board.addMoveListener((move, x, y, version) -> made.put(version, new BoardMove(move, x, y)));
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; ++t) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                java.util.Random random = new java.util.Random(thread);
+                for(int i = 0; i < 100; ++i) {
+                    List<BoardMove> batch = new java.util.ArrayList<>();
+                    for(int m = 0; m < 5; ++m) {
+                        Move move = Move.values()[random.nextInt(3)];
+                        batch.add(new BoardMove(move, random.nextInt(300), random.nextInt(300)));
+                    }
+                    board.applyMoves(batch);
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        
+        Board replayed = new Board(300, 300, 21, 0.05);
+        assertEquals("Moves reported", board.version(), made.size());
+        replayed.applyMoves(new java.util.ArrayList<>(made.values()));
+        assertEquals("Same version", board.version(), replayed.version());
+        assertEquals("Moves take effect in version order", board, replayed);
+    }
+    
+    @Test
+    public void testMoveListener() throws FileNotFoundException {
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        List<String> moves = new java.util.ArrayList<>();
+        MoveListener listener = (move, x, y, version) -> moves.add(move + " " + x + " " + y + " " + version);
+        board.addMoveListener(listener);
+        board.flagIfUntouched(4, 3);
+        board.flagIfUntouched(4, 3);
+        board.deflagIfFlagged(4, 3);
+        board.digIfUntouched(0, 3);
+        board.digIfUntouched(0, 3);
+        assertEquals("Changing moves", Arrays.asList("FLAG 4 3 1", "DEFLAG 4 3 2", "DIG 0 3 3"), moves);
+        board.removeMoveListener(listener);
+        board.digIfUntouched(1, 0);
+        assertEquals("Removed listener", 3, moves.size());
+    }
+    
+    /**
+     * Testing cell listeners: one report per move with its bounding box, changed cells with
+     * their new state and version, also in batches
+     */
+    @Test
+    public void testCellListener() throws FileNotFoundException {
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        java.util.Set<String> cells = new java.util.TreeSet<>();
+        java.util.List<String> boxes = new java.util.ArrayList<>();
+        CellListener listener = changes -> {
+            for(int i = 0; i < changes.count(); ++i) {
+                cells.add(changes.version() + " " + changes.x(i) + " " + changes.y(i) + " " + changes.square(i));
+            }
+            boxes.add(changes.minX() + "," + changes.minY() + " " + changes.maxX() + "," + changes.maxY());
+        };
+        board.addCellListener(listener);
+        board.flagIfUntouched(4, 3);
+        board.flagIfUntouched(4, 3);
+        board.digIfUntouched(0, 3);
+        assertEquals("Flag and dug area", new java.util.TreeSet<>(Arrays.asList("1 4 3 F",
+                "2 0 2 1", "2 0 3  ", "2 1 2 2", "2 1 3 1")), cells);
+        assertEquals("One report per move with its bounding box", Arrays.asList("4,3 4,3", "0,2 1,3"), boxes);
+        cells.clear();
+        board.applyMoves(Arrays.asList(new BoardMove(Move.DEFLAG, 4, 3), new BoardMove(Move.FLAG, 2, 2)));
+        assertEquals("Batch", new java.util.TreeSet<>(Arrays.asList("3 4 3 -", "4 2 2 F")), cells);
+        board.removeCellListener(listener);
+        board.flagIfUntouched(0, 0);
+        assertEquals("Removed listener", 2, cells.size());
+    }
+    
+    @Test
+    public void testSaveLoad() throws IOException {
+        File file = File.createTempFile("board", ".board");
+        file.deleteOnExit();
+        
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        board.digIfUntouched(0, 3);
+        board.digIfUntouched(0, 1);
+        board.flagIfUntouched(4, 3);
+        board.save(file);
+        Board loaded = Board.load(file);
+        assertEquals("Same board", board, loaded);
+        assertEquals("Same rendering", board.toString(), loaded.toString());
+        assertEquals("Same version", board.version(), loaded.version());
+        assertFalse("Changes before load are lost", loaded.changesSince(0).isPresent());
+        assertEquals("Counts after removed bomb", board.toString(), loaded.toString());
+        assertTrue("Bombs kept", loaded.digIfUntouched(1, 0));
+        
+        Board sparse = new Board(100000, 100000, 9, 0.3);
+        sparse.digIfUntouched(5000, 5000);
+        sparse.flagIfUntouched(99999, 0);
+        sparse.save(file);
+        assertTrue("Small file", file.length() < 100000);
+        Board loadedSparse = Board.load(file);
+        assertEquals("Sparse tiles", sparse.allocatedTiles(), loadedSparse.allocatedTiles());
+        assertTrue("Flag kept", loadedSparse.isFlagged(99999, 0));
+        for(int x = 4990; x < 5010; ++x) {
+            for(int y = 4990; y < 5010; ++y) {
+                assertEquals("Same cell", sparse.isDug(x, y), loadedSparse.isDug(x, y));
+                assertEquals("Same bomb", sparse.digIfUntouched(x, y), loadedSparse.digIfUntouched(x, y));
+            }
+        }
+        
+        try(java.io.RandomAccessFile corrupt = new java.io.RandomAccessFile(file, "rw")) {
+            corrupt.seek(file.length() - 1);
+            int last = corrupt.read();
+            corrupt.seek(file.length() - 1);
+            corrupt.write(last ^ 1);
+        }
+        try {
+            Board.load(file);
+            fail("Corrupt file loaded");
+        } catch(IOException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+        }
+        try {
+            Board.load(new File("test/boards/board_5_4.txt"));
+            fail("Text file loaded");
+        } catch(IOException e) {
+            assertTrue(e.getMessage().contains("not a board file"));
+        }
+    }
+    
+    @Test(timeout=60000)
+    public void testSaveDuringMoves() throws Exception {
+        Board board = new Board(300, 300, 13, 0.15);
+        ConcurrentSkipListMap<Long, BoardMove> moves = new ConcurrentSkipListMap<>();
+        board.addMoveListener((move, x, y, version) -> moves.put(version, new BoardMove(move, x, y)));
+        Thread[] players = new Thread[4];
+        for(int p = 0; p < players.length; ++p) {
+            final int player = p;
+            players[p] = new Thread(() -> {
+                for(int i = 0; i < 2000; ++i) {
+                    int x = (i * 7919 + player * 104729) % 300;
+                    int y = (i * 6007 + player * 1009) % 300;
+                    if(i % 4 == 0) {
+                        board.flagIfUntouched(x, y);
+                    } else if(i % 4 == 1) {
+                        board.deflagIfFlagged(x, y);
+                    } else {
+                        board.digIfUntouched(x, y);
+                    }
+                }
+            });
+            players[p].start();
+        }
+        File[] files = new File[8];
+        for(int i = 0; i < files.length; ++i) {
+            files[i] = File.createTempFile("board", ".board");
+            files[i].deleteOnExit();
+            board.save(files[i]);
+        }
+        for(Thread player : players) {
+            player.join();
+        }
+        for(File file : files) {
+            Board loaded = Board.load(file);
+            for(BoardMove move : moves.tailMap(loaded.version(), false).values()) {
+                loaded.applyMoves(Arrays.asList(move));
+            }
+            assertEquals("Saved at one version, later moves replayed", board, loaded);
+        }
+    }
 }
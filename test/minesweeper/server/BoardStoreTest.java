@@ -0,0 +1,168 @@
+package minesweeper.server;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import minesweeper.Board;
+
+/**
+ * Tests for BoardStore and MoveLog
+ */
+public class BoardStoreTest {
+
+    /**
+     * Testing strategy
+     *
+     * Empty directory, directory with a board
+     * Moves before and after a snapshot, moves that change nothing
+     * Clean close, crash after moves were synced (store never closed)
+     * Log tail torn in the middle of a record, corrupt record
+     * Many players moving while snapshots are taken
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testEmptyDirectory() throws IOException {
+        File directory = Files.createTempDirectory("store").toFile();
+        BoardStore store = new BoardStore(directory, 60);
+        assertFalse("Nothing to recover", store.hasSnapshot());
+        store.start(new Board(100, 100, 3, 0.2));
+        assertTrue("Initial snapshot", store.hasSnapshot());
+        store.close();
+    }
+
+    @Test
+    public void testRecoverAfterClose() throws IOException {
+        File directory = Files.createTempDirectory("store").toFile();
+        BoardStore store = new BoardStore(directory, 60);
+        Board board = new Board(new File("test/boards/board_5_4.txt"));
+        store.start(board);
+        board.digIfUntouched(0, 3);
+        board.flagIfUntouched(4, 3);
+        store.snapshot();
+        board.digIfUntouched(0, 1);
+        board.flagIfUntouched(2, 2);
+        board.deflagIfFlagged(2, 2);
+        board.deflagIfFlagged(2, 2);
+        store.close();
+
+        BoardStore reopened = new BoardStore(directory, 60);
+        Board recovered = reopened.recover();
+        assertEquals("Same board", board, recovered);
+        assertEquals("Same version", board.version(), recovered.version());
+        assertEquals("Same rendering", board.toString(), recovered.toString());
+        recovered.digIfUntouched(3, 3);
+        reopened.close();
+
+        Board again = new BoardStore(directory, 60).recover();
+        assertEquals("Moves after recovery are logged", recovered, again);
+    }
+
+    @Test
+    public void testRecoverAfterCrash() throws IOException {
+        File directory = Files.createTempDirectory("store").toFile();
+        BoardStore store = new BoardStore(directory, 60);
+        Board board = new Board(10000, 10000, 5, 0.1);
+        store.start(board);
+        for(int i = 0; i < 100; ++i) {
+            board.digIfUntouched(37 * i, 53 * i);
+            board.flagIfUntouched(37 * i + 1, 53 * i);
+        }
+        store.sync();
+
+        Board recovered = new BoardStore(directory, 60).recover();
+        assertEquals("Synced moves survive", board.version(), recovered.version());
+        assertEquals("Same board", board, recovered);
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        File directory = Files.createTempDirectory("store").toFile();
+        BoardStore store = new BoardStore(directory, 60);
+        Board board = new Board(100, 100, 7, 0.2);
+        store.start(board);
+        board.flagIfUntouched(1, 1);
+        board.flagIfUntouched(2, 2);
+        store.close();
+        Path segment = lastSegment(directory);
+        long version = board.version();
+
+        try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(MoveLog.RECORD_SIZE / 2).putLong(0, version + 1));
+        }
+        Board recovered = new BoardStore(directory, 60).recover();
+        assertEquals("Torn record ignored", version, recovered.version());
+        assertTrue("Moves before it kept", recovered.isFlagged(2, 2));
+
+        board.flagIfUntouched(3, 3);
+        segment = lastSegment(directory);
+        try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            ByteBuffer record = ByteBuffer.allocate(MoveLog.RECORD_SIZE);
+            record.putLong(recovered.version() + 1).put((byte) 1).putInt(3).putInt(3).putInt(12345);
+            record.flip();
+            channel.write(record);
+        }
+        Board rejected = new BoardStore(directory, 60).recover();
+        assertFalse("Corrupt record ignored", rejected.isFlagged(3, 3));
+    }
+
+    @Test
+    public void testConcurrentSnapshots() throws Exception {
+        File directory = Files.createTempDirectory("store").toFile();
+        BoardStore store = new BoardStore(directory, 60);
+        Board board = new Board(200, 200, 11, 0.15);
+        store.start(board);
+        Thread[] players = new Thread[4];
+        for(int p = 0; p < players.length; ++p) {
+            final int player = p;
+            players[p] = new Thread(() -> {
+                for(int i = 0; i < 500; ++i) {
+                    int x = (i * 7919 + player * 104729) % 200;
+                    int y = (i * 6007 + player * 1009) % 200;
+                    if(i % 3 == 0) {
+                        board.flagIfUntouched(x, y);
+                    } else {
+                        board.digIfUntouched(x, y);
+                    }
+                }
+            });
+            players[p].start();
+        }
+        for(int i = 0; i < 5; ++i) {
+            store.snapshot();
+        }
+        for(Thread player : players) {
+            player.join();
+        }
+        store.sync();
+
+        Board recovered = new BoardStore(directory, 60).recover();
+        assertEquals("Same version", board.version(), recovered.version());
+        assertEquals("Same board", board, recovered);
+    }
+
+    /**
+     * @param directory data directory
+     * @return log segment with the greatest number
+     */
+    private static Path lastSegment(File directory) throws IOException {
+        try(Stream<Path> files = Files.list(directory.toPath())) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log"))
+                    .sorted().reduce((a, b) -> b).get();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package minesweeper.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Manual microbenchmark of parsing requests: the regular expression, split and
+ * Integer.parseInt that handleRequest used, against Command. Prints the time and the
+ * bytes allocated per request for a mix of requests, single moves and batches.
+ * Not a JUnit test: run main, e.g.
+ * <pre>
+ *   java -cp bin minesweeper.server.CommandBenchmark
+ * </pre>
+ */
+public class CommandBenchmark {
+
+    /** Requests parsed in each round */
+    private static final int REQUESTS = 1000000;
+    /** Rounds of each parser, the first ones warm up the JIT */
+    private static final int ROUNDS = 5;
+
+    /** Requests of the mix, parsed in turn */
+    private static final String[] LINES = { "dig 12 34", "flag 5 6", "look", "deflag 100 200",
+            "look 0 0 80 24", "batch dig 1 2 flag 3 4 flag 5 6 deflag 7 8", "delta 12345", "dig -1 7" };
+
+    /** Regular expression of requests, as handleRequest built it for each request */
+    private static final String REGEX = "(look)|(look -?\\d+ -?\\d+ -?\\d+ -?\\d+)|(help)|(bye)|(delta -?\\d+)|"
+            + "(subscribe \\d{1,9})|(unsubscribe)|"
+            + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)|"
+            + "(batch( (dig|flag|deflag) -?\\d+ -?\\d+)+)";
+
+    /**
+     * Parses a request as handleRequest did before Command.
+     *
+     * @param line request
+     * @return sum of its numbers, so that the work is not optimized away
+     */
+    private static long parseByRegex(String line) {
+        if(!line.matches(REGEX)) {
+            return -1;
+        }
+        String[] tokens = line.split(" ");
+        long sum = 0;
+        for(int i = 1; i < tokens.length; ++i) {
+            char first = tokens[i].charAt(0);
+            if(first == '-' || Character.isDigit(first)) {
+                sum += tokens[0].equals("delta") ? Long.parseLong(tokens[i]) : Integer.parseInt(tokens[i]);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Parses a request by Command.
+     *
+     * @param command command reused for all requests
+     * @param line request
+     * @return sum of its numbers, so that the work is not optimized away
+     */
+    private static long parseByCommand(Command command, String line) {
+        if(!command.parse(line)) {
+            return -1;
+        }
+        switch(command.kind()) {
+        case VIEW:
+            return (long) command.x() + command.y() + command.width() + command.height();
+        case DIG:
+        case FLAG:
+        case DEFLAG:
+            return (long) command.x() + command.y();
+        case BATCH:
+            long sum = 0;
+            for(int i = 0; i < command.moves(); ++i) {
+                sum += command.moveX(i) + command.moveY(i);
+            }
+            return sum;
+        case DELTA:
+            return command.version();
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Runs rounds of one parser and prints the cost per request of the last round.
+     *
+     * @param name name of the parser
+     * @param regex true for the regular expression, false for Command
+     */
+    private static void measure(String name, boolean regex) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long self = Thread.currentThread().getId();
+        Command command = new Command();
+        long check = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for(int round = 0; round < ROUNDS; ++round) {
+            long allocatedBefore = allocation == null ? 0 : allocation.getThreadAllocatedBytes(self);
+            long start = System.nanoTime();
+            for(int i = 0; i < REQUESTS; ++i) {
+                String line = LINES[i % LINES.length];
+                check += regex ? parseByRegex(line) : parseByCommand(command, line);
+            }
+            nanos = System.nanoTime() - start;
+            bytes = allocation == null ? -1 : allocation.getThreadAllocatedBytes(self) - allocatedBefore;
+        }
+        System.out.println(name + ": " + nanos / REQUESTS + " ns and "
+                + (bytes < 0 ? "?" : String.valueOf(bytes / REQUESTS)) + " bytes per request (check " + check + ")");
+    }
+
+    /**
+     * Runs the benchmark for both parsers.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        measure("regex, split, parseInt", true);
+        measure("Command", false);
+    }
+}
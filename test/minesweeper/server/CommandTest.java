@@ -0,0 +1,121 @@
+package minesweeper.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import minesweeper.Move;
+
+/**
+ * Tests for Command
+ */
+public class CommandTest {
+
+    /**
+     * Testing strategy
+     *
+     * Each kind of request, words that are prefixes of others (dig, deflag; subscribe, unsubscribe)
+     * Integers: negative, zero, largest and least of int and long, one beyond, leading zeros,
+     *           cells outside any board, which the server checks
+     * Malformed: empty line, unknown word, missing or extra spaces, trailing text, sign where
+     *            none is allowed, empty batch
+     * Batches longer than the initial capacity, a command reused after a longer batch
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testRequests() {
+        Command command = new Command();
+        assertTrue(command.parse("look"));
+        assertEquals(Command.Kind.LOOK, command.kind());
+        assertTrue(command.parse("look -1 0 80 24"));
+        assertEquals(Command.Kind.VIEW, command.kind());
+        assertEquals(-1, command.x());
+        assertEquals(0, command.y());
+        assertEquals(80, command.width());
+        assertEquals(24, command.height());
+        assertTrue(command.parse("dig 3 4"));
+        assertEquals(Command.Kind.DIG, command.kind());
+        assertEquals(3, command.x());
+        assertEquals(4, command.y());
+        assertTrue(command.parse("flag 2147483647 -2147483648"));
+        assertEquals(Command.Kind.FLAG, command.kind());
+        assertEquals(Integer.MAX_VALUE, command.x());
+        assertEquals(Integer.MIN_VALUE, command.y());
+        assertTrue(command.parse("deflag 007 0"));
+        assertEquals(Command.Kind.DEFLAG, command.kind());
+        assertEquals(7, command.x());
+        assertTrue(command.parse("delta -9223372036854775808"));
+        assertEquals(Command.Kind.DELTA, command.kind());
+        assertEquals(Long.MIN_VALUE, command.version());
+        assertTrue(command.parse("subscribe 10"));
+        assertEquals(Command.Kind.SUBSCRIBE, command.kind());
+        assertEquals(10, command.rate());
+        assertTrue(command.parse("unsubscribe"));
+        assertEquals(Command.Kind.UNSUBSCRIBE, command.kind());
+        assertTrue(command.parse("collapse on"));
+        assertEquals(Command.Kind.COLLAPSE, command.kind());
+        assertTrue(command.on());
+        assertTrue(command.parse("collapse off"));
+        assertFalse(command.on());
+        assertTrue(command.parse("stats"));
+        assertEquals(Command.Kind.STATS, command.kind());
+        assertTrue(command.parse("help"));
+        assertEquals(Command.Kind.HELP, command.kind());
+        assertTrue(command.parse("bye"));
+        assertEquals(Command.Kind.BYE, command.kind());
+    }
+
+    @Test
+    public void testOutsideBoard() {
+        Command command = new Command();
+        assertTrue("Cells are checked against the board by the server", command.parse("dig -1 0"));
+        assertEquals(Command.Kind.DIG, command.kind());
+        assertEquals(-1, command.x());
+        assertTrue(command.parse("dig 9999 0"));
+        assertEquals(Command.Kind.DIG, command.kind());
+        assertEquals(9999, command.x());
+        assertEquals(0, command.y());
+    }
+
+    @Test
+    public void testMalformed() {
+        Command command = new Command();
+        String[] lines = { "", "dance", "look ", "look 1 2 3", "dig 1", "dig 1 2 3", "dig  1 2", "dig 1 2 ",
+                "dig x 2", "dig - 2", "dig 2147483648 0", "flag 0 -2147483649", "delta 9223372036854775808",
+                "delta", "subscribe -1", "subscribe 2147483648", "helpme", "bye bye", "batch", "batch ",
+                "batch dig 1 2 look", "batch dig 1 2 dig", "Look", "look\t", "collapse", "collapse yes", "collapse onn",
+                "stats 1", "statss" };
+        for(String line : lines) {
+            assertFalse(line, command.parse(line));
+            assertNull(line, command.kind());
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        Command command = new Command();
+        StringBuilder line = new StringBuilder("batch");
+        for(int i = 0; i < 1000; ++i) {
+            line.append(i % 3 == 0 ? " dig " : i % 3 == 1 ? " flag " : " deflag ").append(i).append(' ').append(-i);
+        }
+        assertTrue(command.parse(line));
+        assertEquals(Command.Kind.BATCH, command.kind());
+        assertEquals(1000, command.moves());
+        assertEquals(Move.DIG, command.move(0));
+        assertEquals(Move.FLAG, command.move(1));
+        assertEquals(Move.DEFLAG, command.move(998));
+        assertEquals(999, command.moveX(999));
+        assertEquals(-999, command.moveY(999));
+
+        assertTrue("Reused after a longer batch", command.parse("batch deflag 5 6"));
+        assertEquals(1, command.moves());
+        assertEquals(Move.DEFLAG, command.move(0));
+        assertEquals(5, command.moveX(0));
+        assertEquals(6, command.moveY(0));
+    }
+}
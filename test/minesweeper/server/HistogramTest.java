@@ -0,0 +1,99 @@
+package minesweeper.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Histogram
+ */
+public class HistogramTest {
+
+    /**
+     * Testing strategy
+     *
+     * Buckets: values below 2 * SUB_BUCKETS, at each power of two beyond, greatest long
+     * Histogram: empty, one value, negative value, uniform values, values of many threads
+     * Percentiles: 0, 50, 99, 100, within 1 / SUB_BUCKETS of the exact value, at most max
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testBuckets() {
+        for(long value = 0; value < 2 * Histogram.SUB_BUCKETS; ++value) {
+            assertEquals(value, Histogram.highest(Histogram.bucket(value)));
+        }
+        int previous = Histogram.bucket(2 * Histogram.SUB_BUCKETS - 1);
+        for(int power = 6; power < 63; ++power) {
+            long value = 1L << power;
+            int bucket = Histogram.bucket(value);
+            assertTrue("Buckets ascend", bucket > previous);
+            assertEquals("Bucket starts after the previous one", value - 1, Histogram.highest(bucket - 1));
+            assertTrue(Histogram.highest(bucket) >= value);
+            assertTrue("Width within 1 / SUB_BUCKETS",
+                    Histogram.highest(bucket) - value < value / Histogram.SUB_BUCKETS);
+            assertEquals(bucket, Histogram.bucket(Histogram.highest(bucket)));
+            previous = bucket;
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highest(Histogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testEmptyAndSingle() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.mean(), 0);
+        assertArrayEquals(new long[] { 0, 0 }, histogram.percentiles(50, 99));
+
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentile(100));
+        histogram.record(123456789);
+        assertEquals(123456789, histogram.max());
+        assertEquals(123456789, histogram.percentile(100));
+        assertEquals(0, histogram.percentile(50));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for(long value = 1; value <= 100000; ++value) {
+            histogram.record(value);
+        }
+        assertEquals(100000, histogram.count());
+        assertEquals(50000.5, histogram.mean(), 0.001);
+        assertEquals(1, histogram.percentile(0));
+        long[] values = histogram.percentiles(50, 99, 99.9, 100);
+        long[] exact = { 50000, 99000, 99900, 100000 };
+        for(int i = 0; i < exact.length; ++i) {
+            assertTrue("At least the exact value", values[i] >= exact[i]);
+            assertTrue("Within 1 / SUB_BUCKETS", values[i] - exact[i] <= exact[i] / Histogram.SUB_BUCKETS);
+        }
+        assertEquals(100000, values[3]);
+    }
+
+    @Test(timeout=10000)
+    public void testManyThreads() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[8];
+        for(int t = 0; t < threads.length; ++t) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < 10000; ++i) {
+                    histogram.record(thread * 1000 + i % 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, histogram.count());
+        assertEquals(7999, histogram.max());
+    }
+}
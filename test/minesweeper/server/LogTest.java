@@ -0,0 +1,124 @@
+package minesweeper.server;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for Log
+ */
+public class LogTest {
+
+    /**
+     * Testing strategy
+     *
+     * Levels: message below, at and above the level of the log, level OFF, level changed
+     * Messages with and without a throwable
+     * Many threads logging at once: all messages written, each thread's in order
+     * Output blocked: logging never waits, messages beyond the ring are dropped and reported
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testLevels() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Log log = new Log(new PrintStream(bytes, true), 16, Log.Level.INFO);
+        assertTrue(log.enabled(Log.Level.ERROR));
+        assertTrue(log.enabled(Log.Level.INFO));
+        assertFalse(log.enabled(Log.Level.DEBUG));
+        assertFalse(log.enabled(Log.Level.OFF));
+        log.debug("hidden request");
+        log.info("shown start");
+        log.warn("shown warning");
+        log.error("shown failure", new IOException("broken pipe"));
+        log.setLevel(Log.Level.OFF);
+        log.error("hidden failure", null);
+        log.setLevel(Log.Level.DEBUG);
+        log.debug("shown request");
+        assertTrue(log.flush(5000));
+
+        String text = bytes.toString();
+        assertFalse(text.contains("hidden"));
+        assertTrue(text.contains("INFO [main] shown start"));
+        assertTrue(text.contains("WARN [main] shown warning"));
+        assertTrue(text.contains("ERROR [main] shown failure"));
+        assertTrue("Stack trace", text.contains("java.io.IOException: broken pipe"));
+        assertTrue(text.indexOf("shown failure") < text.indexOf("shown request"));
+    }
+
+    @Test(timeout=10000)
+    public void testManyThreads() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Log log = new Log(new PrintStream(bytes, false), 1 << 16, Log.Level.DEBUG);
+        Thread[] threads = new Thread[8];
+        for(int t = 0; t < threads.length; ++t) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < 1000; ++i) {
+                    assertTrue(log.log(Log.Level.DEBUG, "message " + thread + "." + i, null));
+                }
+            }, "logger-" + t);
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(log.flush(5000));
+        assertEquals(0, log.dropped());
+
+        String[] lines = bytes.toString().split(System.lineSeparator());
+        assertEquals(8000, lines.length);
+        int[] next = new int[threads.length];
+        for(String line : lines) {
+            String[] ids = line.substring(line.lastIndexOf(' ') + 1).split("\\.");
+            int thread = Integer.parseInt(ids[0]);
+            assertTrue(line.contains("[logger-" + thread + "]"));
+            assertEquals("Order of a thread", next[thread]++, Integer.parseInt(ids[1]));
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testBlockedOutput() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                bytes.write(b);
+            }
+        };
+        Log log = new Log(new PrintStream(blocking, false), 8, Log.Level.DEBUG);
+        int queued = 0;
+        for(int i = 0; i < 1000; ++i) {
+            if(log.log(Log.Level.DEBUG, "message " + i, null)) {
+                ++queued;
+            }
+        }
+        assertTrue("Ring holds at most its capacity and the message being written", queued <= 9);
+        assertEquals(1000 - queued, log.dropped());
+
+        release.countDown();
+        assertTrue(log.flush(5000));
+        log.info("after release");
+        assertTrue(log.flush(5000));
+        String text = bytes.toString();
+        assertTrue(text.contains("message 0"));
+        assertTrue(text.contains((1000 - queued) + " log messages dropped"));
+        assertTrue(text.contains("after release"));
+    }
+}
@@ -8,11 +8,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
@@ -36,6 +43,13 @@ public class MinesweeperServerTest {
       *      no port, port &lt; 0, port = 0, 0 &lt; port &lt; 65535, port = 65535, port &gt; 65535
       * clients
       *      1 client, &gt; 1, many clients
+      * core
+      *      thread per connection, virtual thread per connection, bounded pool, selector
+      * pool
+      *      free worker, connection waits in the queue, queue full
+      * subscriptions
+      *      pushed by a thread, pushed by the event loop, coalesced until the interval ends,
+      *      held back while a client does not read
       *      
       * Cover-each-part
       */
@@ -93,6 +107,7 @@ public class MinesweeperServerTest {
      *      flag - proper board message
      *      deflag - proper board message
      *      dig - no bomb or with bomb(debug mode or not); empty neighbors
+     *      delta - client without board, after changes, changes of other clients
      */
     
     /**
@@ -303,4 +318,645 @@ public class MinesweeperServerTest {
         assertEquals("  1 - - -", in.readLine());
         socket.close();
     }
+    
+    /**
+     * starts MinesweeperServer with the board on specified port, the server socket is
+     * listening when the method returns
+     * @param board board of the server
+     * @param port port to listen
+     * @param debug debug mode flag
+     * @return MinesweeperServer that serves in another thread
+     * @throws IOException if server cannot be created
+     */
+    private static MinesweeperServer serveBoard(Board board, int port, boolean debug) throws IOException {
+        return serveBoard(board, port, debug, ServerCore.threadPerConnection());
+    }
+    
+    /**
+     * starts MinesweeperServer with the board on specified port and core, the server socket is
+     * listening when the method returns
+     * @param board board of the server
+     * @param port port to listen
+     * @param debug debug mode flag
+     * @param core how the server serves connections
+     * @return MinesweeperServer that serves in another thread
+     * @throws IOException if server cannot be created
+     */
+    private static MinesweeperServer serveBoard(Board board, int port, boolean debug, ServerCore core) throws IOException {
+        MinesweeperServer server = new MinesweeperServer(board, port, debug, core);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+    
+    //Test delta mode
+    @Test(timeout=10000)
+    public void testDelta() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4460, true);
+        Socket socket = connectToServer(4460);
+        Socket another = connectToServer(4460);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader anotherIn = new BufferedReader(new InputStreamReader(another.getInputStream()));
+        PrintWriter anotherOut = new PrintWriter(another.getOutputStream(), true);
+        in.readLine();
+        anotherIn.readLine();
+        
+        out.println("delta -1");
+        assertEquals("board 0", in.readLine());
+        for(int i = 0; i < 4; ++i) {
+            assertEquals("- - - - -", in.readLine());
+        }
+        out.println("flag 4 3");
+        assertEquals("delta 1 1", in.readLine());
+        assertEquals("4 3 F", in.readLine());
+        
+        anotherOut.println("dig 0 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        out.println("look");
+        assertEquals("delta 2 4", in.readLine());
+        assertEquals("0 2 1", in.readLine());
+        assertEquals("1 2 2", in.readLine());
+        assertEquals("0 3  ", in.readLine());
+        assertEquals("1 3 1", in.readLine());
+        out.println("look");
+        assertEquals("delta 2 0", in.readLine());
+        
+        anotherOut.println("look");
+        assertEquals("Whole board without delta mode", "- - - - -", anotherIn.readLine());
+        socket.close();
+        another.close();
+    }
+    
+    //Test a sparse board too large to be sent whole
+    @Test(timeout=10000)
+    public void testSparseBoard() throws IOException {
+        serveBoard(new Board(100000, 100000, 1, 0), 4461, true);
+        Socket socket = connectToServer(4461);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("Welcome", in.readLine().contains("100000 columns by 100000 rows"));
+        
+        String tooLarge = "Board too large to show. Use 'look x y w h' to see a part of it, or 'delta' to see changes.";
+        out.println("flag 5 5");
+        assertEquals("Move made, board not rendered", tooLarge, in.readLine());
+        out.println("look");
+        assertEquals(tooLarge, in.readLine());
+        out.println("look 0 0 100000 100000");
+        assertEquals("Viewport too large", tooLarge, in.readLine());
+        out.println("look 4 4 3 3");
+        assertEquals("view 4 4 3 3", in.readLine());
+        assertEquals("- - -", in.readLine());
+        assertEquals("- F -", in.readLine());
+        assertEquals("- - -", in.readLine());
+        
+        out.println("delta 0");
+        assertEquals("delta 1 1", in.readLine());
+        assertEquals("5 5 F", in.readLine());
+        out.println("flag 99999 99999");
+        assertEquals("delta 2 1", in.readLine());
+        assertEquals("99999 99999 F", in.readLine());
+        out.println("deflag 99999 99999");
+        assertEquals("delta 3 1", in.readLine());
+        assertEquals("99999 99999 -", in.readLine());
+        out.println("delta -1");
+        assertEquals("No full board in delta mode either", tooLarge, in.readLine());
+        socket.close();
+    }
+    
+    //Test moves in a batch
+    @Test(timeout=10000)
+    public void testBatch() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4462, true);
+        Socket socket = connectToServer(4462);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        in.readLine();
+        
+        out.println("batch flag 4 3 dig 0 3 deflag 4 3");
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("1 2 - - -", in.readLine());
+        assertEquals("  1 - - -", in.readLine());
+        
+        out.println("batch flag 2 2 dig 1 0");
+        assertEquals("BOOM!", in.readLine());
+        
+        out.println("batch deflag 2 2 dig 50 0");
+        assertEquals("Help for cells outside", "Supported commands are:", in.readLine());
+        for(String line = in.readLine(); !line.startsWith("bye"); line = in.readLine()) {
+        }
+        out.println("delta -1");
+        assertEquals("board 5", in.readLine());
+        assertEquals("- 2 - - -", in.readLine());
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("1 2 F - -", in.readLine());
+        socket.close();
+    }
+    
+    //Test viewports
+    @Test(timeout=10000)
+    public void testViewport() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4463, true);
+        Socket socket = connectToServer(4463);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        in.readLine();
+        
+        out.println("look 0 2 3 5");
+        assertEquals("Clipped to the board", "view 0 2 3 2", in.readLine());
+        assertEquals("- - -", in.readLine());
+        assertEquals("- - -", in.readLine());
+        
+        out.println("dig 0 3");
+        assertEquals("view 0 2 3 2", in.readLine());
+        assertEquals("1 2 -", in.readLine());
+        assertEquals("  1 -", in.readLine());
+        
+        out.println("batch flag 4 0 flag 2 2");
+        assertEquals("view 0 2 3 2", in.readLine());
+        assertEquals("1 2 F", in.readLine());
+        assertEquals("  1 -", in.readLine());
+        
+        out.println("look -2 -2 3 3");
+        assertEquals("view 0 0 1 1", in.readLine());
+        assertEquals("-", in.readLine());
+        
+        out.println("look 5 0 1 1");
+        assertEquals("Help for viewports outside", "Supported commands are:", in.readLine());
+        for(String line = in.readLine(); !line.startsWith("bye"); line = in.readLine()) {
+        }
+        
+        out.println("look");
+        assertEquals("- - - - F", in.readLine());
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("1 2 F - -", in.readLine());
+        assertEquals("  1 - - -", in.readLine());
+        
+        out.println("deflag 2 2");
+        assertEquals("Whole board after look", "- - - - F", in.readLine());
+        socket.close();
+    }
+    
+    //Test pushes to subscribed clients
+    @Test(timeout=10000)
+    public void testSubscribe() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4464, true);
+        Socket socket = connectToServer(4464);
+        Socket another = connectToServer(4464);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader anotherIn = new BufferedReader(new InputStreamReader(another.getInputStream()));
+        PrintWriter anotherOut = new PrintWriter(another.getOutputStream(), true);
+        in.readLine();
+        anotherIn.readLine();
+        
+        out.println("delta 0");
+        assertEquals("delta 0 0", in.readLine());
+        out.println("subscribe 1");
+        assertEquals("delta 0 0", in.readLine());
+        
+        anotherOut.println("flag 4 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        assertEquals("Pushed change", "delta 1 1", in.readLine());
+        assertEquals("4 3 F", in.readLine());
+        
+        for(int i = 0; i < 3; ++i) {
+            anotherOut.println("flag " + i + " " + i);
+            for(int j = 0; j < 4; ++j) {
+                anotherIn.readLine();
+            }
+        }
+        assertEquals("Coalesced changes", "delta 4 3", in.readLine());
+        assertEquals("0 0 F", in.readLine());
+        assertEquals("1 1 F", in.readLine());
+        assertEquals("2 2 F", in.readLine());
+        
+        out.println("deflag 0 0");
+        assertEquals("delta 5 1", in.readLine());
+        assertEquals("0 0 -", in.readLine());
+        out.println("unsubscribe");
+        assertEquals("No push of own move", "delta 5 0", in.readLine());
+        
+        anotherOut.println("flag 3 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        out.println("look");
+        assertEquals("No push after unsubscribe", "delta 6 1", in.readLine());
+        assertEquals("3 3 F", in.readLine());
+        
+        out.println("subscribe 0");
+        assertEquals("Help for rate 0", "Supported commands are:", in.readLine());
+        socket.close();
+        another.close();
+    }
+    
+    //Test selector core: line breaks, lines split and joined by the network, pushes and closing
+    @Test(timeout=10000)
+    public void testSelector() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4465, false, ServerCore.selector(2));
+        Socket socket = connectToServer(4465);
+        Socket another = connectToServer(4465);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader anotherIn = new BufferedReader(new InputStreamReader(another.getInputStream()));
+        PrintWriter anotherOut = new PrintWriter(another.getOutputStream(), true);
+        assertEquals("Welcome to Minesweeper. Players: 1 including you. Board: 5 columns by 4 rows. Type 'help' for help.", in.readLine());
+        assertEquals("Welcome to Minesweeper. Players: 2 including you. Board: 5 columns by 4 rows. Type 'help' for help.", anotherIn.readLine());
+        
+        out.print("fl");
+        out.flush();
+        out.print("ag 4 3\r\nlook 0 3 2 1\rdelta 0\n");
+        out.flush();
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("- - - - F", in.readLine());
+        assertEquals("view 0 3 2 1", in.readLine());
+        assertEquals("- -", in.readLine());
+        assertEquals("delta 1 1", in.readLine());
+        assertEquals("4 3 F", in.readLine());
+        
+        out.println("subscribe 100");
+        assertEquals("delta 1 0", in.readLine());
+        anotherOut.println("dig 0 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        assertEquals("Pushed change", "delta 2 4", in.readLine());
+        for(int i = 0; i < 4; ++i) {
+            in.readLine();
+        }
+        
+        StringBuilder large = new StringBuilder("batch");
+        for(int i = 0; i < 1000; ++i) {
+            large.append(" flag 2 2");
+        }
+        out.println(large);
+        assertEquals("Long line", "delta 3 1", in.readLine());
+        assertEquals("2 2 F", in.readLine());
+        
+        out.println("dig 1 0");
+        assertEquals("BOOM!", in.readLine());
+        assertNull("Closed after BOOM", in.readLine());
+        
+        anotherOut.println("bye");
+        assertNull("Closed after bye", anotherIn.readLine());
+        socket.close();
+        another.close();
+    }
+    
+    //Test pushes by the event loop of the selector core: coalesced by the timer of the loop, no pusher threads
+    @Test(timeout=10000)
+    public void testSelectorSubscribe() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4478, true, ServerCore.selector(1));
+        Socket socket = connectToServer(4478);
+        Socket another = connectToServer(4478);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader anotherIn = new BufferedReader(new InputStreamReader(another.getInputStream()));
+        PrintWriter anotherOut = new PrintWriter(another.getOutputStream(), true);
+        in.readLine();
+        anotherIn.readLine();
+        
+        out.println("delta 0");
+        assertEquals("delta 0 0", in.readLine());
+        out.println("subscribe 1");
+        assertEquals("delta 0 0", in.readLine());
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertNotEquals("No pusher thread", "subscription-push", thread.getName());
+        }
+        
+        anotherOut.println("flag 4 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        assertEquals("Pushed change", "delta 1 1", in.readLine());
+        assertEquals("4 3 F", in.readLine());
+        
+        for(int i = 0; i < 3; ++i) {
+            anotherOut.println("flag " + i + " " + i);
+            for(int j = 0; j < 4; ++j) {
+                anotherIn.readLine();
+            }
+        }
+        assertEquals("Coalesced changes pushed when the interval ends", "delta 4 3", in.readLine());
+        assertEquals("0 0 F", in.readLine());
+        assertEquals("1 1 F", in.readLine());
+        assertEquals("2 2 F", in.readLine());
+        
+        out.println("unsubscribe");
+        assertEquals("delta 4 0", in.readLine());
+        anotherOut.println("flag 3 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        out.println("look");
+        assertEquals("No push after unsubscribe", "delta 5 1", in.readLine());
+        assertEquals("3 3 F", in.readLine());
+        socket.close();
+        another.close();
+    }
+    
+    //Test the selector core stops pushing to a subscribed client that does not read
+    @Test(timeout=20000)
+    public void testSelectorBackpressure() throws IOException, InterruptedException {
+        serveBoard(new Board(1000, 1000, 5, 0), 4480, true, ServerCore.selector(1));
+        Socket slow = connectToServer(4480);
+        new PrintWriter(slow.getOutputStream(), true).println("subscribe 1000");
+        Socket socket = connectToServer(4480);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        in.readLine();
+        
+        out.println("delta 0");
+        assertEquals("delta 0 0", in.readLine());
+        int moves = 100;
+        for(int i = 0; i < moves; ++i) {
+            out.println("flag " + i + " 0");
+            in.readLine();
+            in.readLine();
+            Thread.sleep(2);
+        }
+        out.println("stats");
+        int figures = Integer.parseInt(in.readLine().substring("stats ".length()));
+        long renders = -1;
+        for(int i = 0; i < figures; ++i) {
+            String[] figure = in.readLine().split(" ");
+            if(figure[0].equals("render_count")) {
+                renders = Long.parseLong(figure[1]);
+            }
+        }
+        long pushes = renders - (moves + 1) - 1;
+        assertTrue("Few pushes of 2 MB boards to a client that does not read: " + pushes, pushes < moves / 4);
+        slow.close();
+        socket.close();
+    }
+    
+    //Test virtual thread core, a platform thread per connection before Java 21: many clients, pushes and closing
+    @Test(timeout=10000)
+    public void testVirtual() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4466, false, ServerCore.virtualThreads());
+        Socket[] idle = new Socket[50];
+        for(int i = 0; i < idle.length; ++i) {
+            idle[i] = connectToServer(4466);
+        }
+        Socket socket = connectToServer(4466);
+        Socket another = connectToServer(4466);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader anotherIn = new BufferedReader(new InputStreamReader(another.getInputStream()));
+        PrintWriter anotherOut = new PrintWriter(another.getOutputStream(), true);
+        in.readLine();
+        assertEquals("Welcome to Minesweeper. Players: 52 including you. Board: 5 columns by 4 rows. Type 'help' for help.", anotherIn.readLine());
+        
+        out.println("delta 0");
+        assertEquals("delta 0 0", in.readLine());
+        out.println("subscribe 100");
+        assertEquals("delta 0 0", in.readLine());
+        anotherOut.println("flag 4 3");
+        for(int i = 0; i < 4; ++i) {
+            anotherIn.readLine();
+        }
+        assertEquals("Pushed change", "delta 1 1", in.readLine());
+        assertEquals("4 3 F", in.readLine());
+        
+        StringBuilder large = new StringBuilder("batch");
+        for(int i = 0; i < 150; ++i) {
+            large.append(" flag 2 2");
+        }
+        out.println(large);
+        assertEquals("Line longer than the buffers", "delta 2 1", in.readLine());
+        assertEquals("2 2 F", in.readLine());
+        
+        out.println("dig 1 0");
+        assertEquals("BOOM!", in.readLine());
+        assertNull("Closed after BOOM", in.readLine());
+        for(Socket client : idle) {
+            client.close();
+        }
+        socket.close();
+        another.close();
+    }
+    
+    //Test bounded pool: a worker for the first client, the queue for the second, BUSY for the third
+    @Test(timeout=10000)
+    public void testPool() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4467, true, ServerCore.pool(1, 1).withBacklog(10));
+        Socket first = connectToServer(4467);
+        BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream()));
+        PrintWriter firstOut = new PrintWriter(first.getOutputStream(), true);
+        assertEquals("Welcome to Minesweeper. Players: 1 including you. Board: 5 columns by 4 rows. Type 'help' for help.", firstIn.readLine());
+        Socket second = connectToServer(4467);
+        BufferedReader secondIn = new BufferedReader(new InputStreamReader(second.getInputStream()));
+        PrintWriter secondOut = new PrintWriter(second.getOutputStream(), true);
+        Socket third = connectToServer(4467);
+        BufferedReader thirdIn = new BufferedReader(new InputStreamReader(third.getInputStream()));
+        
+        assertEquals("Refused when full", "Server busy. Try again later.", thirdIn.readLine());
+        assertNull("Closed after BUSY", thirdIn.readLine());
+        secondOut.println("flag 4 3");
+        firstOut.println("look");
+        assertEquals("Served while others wait", "- - - - -", firstIn.readLine());
+        for(int i = 0; i < 3; ++i) {
+            firstIn.readLine();
+        }
+        firstOut.println("bye");
+        assertNull(firstIn.readLine());
+        
+        assertEquals("Served once a worker is free", "Welcome to Minesweeper. Players: 1 including you. Board: 5 columns by 4 rows. Type 'help' for help.", secondIn.readLine());
+        for(int i = 0; i < 3; ++i) {
+            assertEquals("- - - - -", secondIn.readLine());
+        }
+        assertEquals("Request read while waiting", "- - - - F", secondIn.readLine());
+        first.close();
+        second.close();
+        third.close();
+    }
+    
+    //Test pipelined requests and collapsed renders, thread per connection and selector
+    @Test(timeout=10000)
+    public void testPipeline() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4468, true);
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4469, true, ServerCore.selector(1));
+        for(int port : new int[] { 4468, 4469 }) {
+            Socket socket = connectToServer(port);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            in.readLine();
+            
+            StringBuilder requests = new StringBuilder();
+            for(int i = 0; i < 50; ++i) {
+                requests.append(i % 2 == 0 ? "flag 1 1\n" : "deflag 1 1\n");
+            }
+            out.print(requests);
+            out.flush();
+            for(int i = 0; i < 50; ++i) {
+                assertEquals("Reply " + i + " in order", "- - - - -", in.readLine());
+                assertEquals(i % 2 == 0 ? "- F - - -" : "- - - - -", in.readLine());
+                in.readLine();
+                in.readLine();
+            }
+            
+            out.println("collapse on");
+            for(int i = 0; i < 4; ++i) {
+                in.readLine();
+            }
+            out.print("flag 0 0\nflag 1 1\nflag 2 2\nlook\n");
+            out.flush();
+            assertEquals("One board for requests sent together", "F - - - -", in.readLine());
+            assertEquals("- F - - -", in.readLine());
+            assertEquals("- - F - -", in.readLine());
+            assertEquals("- - - - -", in.readLine());
+            out.print("deflag 0 0\nhelp\n");
+            out.flush();
+            assertEquals("Board before a reply that is not a board", "- - - - -", in.readLine());
+            for(int i = 0; i < 3; ++i) {
+                in.readLine();
+            }
+            assertEquals("Supported commands are:", in.readLine());
+            for(String line = in.readLine(); !line.startsWith("bye"); line = in.readLine()) {
+            }
+            out.print("collapse off\nflag 0 0\n");
+            out.flush();
+            assertEquals("Collapsed with the request after off", "F - - - -", in.readLine());
+            for(int i = 0; i < 3; ++i) {
+                in.readLine();
+            }
+            out.print("deflag 0 0\nflag 0 0\n");
+            out.flush();
+            assertEquals("Not collapsed after off", "- - - - -", in.readLine());
+            for(int i = 0; i < 3; ++i) {
+                in.readLine();
+            }
+            assertEquals("F - - - -", in.readLine());
+            socket.close();
+        }
+    }
+    
+    //Test stats request and metrics read by JMX
+    @Test(timeout=10000)
+    public void testStats() throws IOException, JMException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4475, true);
+        Socket socket = connectToServer(4475);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        in.readLine();
+        out.println("flag 1 1");
+        for(int i = 0; i < 4; ++i) {
+            in.readLine();
+        }
+        out.println("dance");
+        for(String line = in.readLine(); !line.startsWith("bye"); line = in.readLine()) {
+        }
+        
+        out.println("stats");
+        String header = in.readLine();
+        assertTrue(header, header.startsWith("stats "));
+        int figures = Integer.parseInt(header.substring("stats ".length()));
+        Map<String, Long> stats = new HashMap<>();
+        for(int i = 0; i < figures; ++i) {
+            String[] figure = in.readLine().split(" ");
+            assertEquals(2, figure.length);
+            stats.put(figure[0], Long.parseLong(figure[1]));
+        }
+        assertEquals(1, (long) stats.get("connections"));
+        assertEquals(1, (long) stats.get("connections_accepted"));
+        assertEquals(1, (long) stats.get("command_flag"));
+        assertEquals(1, (long) stats.get("command_invalid"));
+        assertEquals(1, (long) stats.get("command_stats"));
+        assertEquals(0, (long) stats.get("command_dig"));
+        assertEquals("Requests before stats", 2, (long) stats.get("request_count"));
+        assertEquals(1, (long) stats.get("render_count"));
+        assertTrue(stats.get("request_p99_ns") <= stats.get("request_max_ns"));
+        assertTrue(stats.get("request_max_ns") > 0);
+        assertTrue(stats.get("bytes_in") >= "flag 1 1\ndance\nstats\n".length());
+        assertTrue(stats.get("bytes_out") > 0);
+        assertTrue(stats.containsKey("lock_wait_ns"));
+        
+        MBeanServer beans = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("minesweeper.server:type=Metrics,port=4475");
+        assertEquals(1, beans.getAttribute(name, "Connections"));
+        assertEquals(3L, beans.getAttribute(name, "RequestCount"));
+        socket.close();
+    }
+    
+    //Test moves on cells outside the board, answered with help without closing the connection
+    @Test(timeout=10000)
+    public void testOutsideBoard() throws IOException {
+        serveBoard(new Board(new File("test/boards/board_5_4.txt")), 4476, false, ServerCore.pool(1, 0));
+        Socket socket = connectToServer(4476);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        in.readLine();
+        for(String request : new String[] { "dig -1 0", "dig 9999 0", "flag 0 4", "deflag 5 0" }) {
+            out.println(request);
+            assertEquals(request, "Supported commands are:", in.readLine());
+            for(String line = in.readLine(); !line.startsWith("bye"); line = in.readLine()) {
+            }
+        }
+        out.println("flag 0 0");
+        assertEquals("Connection still served", "F - - - -", in.readLine());
+        socket.close();
+    }
+    
+    //Test a server started by a configuration, and the checks of the configuration
+    @Test(timeout=10000)
+    public void testConfig() throws IOException {
+        ServerConfig defaults = ServerConfig.builder().build();
+        assertEquals(4444, defaults.port());
+        assertFalse(defaults.debug());
+        assertFalse(defaults.file().isPresent());
+        assertEquals(10, defaults.sizeX());
+        assertFalse(defaults.data().isPresent());
+        assertFalse(defaults.core().isSelector());
+        for(Runnable invalid : new Runnable[] { () -> ServerConfig.builder().port(65536),
+                () -> ServerConfig.builder().density(1.5), () -> ServerConfig.builder().snapshotSeconds(0),
+                () -> ServerConfig.builder().size(0, 5) }) {
+            try {
+                invalid.run();
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+        
+        ServerConfig config = ServerConfig.builder().debug(true).port(4477)
+                .file(new File("test/boards/board_5_4.txt")).core(ServerCore.selector(1)).build();
+        Thread thread = new Thread(() -> {
+            try {
+                MinesweeperServer.runMinesweeperServer(config);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        Socket socket = null;
+        while (socket == null) {
+            try {
+                socket = connectToServer(4477);
+            } catch (ConnectException ce) {
+                Thread.yield();
+            }
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue(in.readLine().endsWith("Board: 5 columns by 4 rows. Type 'help' for help."));
+        out.println("flag 0 0");
+        assertEquals("F - - - -", in.readLine());
+        socket.close();
+    }
 }
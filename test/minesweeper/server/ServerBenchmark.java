@@ -0,0 +1,214 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import minesweeper.Board;
+
+/**
+ * Manual benchmark that compares the cores of MinesweeperServer: how many threads and
+ * how much heap idle connections and subscribed connections take, and the latency of
+ * requests of active players while the other connections stay open and subscribers
+ * receive the pushes their moves cause.
+ * Not a JUnit test: run main with the numbers of idle, subscribed and active
+ * connections, e.g.
+ * <pre>
+ *   java -cp bin minesweeper.server.ServerBenchmark 2000 500 16
+ * </pre>
+ * The open file limit of the process (ulimit -n) must allow twice as many sockets as
+ * connections, since both ends are in this process.
+ */
+public class ServerBenchmark {
+
+    /** First port of the servers under test, one per core */
+    private static final int PORT = 4470;
+    /** Side of the board of the servers */
+    private static final int SIZE = 100;
+    /** Requests of each active player */
+    private static final int REQUESTS = 2000;
+    /** Pushes per second subscribers ask for */
+    private static final int RATE = 20;
+    /** Time subscriptions get to start before their threads are counted */
+    private static final long SUBSCRIBE_MILLIS = 1000;
+
+    /**
+     * @return bytes of heap in use after garbage collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 5; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Starts a thread that reads and drops everything the server sends to subscribers.
+     *
+     * @param sockets connections of the subscribers
+     * @param received counter of the bytes read
+     * @return the started thread, stopped by interrupting it
+     */
+    private static Thread drain(List<Socket> sockets, LongAdder received) {
+        Thread drain = new Thread(() -> {
+            byte[] buffer = new byte[1 << 16];
+            try {
+                while(!Thread.currentThread().isInterrupted()) {
+                    boolean idle = true;
+                    for(Socket socket : sockets) {
+                        InputStream in = socket.getInputStream();
+                        int available = in.available();
+                        if(available > 0) {
+                            received.add(in.read(buffer, 0, Math.min(available, buffer.length)));
+                            idle = false;
+                        }
+                    }
+                    if(idle) {
+                        TimeUnit.MILLISECONDS.sleep(1);
+                    }
+                }
+            } catch(IOException e) {
+                e.printStackTrace();
+            } catch(InterruptedException e) {
+                // stopped
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+        return drain;
+    }
+
+    /**
+     * Starts a server with the core, opens idle and subscribed connections and measures
+     * active players.
+     *
+     * @param core core under test
+     * @param port port of the server
+     * @param idle number of idle connections
+     * @param subscribed number of connections subscribed to all changes of the board
+     * @param active number of active players
+     * @throws Exception if a connection fails
+     */
+    private static void measure(ServerCore core, int port, int idle, int subscribed, int active) throws Exception {
+        MinesweeperServer server = new MinesweeperServer(Board.generate(SIZE, SIZE, 1, 0.1), port, true, core);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+
+        int threadsBefore = Thread.activeCount();
+        long heapBefore = usedHeap();
+        List<Socket> sockets = new ArrayList<>();
+        for(int i = 0; i < idle; ++i) {
+            Socket socket = new Socket("localhost", port);
+            new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+            sockets.add(socket);
+        }
+        int threads = Thread.activeCount() - threadsBefore;
+        long heap = usedHeap() - heapBefore;
+
+        threadsBefore = Thread.activeCount();
+        heapBefore = usedHeap();
+        List<Socket> subscribers = new ArrayList<>();
+        for(int i = 0; i < subscribed; ++i) {
+            Socket socket = new Socket("localhost", port);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            out.println("subscribe " + RATE);
+            subscribers.add(socket);
+        }
+        LongAdder pushed = new LongAdder();
+        Thread drain = drain(subscribers, pushed);
+        TimeUnit.MILLISECONDS.sleep(SUBSCRIBE_MILLIS);
+        int subscriptionThreads = Thread.activeCount() - threadsBefore - 1;
+        long subscriptionHeap = usedHeap() - heapBefore;
+        long pushedBefore = pushed.sum();
+
+        long[][] latencies = new long[active][REQUESTS];
+        Thread[] players = new Thread[active];
+        for(int p = 0; p < active; ++p) {
+            final int player = p;
+            players[p] = new Thread(() -> {
+                try(Socket socket = new Socket("localhost", port)) {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                    in.readLine();
+                    for(int i = 0; i < REQUESTS; ++i) {
+                        int x = (player * 7 + i) % SIZE;
+                        int y = (player * 13 + i / SIZE) % SIZE;
+                        long start = System.nanoTime();
+                        out.println(i % 2 == 0 ? "look 0 0 10 10" : "flag " + x + " " + y);
+                        for(int line = 0; line < 11; ++line) {
+                            in.readLine();
+                        }
+                        latencies[player][i] = System.nanoTime() - start;
+                    }
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for(Thread player : players) {
+            player.start();
+        }
+        for(Thread player : players) {
+            player.join();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        long pushedBytes = pushed.sum() - pushedBefore;
+
+        long[] all = new long[active * REQUESTS];
+        for(int p = 0; p < active; ++p) {
+            System.arraycopy(latencies[p], 0, all, p * REQUESTS, REQUESTS);
+        }
+        Arrays.sort(all);
+        System.out.println(core + ": " + idle + " idle connections take " + threads + " threads and "
+                + heap / 1024 + " KB; " + subscribed + " subscribed connections take "
+                + subscriptionThreads + " threads and " + subscriptionHeap / 1024 + " KB; "
+                + active + " players made " + all.length + " requests in "
+                + millis + " ms, latency p50 " + all[all.length / 2] / 1000 + " us, p99 "
+                + all[all.length * 99 / 100] / 1000 + " us, max " + all[all.length - 1] / 1000
+                + " us, while subscribers received " + pushedBytes / 1024 + " KB of pushes");
+        drain.interrupt();
+        drain.join();
+        for(Socket socket : subscribers) {
+            socket.close();
+        }
+        for(Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs the benchmark for the thread per connection core, the virtual thread core and
+     * the selector core.
+     *
+     * @param args number of idle connections, 1000 by default, of subscribed connections,
+     *             100 by default, and of active players, the number of processors by default
+     * @throws Exception if a connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int subscribed = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int active = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int loops = Runtime.getRuntime().availableProcessors();
+        measure(ServerCore.threadPerConnection(), PORT, idle, subscribed, active);
+        measure(ServerCore.virtualThreads(), PORT + 1, idle, subscribed, active);
+        measure(ServerCore.selector(loops), PORT + 2, idle, subscribed, active);
+    }
+}